@@ -0,0 +1,15 @@
+#!/bin/sh
+#
+# Generates the instances used by the benchmarks besides
+# tests/bugs with the generators in bin/.
+
+DIR=`dirname $0`
+OUT=$DIR/instances
+mkdir -p $OUT
+
+cc -O2 -o $OUT/sgen1 $DIR/../bin/sgen1.c -lm || exit 1
+cc -O2 -o $OUT/pigeonhole $DIR/../bin/pigeonhole.c || exit 1
+
+$OUT/sgen1 -n 61 -unsat -s 1 > $OUT/sgen1-unsat-61.cnf
+$OUT/sgen1 -n 200 -sat -s 1 > $OUT/sgen1-sat-200.cnf
+$OUT/pigeonhole 9 > $OUT/pigeonhole-9.cnf
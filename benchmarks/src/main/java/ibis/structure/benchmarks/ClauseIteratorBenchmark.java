@@ -0,0 +1,62 @@
+package ibis.structure.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import gnu.trove.list.array.TIntArrayList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Iterates over formulas where a fraction of the clauses
+ * was removed but not compacted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClauseIteratorBenchmark {
+  /** Percent of clauses removed. */
+  @Param({"0", "50", "90"})
+  public int removed;
+
+  private TIntArrayList formula;
+
+  @Setup(Level.Trial)
+  public void setup(final Instances instances) {
+    formula = instances.copy().formula;
+    Random random = new Random(1);
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      if (random.nextInt(100) < removed) {
+        removeClause(formula, clause);
+      }
+    }
+  }
+
+  @Benchmark
+  public int iterate() {
+    int sum = 0;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      sum += length(formula, clause);
+    }
+    return sum;
+  }
+}
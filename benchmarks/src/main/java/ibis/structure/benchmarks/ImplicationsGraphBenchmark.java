@@ -0,0 +1,98 @@
+package ibis.structure.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import gnu.trove.list.array.TIntArrayList;
+import ibis.structure.ContradictionException;
+import ibis.structure.ImplicationsGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Propagates a literal and collapses the strongly connected
+ * components of the graph built from the binary clauses.
+ *
+ * Both operations change the graph so every iteration builds
+ * a pool of POOL graphs, one per invocation, and the score is
+ * the time of the whole batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = ImplicationsGraphBenchmark.POOL)
+@Measurement(iterations = 5, batchSize = ImplicationsGraphBenchmark.POOL)
+@Fork(1)
+public class ImplicationsGraphBenchmark {
+  /** Invocations of every iteration. */
+  static final int POOL = 64;
+
+  /** Graphs changed by the invocations, one each. */
+  private ImplicationsGraph[] pool = new ImplicationsGraph[POOL];
+  /** Next graph in pool. */
+  private int next;
+  /** Literal with the most implications. */
+  private int literal;
+
+  @Setup(Level.Trial)
+  public void load(final Instances instances) {
+    ImplicationsGraph graph = graph(instances);
+    literal = 1;
+    int n = instances.instance.numVariables;
+    for (int u = -n; u <= n; u++) {
+      if (u != 0 && graph.edges(u).size() > graph.edges(literal).size()) {
+        literal = u;
+      }
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void fill(final Instances instances) {
+    for (int i = 0; i < POOL; i++) {
+      pool[i] = graph(instances);
+    }
+    next = 0;
+  }
+
+  /** Builds the graph of the binary clauses of the instance. */
+  private static ImplicationsGraph graph(final Instances instances) {
+    TIntArrayList binaries = instances.binaries();
+    ImplicationsGraph graph =
+        new ImplicationsGraph(instances.instance.numVariables);
+    for (int i = 0; i < binaries.size(); i += 2) {
+      int u = binaries.getQuick(i);
+      int v = binaries.getQuick(i + 1);
+      graph.add(neg(u), v);
+    }
+    return graph;
+  }
+
+  @Benchmark
+  public TIntArrayList propagate() {
+    try {
+      return pool[next++].propagate(literal);
+    } catch (ContradictionException e) {
+      // Failed literals are propagated too.
+      return null;
+    }
+  }
+
+  @Benchmark
+  public int[] removeStronglyConnectedComponents() {
+    try {
+      return pool[next++].removeStronglyConnectedComponents();
+    } catch (ContradictionException e) {
+      return null;
+    }
+  }
+}
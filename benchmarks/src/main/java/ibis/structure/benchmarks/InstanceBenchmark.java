@@ -0,0 +1,59 @@
+package ibis.structure.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import gnu.trove.list.array.TIntArrayList;
+import ibis.structure.Normalizer;
+import ibis.structure.Reader;
+import ibis.structure.Skeleton;
+import ibis.structure.Solution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Parses instances, picks branching variables and normalizes
+ * instances and solutions back and forth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InstanceBenchmark {
+  /** Number of variables picked (see Configure.lookAheadSize). */
+  @Param({"1", "16"})
+  public int numPicked;
+
+  @Benchmark
+  public Skeleton parseStream(final Instances instances) throws Exception {
+    return Reader.parseStream(new ByteArrayInputStream(instances.bytes));
+  }
+
+  @Benchmark
+  public int[] pickVariables(final Instances instances) {
+    return instances.instance.pickVariables(null, numPicked);
+  }
+
+  @Benchmark
+  public Solution normalize(final Instances instances) {
+    Skeleton instance = instances.copy();
+    Normalizer normalizer = new Normalizer();
+    normalizer.normalize(instance);
+
+    TIntArrayList units = new TIntArrayList(instance.numVariables);
+    for (int u = 1; u <= instance.numVariables; u++) {
+      units.add(u);
+    }
+    return normalizer.denormalize(Solution.satisfiable(units));
+  }
+}
@@ -0,0 +1,101 @@
+package ibis.structure.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import gnu.trove.list.array.TIntArrayList;
+import ibis.structure.Reader;
+import ibis.structure.Skeleton;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Instances the benchmarks run on.<br/>
+ *
+ * Instances are searched in the directories listed by the
+ * structure.instances property (by default tests/bugs and the
+ * instances generated by generate.sh).
+ */
+@State(Scope.Benchmark)
+public class Instances {
+  /** Directories searched when the property is not set. */
+  private static final String DEFAULT_PATH = "../tests/bugs:instances";
+
+  @Param({
+    "bug-uMF9eFhz.cnf",
+    "bug-5szXd0pt.cnf",
+    "sgen1-unsat-61.cnf",
+    "sgen1-sat-200.cnf",
+    "pigeonhole-9.cnf"
+  })
+  public String name;
+
+  /** Contents of the file. */
+  public byte[] bytes;
+  /** The parsed instance, never changed by benchmarks. */
+  public Skeleton instance;
+
+  @Setup(Level.Trial)
+  public void load() throws Exception {
+    bytes = read(find(name));
+    instance = Reader.parseStream(new ByteArrayInputStream(bytes));
+  }
+
+  /** Returns a copy of the instance to be changed. */
+  public Skeleton copy() {
+    return instance.clone();
+  }
+
+  /** Returns the binary clauses of the instance as pairs. */
+  public TIntArrayList binaries() {
+    TIntArrayList binaries = new TIntArrayList();
+    TIntArrayList formula = instance.formula;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      if (length(formula, clause) == 2 && type(formula, clause) == OR) {
+        binaries.add(formula.getQuick(clause));
+        binaries.add(formula.getQuick(clause + 1));
+      }
+    }
+    return binaries;
+  }
+
+  private static File find(final String name) throws IOException {
+    String path = System.getProperty("structure.instances", DEFAULT_PATH);
+    for (String dir : path.split(File.pathSeparator)) {
+      File file = new File(dir, name);
+      if (file.exists()) {
+        return file;
+      }
+    }
+    throw new IOException("Cannot find " + name + " in " + path
+                          + ", run generate.sh first");
+  }
+
+  private static byte[] read(final File file) throws IOException {
+    byte[] bytes = new byte[(int) file.length()];
+    InputStream in = new FileInputStream(file);
+    try {
+      int offset = 0;
+      while (offset < bytes.length) {
+        int read = in.read(bytes, offset, bytes.length - offset);
+        if (read < 0) {
+          throw new IOException("Unexpected end of " + file);
+        }
+        offset += read;
+      }
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+}
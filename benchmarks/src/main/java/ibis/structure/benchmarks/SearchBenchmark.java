@@ -0,0 +1,95 @@
+package ibis.structure.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import ibis.constellation.ActivityIdentifier;
+import ibis.structure.BlockingSearch;
+import ibis.structure.Cancellation;
+import ibis.structure.Configure;
+import ibis.structure.ForkJoinExecutor;
+import ibis.structure.RestartPolicy;
+import ibis.structure.RestartScheduler;
+import ibis.structure.Skeleton;
+import ibis.structure.Solution;
+import ibis.structure.SplitActivity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Searches a generation with the blocking tasks of BlockingSearch
+ * or with the activities starting at SplitActivity.
+ *
+ * Every generation is killed after budget work units (see
+ * RestartScheduler) so both modes search about the same number
+ * of nodes unless the instance is solved first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+  /** True to search with BlockingSearch (see Configure.blocking). */
+  @Param({"false", "true"})
+  public boolean blocking;
+
+  /** Number of worker threads (see Configure.numExecutors). */
+  @Param({"4"})
+  public int numExecutors;
+
+  /** Work units of every generation. */
+  @Param({"2000"})
+  public long budget;
+
+  private ForkJoinExecutor executor;
+  private RestartPolicy policy;
+  private long generation = 0;
+
+  @Setup(Level.Trial)
+  public void start() {
+    // BlockingSearch sizes its pool on first use.
+    Configure.numExecutors = numExecutors;
+    executor = new ForkJoinExecutor(numExecutors);
+    policy = RestartPolicy.create("arithmetic", budget);
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public Solution search(final Instances instances) throws Exception {
+    final long generation = ++this.generation;
+    Skeleton instance = instances.copy();
+    ActivityIdentifier root = executor.collector();
+    RestartScheduler.start(generation, policy, budget, new Runnable() {
+      public void run() {
+        Cancellation.kill(generation);
+      }
+    });
+
+    if (blocking) {
+      BlockingSearch.submit(
+          executor, root, root, null, generation, null, instance);
+    } else {
+      executor.submit(new SplitActivity(
+            root, null, 0, generation, null, instance, false));
+    }
+    Solution solution = (Solution) executor.waitForEvent(root).data;
+    RestartScheduler.stop(generation);
+    return solution;
+  }
+}
@@ -0,0 +1,95 @@
+package ibis.structure.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import gnu.trove.list.array.TIntArrayList;
+import ibis.structure.ContradictionException;
+import ibis.structure.Skeleton;
+import ibis.structure.WatchLists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Builds watch lists, assigns a literal and merges two variables.
+ *
+ * Assigning and merging change the watch lists so every iteration
+ * builds a pool of POOL watch lists, one per invocation, and the
+ * score is the time of the whole batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = WatchListsBenchmark.POOL)
+@Measurement(iterations = 5, batchSize = WatchListsBenchmark.POOL)
+@Fork(1)
+public class WatchListsBenchmark {
+  /** Invocations of every iteration. */
+  static final int POOL = 64;
+
+  /** The unchanged instance. */
+  private Skeleton instance;
+  /** Watch lists changed by the invocations, one each. */
+  private WatchLists[] pool = new WatchLists[POOL];
+  /** Next watch lists in pool. */
+  private int next;
+  /** Literal of the first clause. */
+  private int literal;
+  /** Literal of another clause sharing no variable with literal. */
+  private int other;
+
+  @Setup(Level.Trial)
+  public void load(final Instances instances) {
+    instance = instances.instance;
+
+    TIntArrayList formula = instance.formula;
+    ClauseIterator it = new ClauseIterator(formula);
+    literal = formula.getQuick(it.next());
+    other = literal;
+    while (it.hasNext() && var(other) == var(literal)) {
+      other = formula.getQuick(it.next());
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void fill(final Instances instances)
+      throws ContradictionException {
+    for (int i = 0; i < POOL; i++) {
+      Skeleton copy = instances.copy();
+      pool[i] = new WatchLists(copy.numVariables, copy.formula);
+      pool[i].build();
+    }
+    next = 0;
+  }
+
+  @Benchmark
+  public WatchLists build() throws ContradictionException {
+    WatchLists lists = new WatchLists(instance.numVariables, instance.formula);
+    lists.build();
+    return lists;
+  }
+
+  @Benchmark
+  public WatchLists assign() throws ContradictionException {
+    WatchLists watchLists = pool[next++];
+    watchLists.assign(literal);
+    return watchLists;
+  }
+
+  @Benchmark
+  public WatchLists merge() throws ContradictionException {
+    WatchLists watchLists = pool[next++];
+    watchLists.merge(literal, other);
+    return watchLists;
+  }
+}
@@ -0,0 +1,446 @@
+package ibis.structure.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import gnu.trove.list.array.TIntArrayList;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+import ibis.structure.ComponentCache;
+import ibis.structure.Configure;
+import ibis.structure.ForkJoinExecutor;
+import ibis.structure.PreprocessActivity;
+import ibis.structure.Reader;
+import ibis.structure.RestartScheduler;
+import ibis.structure.Skeleton;
+import ibis.structure.Solution;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Runs the solver end to end on lists of instances.<br/>
+ *
+ * Instances come from sat09 selection lists (testing/sat09/easy,
+ * selection-*.txt) resolved against the directory of the list, or
+ * from a directory of CNF files. Every instance is solved with every
+ * profile; a profile is a name and Configure arguments, e.g.
+ * "nosplit=-nosplit -e 2".<br/>
+ *
+ * By default every instance is solved in its own JVM which is
+ * killed on timeout, so nothing a timed out instance leaves running
+ * (activities, MemoryBudget, learned clauses, restart timers) leaks
+ * into the next one. Forked JVMs get the arguments of this JVM
+ * unless -jvm is given.<br/>
+ *
+ * -inprocess solves the instances in this JVM on a fresh
+ * ForkJoinExecutor after Configure is reset, so the JIT is warm
+ * after the first instances. The activities of a timed out
+ * instance are cancelled but may keep running and skew the
+ * following instances; use it only when instances finish
+ * within the timeout.<br/>
+ *
+ * Models are checked against the input and verdicts against the
+ * expected verdicts of the selection lists; failures count as WRONG.
+ * Results are scored by PAR-2 (see Scores).
+ */
+public final class BenchmarkRunner {
+  /** Seconds a forked JVM gets after the timeout before it is killed. */
+  private static final int FORK_GRACE = 30;
+  /** Prefix of the result line printed by a forked JVM. */
+  private static final String RESULT = "result ";
+
+  /** Initial values of Configure's fields. */
+  private static final Map<Field, Object> defaults = snapshot();
+
+  /** Instance paths as given and their expected verdicts. */
+  private final Map<String, String> expected =
+      new LinkedHashMap<String, String>();
+  /** Instance paths as given and their files. */
+  private final Map<String, File> files = new LinkedHashMap<String, File>();
+  /** Profile names and their arguments. */
+  private final Map<String, String[]> profiles =
+      new LinkedHashMap<String, String[]>();
+  private int timeout = 300;
+  private boolean fork = true;
+  private List<String> jvmArgs =
+      ManagementFactory.getRuntimeMXBean().getInputArguments();
+  private File log = new File("benchmark.log");
+
+  private BenchmarkRunner() {
+  }
+
+  public static void main(final String[] args) throws Exception {
+    BenchmarkRunner runner = new BenchmarkRunner();
+    CommandLine cl = runner.configure(args);
+    if (cl == null) {
+      System.exit(1);
+    }
+
+    if (cl.hasOption("child")) {
+      // Forked by a parent runner to solve a single instance.
+      Map.Entry<String, String[]> profile =
+          runner.profiles.entrySet().iterator().next();
+      Scores.Result result = runner.solve(
+          profile.getKey(), profile.getValue(), cl.getArgs()[0],
+          new File(cl.getArgs()[0]));
+      System.out.println(RESULT + result.format());
+      System.exit(0);
+    }
+
+    Scores scores = new Scores(runner.timeout);
+    for (String name : runner.files.keySet()) {
+      for (Map.Entry<String, String[]> profile : runner.profiles.entrySet()) {
+        Scores.Result result = runner.fork
+            ? runner.fork(profile.getKey(), profile.getValue(), name)
+            : runner.solve(profile.getKey(), profile.getValue(), name,
+                           runner.files.get(name));
+        System.out.println(result.format());
+        scores.add(result);
+      }
+    }
+
+    System.out.println();
+    scores.print(System.out);
+    if (cl.hasOption("baseline")) {
+      System.out.println();
+      scores.diff(Scores.load(new File(cl.getOptionValue("baseline"))),
+                  System.out);
+    }
+    if (cl.hasOption("save")) {
+      scores.save(new File(cl.getOptionValue("save")));
+    }
+    System.exit(0);
+  }
+
+  /** Parses the arguments or returns null on error. */
+  private CommandLine configure(final String[] args) throws IOException {
+    Options options = new Options();
+    options.addOption("help", false, "print this help");
+    options.addOption("list", true, "sat09 instance list (repeatable)");
+    options.addOption("dir", true, "directory of CNF files (repeatable)");
+    options.addOption("profile", true,
+                      "name=Configure arguments (repeatable)");
+    options.addOption("timeout", true, "seconds per instance (default 300)");
+    options.addOption("inprocess", false,
+                      "solve all instances in this JVM (no forks)");
+    options.addOption("jvm", true, "arguments of forked JVMs");
+    options.addOption("log", true, "file receiving the logs of forked JVMs");
+    options.addOption("save", true, "save results to file");
+    options.addOption("baseline", true, "compare with results saved before");
+    options.addOption("child", false, "solve one instance for a parent");
+
+    CommandLine cl = null;
+    try {
+      cl = new BasicParser().parse(options, args);
+    } catch (ParseException e) {
+      System.err.println(e.getMessage());
+    }
+    if (cl == null || cl.hasOption("help") || (!cl.hasOption("child")
+                       && !cl.hasOption("list") && !cl.hasOption("dir"))) {
+      new HelpFormatter().printHelp("benchmark", options, true);
+      return null;
+    }
+
+    if (cl.hasOption("list")) {
+      for (String list : cl.getOptionValues("list")) {
+        readList(new File(list));
+      }
+    }
+    if (cl.hasOption("dir")) {
+      for (String dir : cl.getOptionValues("dir")) {
+        readDirectory(new File(dir));
+      }
+    }
+    if (cl.hasOption("profile")) {
+      for (String profile : cl.getOptionValues("profile")) {
+        int eq = profile.indexOf('=');
+        String arguments = eq == -1 ? "" : profile.substring(eq + 1).trim();
+        profiles.put(eq == -1 ? profile : profile.substring(0, eq),
+                     arguments.isEmpty()
+                     ? new String[0] : arguments.split("\\s+"));
+      }
+    } else {
+      profiles.put("default", new String[0]);
+    }
+    if (cl.hasOption("timeout")) {
+      timeout = Integer.parseInt(cl.getOptionValue("timeout"));
+    }
+    fork = !cl.hasOption("inprocess");
+    if (cl.hasOption("jvm")) {
+      jvmArgs = Arrays.asList(cl.getOptionValue("jvm").trim().split("\\s+"));
+    }
+    if (cl.hasOption("log")) {
+      log = new File(cl.getOptionValue("log"));
+    }
+    return cl;
+  }
+
+  /**
+   * Reads a list of paths relative to the directory of list.
+   * Lines are either a path or "LEVEL path VERDICT".
+   */
+  private void readList(final File list) throws IOException {
+    BufferedReader in = new BufferedReader(new FileReader(list));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] tokens = line.trim().split("\\s+");
+        if (tokens[0].isEmpty() || tokens[0].startsWith("#")) {
+          continue;
+        }
+        String path = tokens.length >= 3 ? tokens[1] : tokens[0];
+        files.put(path, new File(list.getParentFile(), path));
+        expected.put(path, tokens.length >= 3 ? tokens[2] : "UNKNOWN");
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Adds the CNF files of dir in alphabetical order. */
+  private void readDirectory(final File dir) throws IOException {
+    File[] found = dir.listFiles();
+    if (found == null) {
+      throw new IOException("Cannot list " + dir);
+    }
+    Arrays.sort(found);
+    for (File file : found) {
+      String name = file.getName();
+      if (name.endsWith(".cnf") || name.endsWith(".cnf.gz")) {
+        files.put(file.getPath(), file);
+        expected.put(file.getPath(), "UNKNOWN");
+      }
+    }
+  }
+
+  /** Solves an instance in a new JVM. */
+  private Scores.Result fork(final String profile,
+                             final String[] arguments,
+                             final String name)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<String>();
+    command.add(new File(new File(System.getProperty("java.home"), "bin"),
+                         "java").getPath());
+    command.addAll(jvmArgs);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(BenchmarkRunner.class.getName());
+    command.add("-child");
+    command.add("-timeout");
+    command.add(Integer.toString(timeout));
+    command.add("-profile");
+    command.add(profile + "=" + join(arguments));
+    command.add(files.get(name).getPath());
+
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.redirectError(ProcessBuilder.Redirect.appendTo(log));
+    final Process process = builder.start();
+
+    // Kills the JVM if it does not stop by itself.
+    Thread watchdog = new Thread("Watchdog") {
+      public void run() {
+        try {
+          Thread.sleep((timeout + FORK_GRACE) * 1000L);
+          process.destroy();
+        } catch (InterruptedException e) {
+          // Process finished.
+        }
+      }
+    };
+    watchdog.setDaemon(true);
+    watchdog.start();
+
+    Scores.Result result = null;
+    BufferedReader in = new BufferedReader(
+        new InputStreamReader(process.getInputStream()));
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (line.startsWith(RESULT)) {
+        result = Scores.Result.parse(line.substring(RESULT.length()));
+      }
+    }
+    process.waitFor();
+    watchdog.interrupt();
+
+    if (result == null) {
+      // Killed or crashed.
+      return new Scores.Result(profile, name, "UNKNOWN", timeout, 0, 0);
+    }
+    return new Scores.Result(profile, name, check(name, result.verdict),
+                             result.time, result.memory, result.nodes);
+  }
+
+  /** Solves an instance in this JVM. */
+  private Scores.Result solve(final String profile,
+                              final String[] arguments,
+                              final String name,
+                              final File file) throws Exception {
+    String[] args = new String[arguments.length + 3];
+    args[0] = "-fj";
+    args[1] = "-q";
+    System.arraycopy(arguments, 0, args, 2, arguments.length);
+    args[args.length - 1] = file.getPath();
+    reset();
+    if (!Configure.configure(args)) {
+      throw new IllegalArgumentException(
+          "Invalid arguments of profile " + profile);
+    }
+
+    resetPeakMemory();
+    long nodes = RestartScheduler.numNodes();
+    long start = System.currentTimeMillis();
+    Skeleton instance = Reader.parseURL(file.getPath());
+    Configure.fitExecutors(instance);
+
+    ForkJoinExecutor executor = new ForkJoinExecutor(Configure.numExecutors);
+    ActivityIdentifier root = executor.collector();
+    executor.submit(new PreprocessActivity(root, null, instance));
+    long left = timeout * 1000L - (System.currentTimeMillis() - start);
+    Event e;
+    try {
+      e = executor.waitForEvent(root, Math.max(left, 1));
+    } catch (ExecutionException x) {
+      // The failure was logged; the instance counts as unknown.
+      e = null;
+    }
+    if (e == null) {
+      RestartScheduler.killAll();
+    }
+    executor.shutdown();
+    double time = (System.currentTimeMillis() - start) / 1000.;
+
+    String verdict = "UNKNOWN";
+    Solution solution = e == null ? null : (Solution) e.data;
+    if (solution != null && solution.isSatisfiable()) {
+      verdict = verify(Reader.parseURL(file.getPath()), solution.units())
+          ? "SAT" : "WRONG";
+    } else if (solution != null && solution.isUnsatisfiable()) {
+      verdict = "UNSAT";
+    }
+    return new Scores.Result(profile, name, check(name, verdict),
+                             Math.min(time, timeout), peakMemory(),
+                             RestartScheduler.numNodes() - nodes);
+  }
+
+  /** Returns WRONG if verdict contradicts the expected verdict. */
+  private String check(final String name, final String verdict) {
+    String expect = expected.get(name);
+    if (expect == null || expect.equals("UNKNOWN")
+        || verdict.equals("UNKNOWN")) {
+      return verdict;
+    }
+    return expect.equals(verdict) ? verdict : "WRONG";
+  }
+
+  /** Returns true if units satisfy all clauses of instance. */
+  private static boolean verify(final Skeleton instance,
+                                final TIntArrayList units) {
+    boolean[] value = new boolean[2 * instance.numVariables + 1];
+    for (int i = 0; i < units.size(); i++) {
+      int u = units.getQuick(i);
+      if (var(u) <= instance.numVariables) {
+        value[u + instance.numVariables] = true;
+      }
+    }
+
+    TIntArrayList formula = instance.formula;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      int numTrue = 0;
+      for (int i = clause; i < clause + length(formula, clause); i++) {
+        int u = formula.getQuick(i);
+        if (value[u + instance.numVariables]) {
+          numTrue++;
+        } else if (!value[-u + instance.numVariables]) {
+          return false;  // unassigned
+        }
+      }
+
+      int type = type(formula, clause);
+      if (type == OR ? numTrue == 0
+          : (numTrue % 2 == 1) != (type == XOR)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Restores Configure and drops the state left by previous runs. */
+  private static void reset() throws IllegalAccessException {
+    for (Map.Entry<Field, Object> entry : defaults.entrySet()) {
+      Object value = entry.getValue();
+      if (value instanceof double[]) {
+        value = ((double[]) value).clone();
+      }
+      entry.getKey().set(null, value);
+    }
+    ComponentCache.clear();
+    System.gc();
+  }
+
+  /** Returns the initial values of Configure's mutable fields. */
+  private static Map<Field, Object> snapshot() {
+    Map<Field, Object> values = new LinkedHashMap<Field, Object>();
+    try {
+      for (Field field : Configure.class.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) && Modifier.isPublic(modifiers)
+            && !Modifier.isFinal(modifiers)) {
+          Object value = field.get(null);
+          values.put(field, value instanceof double[]
+                     ? ((double[]) value).clone() : value);
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+    return values;
+  }
+
+  private static void resetPeakMemory() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /** Returns the peak heap usage in MiB since resetPeakMemory(). */
+  private static long peakMemory() {
+    long bytes = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        bytes += pool.getPeakUsage().getUsed();
+      }
+    }
+    return bytes >> 20;
+  }
+
+  private static String join(final String[] arguments) {
+    StringBuilder builder = new StringBuilder();
+    for (String argument : arguments) {
+      builder.append(builder.length() == 0 ? "" : " ").append(argument);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,200 @@
+package ibis.structure.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Results of a benchmark run scored by PAR-2.<br/>
+ *
+ * The PAR-2 score of a result is its time if the instance was
+ * solved correctly and twice the timeout otherwise (timeouts,
+ * UNKNOWN and WRONG verdicts). Lower is better.<br/>
+ *
+ * Results are saved as tab separated lines
+ * "profile instance verdict seconds MiB nodes" after a
+ * "# timeout seconds" line.
+ */
+public final class Scores {
+  /** Relative change in time reported by diff(). */
+  private static final double CHANGE = 0.1;
+  /** Seconds below which changes in time are noise. */
+  private static final double NOISE = 1.;
+
+  /** Result of solving an instance with a profile. */
+  public static final class Result {
+    final String profile;
+    final String instance;
+    /** SAT, UNSAT, UNKNOWN or WRONG. */
+    final String verdict;
+    /** Wall-clock seconds. */
+    final double time;
+    /** Peak heap in MiB. */
+    final long memory;
+    /** Search nodes solved. */
+    final long nodes;
+
+    Result(final String profile, final String instance, final String verdict,
+           final double time, final long memory, final long nodes) {
+      this.profile = profile;
+      this.instance = instance;
+      this.verdict = verdict;
+      this.time = time;
+      this.memory = memory;
+      this.nodes = nodes;
+    }
+
+    boolean isSolved() {
+      return verdict.equals("SAT") || verdict.equals("UNSAT");
+    }
+
+    String format() {
+      return String.format(Locale.US, "%s\t%s\t%s\t%.2f\t%d\t%d",
+                           profile, instance, verdict, time, memory, nodes);
+    }
+
+    static Result parse(final String line) {
+      String[] tokens = line.split("\t");
+      return new Result(tokens[0], tokens[1], tokens[2],
+                        Double.parseDouble(tokens[3]),
+                        Long.parseLong(tokens[4]),
+                        Long.parseLong(tokens[5]));
+    }
+  }
+
+  private final int timeout;
+  /** Results by profile then by instance. */
+  private final Map<String, Map<String, Result>> results =
+      new LinkedHashMap<String, Map<String, Result>>();
+
+  public Scores(final int timeout) {
+    this.timeout = timeout;
+  }
+
+  public void add(final Result result) {
+    Map<String, Result> profile = results.get(result.profile);
+    if (profile == null) {
+      profile = new LinkedHashMap<String, Result>();
+      results.put(result.profile, profile);
+    }
+    profile.put(result.instance, result);
+  }
+
+  /** Returns the PAR-2 score of result. */
+  private double par2(final Result result) {
+    return result.isSolved() ? result.time : 2. * timeout;
+  }
+
+  /** Prints a line per profile. */
+  public void print(final PrintStream out) {
+    out.printf(Locale.US, "%-16s %8s %6s %6s %12s %10s %12s%n",
+               "profile", "solved", "sat", "wrong", "par-2", "max MiB",
+               "nodes");
+    for (Map.Entry<String, Map<String, Result>> entry : results.entrySet()) {
+      int numSolved = 0, numSatisfiable = 0, numWrong = 0;
+      long memory = 0, nodes = 0;
+      double score = 0;
+      for (Result result : entry.getValue().values()) {
+        numSolved += result.isSolved() ? 1 : 0;
+        numSatisfiable += result.verdict.equals("SAT") ? 1 : 0;
+        numWrong += result.verdict.equals("WRONG") ? 1 : 0;
+        memory = Math.max(memory, result.memory);
+        nodes += result.nodes;
+        score += par2(result);
+      }
+      out.printf(Locale.US, "%-16s %8s %6d %6d %12.2f %10d %12d%n",
+                 entry.getKey(),
+                 numSolved + "/" + entry.getValue().size(),
+                 numSatisfiable, numWrong, score, memory, nodes);
+    }
+  }
+
+  /**
+   * Compares with baseline on the instances both ran with a
+   * profile. Prints the change of PAR-2 per profile and the
+   * instances whose verdict or time changed.
+   */
+  public void diff(final Scores baseline, final PrintStream out) {
+    for (Map.Entry<String, Map<String, Result>> entry : results.entrySet()) {
+      Map<String, Result> before = baseline.results.get(entry.getKey());
+      if (before == null) {
+        out.println(entry.getKey() + ": not in baseline");
+        continue;
+      }
+
+      double now = 0, then = 0;
+      List<String> changes = new ArrayList<String>();
+      for (Result result : entry.getValue().values()) {
+        Result old = before.get(result.instance);
+        if (old == null) {
+          continue;
+        }
+        now += par2(result);
+        then += baseline.par2(old);
+
+        String change = null;
+        if (!result.verdict.equals(old.verdict)) {
+          change = "verdict";
+        } else if (Math.abs(result.time - old.time) > NOISE
+                   && Math.abs(result.time - old.time) > CHANGE * old.time) {
+          change = result.time > old.time ? "slower" : "faster";
+        }
+        if (change != null) {
+          changes.add(String.format(Locale.US, "  %-8s %s %s %.2f -> %s %.2f",
+                                    change, result.instance,
+                                    old.verdict, old.time,
+                                    result.verdict, result.time));
+        }
+      }
+
+      out.printf(Locale.US, "%s: par-2 %.2f -> %.2f (%+.1f%%)%n",
+                 entry.getKey(), then, now,
+                 then == 0 ? 0. : 100. * (now - then) / then);
+      for (String change : changes) {
+        out.println(change);
+      }
+    }
+  }
+
+  public void save(final File file) throws IOException {
+    PrintStream out = new PrintStream(file);
+    try {
+      out.println("# timeout " + timeout);
+      for (Map<String, Result> profile : results.values()) {
+        for (Result result : profile.values()) {
+          out.println(result.format());
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  public static Scores load(final File file) throws IOException {
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line = in.readLine();
+      if (line == null || !line.startsWith("# timeout ")) {
+        throw new IOException(file + " is not a saved benchmark run");
+      }
+      Scores scores = new Scores(
+          Integer.parseInt(line.substring("# timeout ".length())));
+      while ((line = in.readLine()) != null) {
+        if (!line.isEmpty()) {
+          scores.add(Result.parse(line));
+        }
+      }
+      return scores;
+    } finally {
+      in.close();
+    }
+  }
+}
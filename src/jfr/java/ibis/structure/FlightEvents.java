@@ -0,0 +1,145 @@
+package ibis.structure;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+
+/**
+ * JDK Flight Recorder event types, used only through Flight.<br/>
+ *
+ * Compiled for JDK 11 by the jfr profile. Events are created only
+ * when their type is enabled by a recording; the EventTypes are
+ * looked up once so the check does not allocate.<br/>
+ *
+ * Activity calls shorter than 1 ms are dropped by default so
+ * always-on recordings stay small; lower the threshold of
+ * structure.Activity in the recording settings to see all.
+ */
+final class FlightEvents implements Flight.Sink {
+  /** Created by Flight through reflection. */
+  FlightEvents() {
+  }
+
+  @Name("structure.Activity")
+  @Label("Activity")
+  @Category("STRUCTure")
+  @Description("A call to initialize() or process() of an activity")
+  @StackTrace(false)
+  @Threshold("1 ms")
+  static final class ActivityEvent extends Event {
+    @Label("Type")
+    String type;
+    @Label("Initialize")
+    boolean initialize;
+    @Label("Depth")
+    int depth;
+    @Label("Generation")
+    long generation;
+    @Label("Instance Size")
+    int size;
+  }
+
+  @Name("structure.GenerationStart")
+  @Label("Generation Start")
+  @Category("STRUCTure")
+  @StackTrace(false)
+  static final class GenerationStartEvent extends Event {
+    @Label("Generation")
+    long generation;
+    @Label("Budget")
+    @Description("Work units before the generation is checked")
+    long budget;
+    @Label("Instance Size")
+    int size;
+  }
+
+  @Name("structure.GenerationKill")
+  @Label("Generation Kill")
+  @Category("STRUCTure")
+  @StackTrace(false)
+  static final class GenerationKillEvent extends Event {
+    @Label("Generation")
+    long generation;
+  }
+
+  @Name("structure.Simplification")
+  @Label("Simplification")
+  @Category("STRUCTure")
+  @Description("A simplification pass and what it removed or found")
+  @StackTrace(false)
+  static final class SimplificationEvent extends Event {
+    @Label("Technique")
+    String technique;
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+    @Label("Yield")
+    long yield;
+  }
+
+  private static final EventType ACTIVITY =
+      EventType.getEventType(ActivityEvent.class);
+  private static final EventType GENERATION_START =
+      EventType.getEventType(GenerationStartEvent.class);
+  private static final EventType GENERATION_KILL =
+      EventType.getEventType(GenerationKillEvent.class);
+  private static final EventType SIMPLIFICATION =
+      EventType.getEventType(SimplificationEvent.class);
+
+  public Object begin(final Activity activity, final boolean initialize) {
+    if (!ACTIVITY.isEnabled()) {
+      return null;
+    }
+    ActivityEvent event = new ActivityEvent();
+    event.type = activity.getClass().getSimpleName();
+    event.initialize = initialize;
+    event.depth = activity.depth;
+    event.generation = activity.generation;
+    event.size = activity.instance == null ? -1 : activity.instance.size();
+    event.begin();
+    return event;
+  }
+
+  public void end(final Object event) {
+    ((ActivityEvent) event).commit();
+  }
+
+  public void generationStart(final long generation,
+                              final long budget,
+                              final int size) {
+    if (GENERATION_START.isEnabled()) {
+      GenerationStartEvent event = new GenerationStartEvent();
+      event.generation = generation;
+      event.budget = budget;
+      event.size = size;
+      event.commit();
+    }
+  }
+
+  public void generationKill(final long generation) {
+    if (GENERATION_KILL.isEnabled()) {
+      GenerationKillEvent event = new GenerationKillEvent();
+      event.generation = generation;
+      event.commit();
+    }
+  }
+
+  public void simplification(final String technique,
+                             final long nanos,
+                             final long yield) {
+    if (SIMPLIFICATION.isEnabled()) {
+      SimplificationEvent event = new SimplificationEvent();
+      event.technique = technique;
+      event.elapsed = nanos;
+      event.yield = yield;
+      event.commit();
+    }
+  }
+}
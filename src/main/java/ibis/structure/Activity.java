@@ -6,7 +6,6 @@ import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 import ibis.constellation.ActivityIdentifier;
-import ibis.constellation.context.UnitActivityContext;
 import ibis.constellation.Event;
 import org.apache.log4j.Logger;
 
@@ -28,12 +27,45 @@ public class Activity extends ibis.constellation.Activity {
   protected long generation = 0;
   /** Variables scores. */
   protected TDoubleArrayList scores = null;
-  /** Instance to be solved. */
-  protected Skeleton instance = null;
+  /** Instance to be solved (see writeObject()). */
+  protected transient Skeleton instance = null;
   /** Original instance to be solved. */
   protected Skeleton original = null;
   /** True if activity was already replied. */
   private boolean replied = false;
+  /** Thread which created this activity (see StealPolicy). */
+  protected final long origin = StealPolicy.origin();
+  /** Node of this activity in the search trace or 0 (see SearchTrace). */
+  final transient long traceNode = SearchTrace.node();
+  /** Node which created this activity or 0. */
+  final transient long traceParent = SearchTrace.current();
+  /** Scope cancelling this activity or null (see Cancellation). */
+  transient Cancellation.Scope scope = Cancellation.scope();
+
+  /**
+   * Executor running this activity. Hides Constellation's
+   * executor so activities run unchanged on ForkJoinExecutor.
+   */
+  protected ActivityExecutor executor = new ConstellationExecutor();
+  /** Identifier given by ForkJoinExecutor or null for Constellation. */
+  private transient ActivityIdentifier localIdentifier = null;
+  /** True if activity finished. */
+  private transient boolean finished = false;
+  /** Bytes of instance registered with MemoryBudget. */
+  private transient long accounted = 0;
+
+  /** Forwards calls to the Constellation executor running this activity. */
+  private final class ConstellationExecutor
+      implements ActivityExecutor, Serializable {
+    public ActivityIdentifier submit(
+        final ibis.constellation.Activity activity) {
+      return Activity.super.executor.submit(activity);
+    }
+
+    public void send(final Event e) {
+      Activity.super.executor.send(e);
+    }
+  }
 
   /**
    * Creates an activity.
@@ -50,13 +82,17 @@ public class Activity extends ibis.constellation.Activity {
                      final long generation,
                      final TDoubleArrayList scores,
                      final Skeleton instance) {
-    super(UnitActivityContext.DEFAULT, true);
+    super(StealPolicy.context(depth, instance), true);
     this.parent = parent;
     this.tracer = tracer;
     this.depth = depth;
     this.generation = generation;
     this.scores = scores;
     this.instance = instance;
+    if (generation != 0 && instance != null) {
+      // Only the instances of the search are accounted.
+      accounted = MemoryBudget.acquire(instance);
+    }
 
     if (Configure.enableExpensiveChecks) {
       verify(instance);
@@ -64,6 +100,60 @@ public class Activity extends ibis.constellation.Activity {
     }
   }
 
+  /**
+   * Writes instance as a difference from the base formula
+   * of the generation if one is registered (see BaseFormula).
+   *
+   * An activity is serialized when it moves to another node
+   * (stolen or lent) so its instance is released here and
+   * acquired again by readObject() on the node running it.
+   */
+  private void writeObject(final ObjectOutputStream out) throws IOException {
+    release();
+    out.defaultWriteObject();
+    BaseFormula base = instance == null ? null : BaseFormula.get(generation);
+    out.writeBoolean(base != null);
+    if (base != null) {
+      base.writeDelta(out, instance);
+    } else {
+      out.writeObject(instance);
+    }
+  }
+
+  private void readObject(final ObjectInputStream in)
+      throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (in.readBoolean()) {
+      BaseFormula base = BaseFormula.get(generation);
+      if (base == null) {
+        throw new IOException("Missing base formula of " + generation);
+      }
+      instance = base.readDelta(in);
+    } else {
+      instance = (Skeleton) in.readObject();
+    }
+    if (generation != 0 && instance != null) {
+      accounted = MemoryBudget.acquire(instance);
+    }
+  }
+
+  /** Binds this activity to a ForkJoinExecutor. */
+  final void bind(final ForkJoinExecutor executor,
+                  final ActivityIdentifier identifier) {
+    this.executor = executor;
+    this.localIdentifier = identifier;
+  }
+
+  /** Returns true if the activity called finish(). */
+  final boolean isFinished() {
+    return finished;
+  }
+
+  @Override
+  public ActivityIdentifier identifier() {
+    return localIdentifier != null ? localIdentifier : super.identifier();
+  }
+
   /**
    * Sends response back to parent.
    *
@@ -79,11 +169,31 @@ public class Activity extends ibis.constellation.Activity {
     executor.send(new Event(identifier(), parent, response));
   }
 
+  /**
+   * Sends a result other than a solution back to parent.
+   *
+   * @param data result to send to parent
+   */
+  protected final void reply(final Serializable data) {
+    assert !replied : "Already replied";
+    replied = true;
+
+    executor.send(new Event(identifier(), parent, data));
+  }
+
   /** Sets unneeded variables to null so they can be reclaimed by GC. */
   protected void gc() {
     instance = null;
   }
 
+  /** Releases the memory of instance from MemoryBudget. */
+  final void release() {
+    if (accounted != 0) {
+      MemoryBudget.release(accounted);
+      accounted = 0;
+    }
+  }
+
   /**
    * Verifies an instance.
    *
@@ -271,20 +381,61 @@ public class Activity extends ibis.constellation.Activity {
   @Override
   public void suspend() {
     gc();
-    super.suspend();
+    if (instance == null) {
+      release();
+    }
+    if (localIdentifier == null) {
+      super.suspend();
+    }
   }
 
   @Override
   public void finish() {
-    super.finish();
+    finished = true;
+    release();
+    if (localIdentifier == null) {
+      super.finish();
+    }
   }
 
+  /**
+   * Called by the executor, Constellation or ForkJoinExecutor.
+   * Records the call (see SearchTrace and Flight) around doInitialize().
+   */
   @Override
-  public void initialize() throws Exception {
+  public final void initialize() throws Exception {
+    Object event = Flight.begin(this, true);
+    SearchTrace.enter(this);
+    try {
+      doInitialize();
+    } finally {
+      SearchTrace.exit(this);
+      Flight.end(event);
+    }
   }
 
+  /**
+   * Called by the executor for every event.
+   * Records the call (see SearchTrace and Flight) around doProcess().
+   */
   @Override
-  public void process(final Event e) throws Exception {
+  public final void process(final Event e) throws Exception {
+    Object event = Flight.begin(this, false);
+    SearchTrace.enter(this);
+    try {
+      doProcess(e);
+    } finally {
+      SearchTrace.exit(this);
+      Flight.end(event);
+    }
+  }
+
+  /** Starts the activity. */
+  protected void doInitialize() throws Exception {
+  }
+
+  /** Handles an event, by default replies the solution received. */
+  protected void doProcess(final Event e) throws Exception {
     reply((Solution) e.data);
     finish();
   }
@@ -0,0 +1,28 @@
+package ibis.structure;
+
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+
+
+/**
+ * Executes activities and delivers events between them.
+ *
+ * Activities use the same submit / send calls regardless of
+ * the backend: Constellation or ForkJoinExecutor.
+ */
+public interface ActivityExecutor {
+  /**
+   * Submits a new activity.
+   *
+   * @param activity activity to run
+   * @return identifier of the submitted activity
+   */
+  ActivityIdentifier submit(ibis.constellation.Activity activity);
+
+  /**
+   * Sends an event to the activity e.target.
+   *
+   * @param e event to send
+   */
+  void send(Event e);
+}
@@ -0,0 +1,190 @@
+package ibis.structure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * The formula a generation started from, shared by all its nodes.<br/>
+ *
+ * Nodes of a generation differ from the base formula by a few
+ * branches and by the clauses their simplifications changed.
+ * When a node is sent to another JVM only the difference is
+ * written: the base clauses it no longer has and the clauses it
+ * added. The receiver keeps the base formula of every live
+ * generation and rebuilds the node's instance from it.<br/>
+ *
+ * The base formulas are removed when their generation is killed.
+ */
+public final class BaseFormula implements java.io.Serializable {
+  private static final Logger logger = Logger.getLogger(BaseFormula.class);
+
+  /** Base formulas of live generations in this JVM. */
+  private static final ConcurrentHashMap<Long, BaseFormula> bases =
+      new ConcurrentHashMap<Long, BaseFormula>();
+
+  /** Generation of this formula. */
+  public final long generation;
+  /** The base instance, never changed. */
+  private final Skeleton instance;
+  /** Start of every clause in instance. */
+  private transient TIntArrayList starts = null;
+  /** Maps hashes of clauses to their indexes in starts. */
+  private transient TIntObjectHashMap<TIntArrayList> index = null;
+
+  private BaseFormula(final long generation, final Skeleton instance) {
+    this.generation = generation;
+    this.instance = instance;
+  }
+
+  /** Registers a copy of instance as the base of generation. */
+  public static void register(final long generation, final Skeleton instance) {
+    Skeleton copy = instance.clone();
+    compact(copy.formula);
+    bases.put(generation, new BaseFormula(generation, copy));
+  }
+
+  /** Registers a base formula received from another JVM. */
+  public static void register(final BaseFormula base) {
+    bases.put(base.generation, base);
+  }
+
+  /** Returns the base formula of generation or null. */
+  public static BaseFormula get(final long generation) {
+    return bases.get(generation);
+  }
+
+  /** Removes the base formula of a killed generation. */
+  public static void remove(final long generation) {
+    bases.remove(generation);
+  }
+
+  /**
+   * Writes instance as a difference from this formula.
+   *
+   * @param out output to write to
+   * @param node instance of a node of this generation
+   */
+  public void writeDelta(final DataOutput out, final Skeleton node)
+      throws IOException {
+    buildIndex();
+
+    boolean[] kept = new boolean[starts.size()];
+    TIntArrayList added = new TIntArrayList();
+    TIntArrayList formula = node.formula;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      int base = find(formula, clause, kept);
+      if (base == -1) {
+        copy(added, formula, clause);
+      } else {
+        kept[base] = true;
+      }
+    }
+
+    // Removed clauses are written as gaps between their indexes.
+    TIntArrayList removed = new TIntArrayList();
+    for (int i = 0, last = 0; i < kept.length; i++) {
+      if (!kept[i]) {
+        removed.add(i - last);
+        last = i;
+      }
+    }
+
+    Wire.writeVarint(out, node.numVariables);
+    Wire.writeInts(out, removed);
+    Wire.writeFormula(out, added);
+  }
+
+  /** Reads an instance written by writeDelta(). */
+  public Skeleton readDelta(final DataInput in) throws IOException {
+    int numVariables = Wire.readVarint(in);
+    TIntArrayList removed = Wire.readInts(in);
+    TIntArrayList added = Wire.readFormula(in);
+
+    TIntArrayList formula = new TIntArrayList(instance.size() + added.size());
+    ClauseIterator it = new ClauseIterator(instance.formula);
+    for (int i = 0, r = 0, next = 0; it.hasNext(); i++) {
+      int clause = it.next();
+      if (r < removed.size() && i == next + removed.getQuick(r)) {
+        next = i;
+        r++;
+        continue;
+      }
+      copy(formula, instance.formula, clause);
+    }
+    formula.addAll(added);
+    return new Skeleton(numVariables, formula);
+  }
+
+  /** Indexes the clauses of instance by their hash. */
+  private synchronized void buildIndex() {
+    if (index != null) {
+      return;
+    }
+
+    starts = new TIntArrayList();
+    index = new TIntObjectHashMap<TIntArrayList>();
+    ClauseIterator it = new ClauseIterator(instance.formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      int hash = hash(instance.formula, clause);
+      TIntArrayList clauses = index.get(hash);
+      if (clauses == null) {
+        clauses = new TIntArrayList();
+        index.put(hash, clauses);
+      }
+      clauses.add(starts.size());
+      starts.add(clause);
+    }
+  }
+
+  /** Returns an unused base clause equal to clause or -1. */
+  private int find(final TIntArrayList formula,
+                   final int clause,
+                   final boolean[] kept) {
+    TIntArrayList clauses = index.get(hash(formula, clause));
+    if (clauses == null) {
+      return -1;
+    }
+
+    int length = length(formula, clause);
+    for (int i = 0; i < clauses.size(); i++) {
+      int base = clauses.getQuick(i);
+      int start = starts.getQuick(base);
+      if (kept[base]
+          || instance.formula.getQuick(start - 1)
+             != formula.getQuick(clause - 1)) {
+        continue;
+      }
+
+      boolean equal = true;
+      for (int j = 0; j < length && equal; j++) {
+        equal = instance.formula.getQuick(start + j)
+                == formula.getQuick(clause + j);
+      }
+      if (equal) {
+        return base;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns a hash of the header and literals of clause. */
+  private static int hash(final TIntArrayList formula, final int clause) {
+    int hash = formula.getQuick(clause - 1);
+    int length = length(formula, clause);
+    for (int i = clause; i < clause + length; i++) {
+      hash = Misc.hash(hash + formula.getQuick(i));
+    }
+    return hash;
+  }
+}
@@ -1,7 +1,6 @@
 package ibis.structure;
 
 import gnu.trove.list.array.TDoubleArrayList;
-import gnu.trove.set.hash.TLongHashSet;
 import ibis.constellation.ActivityIdentifier;
 import ibis.constellation.Event;
 import org.apache.log4j.Logger;
@@ -10,14 +9,12 @@ import static ibis.structure.Misc.*;
 
 /**
  * This Activity purpose is to remove instances from
- * old generations.
+ * old generations. Killed generations are kept by Cancellation.
  */
 public final class BlackHoleActivity extends Activity {
   private static final Logger logger = Logger.getLogger(
       BlackHoleActivity.class);
 
-  /** A set of dead generations. */
-  private static TLongHashSet graveyard = new TLongHashSet();
   /** Branch (for SolveActivity). */
   private int branch;
 
@@ -35,21 +32,20 @@ public final class BlackHoleActivity extends Activity {
 
   /** Sets generation kill as dead. */
   public static void killGeneration(final long kill) {
-    synchronized (BlackHoleActivity.class) {
-      graveyard.add(kill);
-    }
+    Cancellation.kill(kill);
+  }
+
+  /** Returns true if generation was killed. */
+  public static boolean isDead(final long generation) {
+    return Cancellation.isKilled(generation);
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     TracerSlave.registerSlave(tracer);
+    StealPolicy.executed(origin, depth);
 
-    boolean dead;
-    synchronized (BlackHoleActivity.class) {
-      dead = graveyard.contains(generation);
-    }
-
-    if (dead) {
+    if (isDead(generation) || Cancellation.isCancelled(scope)) {
       reply(Solution.unknown());
       finish();
     } else {
@@ -60,7 +56,7 @@ public final class BlackHoleActivity extends Activity {
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     reply((Solution) e.data);
     finish();
   }
@@ -11,26 +11,75 @@ import static ibis.structure.Misc.*;
 /**
  * Performes <a href="http://fmv.jku.at/papers/JarvisaloBiereHeule-TACAS10.pdf">
  * Blocked Clause Elimination</a>.
+ *
+ * Only clauses near literals whose clauses changed since the previous
+ * run (see State) are checked. If clauses containing u change then
+ * every clause containing u or -u is checked on all its literals:
+ * such a clause can become blocked on any literal after it is
+ * extended with covered literals on u or -u.
+ *
+ * Before testing a clause is extended with hidden literals
+ * (from the implication graph) and covered literals.
+ * The work of each run is bounded by STEPS_LIMIT.
  */
 public final class BlockedClauseElimination {
   private static final Logger logger = Logger.getLogger(Solver.class);
+  private static final Statistics.Timer timer = Statistics.timer("bce");
+
+  /** Maximum number of literals visited in one run. */
+  private static final int STEPS_LIMIT = 1 << 24;
+
+  /**
+   * Information kept between runs on the same instance
+   * (i.e. between restarts).
+   */
+  public static final class State implements java.io.Serializable {
+    /** Signatures of clauses containing each literal at the end of last run. */
+    private int[] signatures = null;
+    /** Literals not checked because of the steps limit. */
+    private TIntArrayList pending = new TIntArrayList();
+  }
 
   /** Solver containing the instance. */
   private final Solver solver;
-  /** Literals seen in the tested clause. */
+  /** State from previous run. */
+  private final State state;
+  /** Literals seen in the tested clause, including covered literals. */
   private final TouchSet seen;
   /** Literals hidden with current literal. */
   private final TouchSet hidden;
+  /** Used to intersect clauses. */
+  private final TouchSet marked;
+  /** Literals in the tested clause, including covered literals. */
+  private final TIntArrayList extended = new TIntArrayList();
+  /** Clauses to be pushed on the restore stack if tested clause is blocked. */
+  private final TIntArrayList covered = new TIntArrayList();
+  /** Literals to check, including those already checked. */
+  final TIntArrayList queue = new TIntArrayList();
+  /** True for literals in queue. */
+  private final boolean[] queued;
+  /** Clauses removed, as restore stack. */
+  private final TIntArrayList bce = new TIntArrayList();
+  /** Number of literals visited. */
+  private int numSteps = 0;
+  /** Number of covered literals added. */
+  private int numCovered = 0;
 
-  public BlockedClauseElimination(final Solver solver) {
+  public BlockedClauseElimination(final Solver solver, final State state) {
     this.solver = solver;
+    this.state = state;
 
     seen = new TouchSet(solver.numVariables);
     hidden = new TouchSet(solver.numVariables);
+    marked = new TouchSet(solver.numVariables);
+    queued = new boolean[2 * solver.numVariables + 1];
   }
 
-  public static TIntArrayList run(final Solver solver) {
-    return (new BlockedClauseElimination(solver)).run();
+  public static TIntArrayList run(final Solver solver, final State state) {
+    long start = Statistics.start();
+    TIntArrayList bce = (new BlockedClauseElimination(solver, state)).run();
+    timer.stop(start, bce.size());
+    return bce;
   }
 
   /** Fixes units to satisfy blocked clauses. */
@@ -65,120 +114,270 @@ public final class BlockedClauseElimination {
   }
 
   /**
-   * For all literals finds clauses blocked on that literal. <br/>
+   * Finds clauses blocked on queued literals. <br/>
    *
    * @return a list of blocked clauses.
    */
-  private TIntArrayList run() {
+  TIntArrayList run() {
     solver.propagateBinaries();
+    seed();
 
-    TIntArrayList bce = new TIntArrayList();
-    TIntArrayList blocked = new TIntArrayList();;
     int numBlocked = 0;
-    int numLiterals = 0;
-
-    for (int iz = 0; iz < 3; iz++) {
-      for (int literal = -solver.numVariables;
-          literal <= solver.numVariables;
-          literal++) {
-        int ne = solver.watchLists.get(neg(literal)).size();
-        int pe = solver.watchLists.get(literal).size();
-        if (ne > 128 || 1L * ne * pe > 16384L) {
-          // This is a cutoff to avoid very expensive literals.
-          continue;
-        }
-        if (Configure.xor && hasXORClauses(literal)) {
-          // BCE can't handle xor clauses.
-          continue;
-        }
-
-        // Finds hidden literals by current literal
-        hidden.reset();
-        TIntArrayList foobar = new TIntArrayList();
-        solver.graph.bfs(neg(literal), foobar);
-        for (int i = 0; i < foobar.size(); i++) {
-          hidden.add(neg(literal));
-        }
+    int head = 0;
+    while (head < queue.size() && numSteps < STEPS_LIMIT) {
+      int literal = queue.getQuick(head++);
+      queued[literal + solver.numVariables] = false;
+      numBlocked += eliminate(literal);
+    }
 
-        // Checks each clause containing literal if it is blocked on literal.
-        blocked.reset();
-        TIntHashSet clauses = solver.watchLists.get(literal);
-        TIntIterator it = clauses.iterator();
-        for (int size = clauses.size(); size > 0; size--) {
-          int clause = it.next();
-          if (type(solver.formula, clause) == OR && isBlocked(literal, clause)) {
-            blocked.add(clause);
-          }
-        }
+    // Literals left are checked in the next run.
+    state.pending.reset();
+    state.pending.add(queue.toArray(head, queue.size() - head));
+    state.signatures = signatures();
 
-        numBlocked += blocked.size();
-        for (int i = 0; i < blocked.size(); i++) {
-          int clause = blocked.getQuick(i);
-          int length = length(solver.formula, clause);
-          numLiterals += length;
+    // Solution is reconstructed starting from last removed
+    // blocked clause.
+    bce.reverse();
 
-          // Moves blocked literal in front of the clause
-          int p = solver.formula.indexOf(clause, literal);
-          solver.formula.setQuick(p, solver.formula.getQuick(clause));
-          solver.formula.setQuick(clause, literal);
+    Statistics.add("bce.clauses", numBlocked);
+    Statistics.add("bce.covered", numCovered);
+    logger.info("Found " + bce.size() + " literals in "
+                + numBlocked + " blocked clauses ("
+                + numCovered + " covered literals, "
+                + (queue.size() - head) + " literals pending)");
+    return bce;
+  }
 
-          // Puts the clauses in reverse order.
-          for (int j = clause + 1; j < clause + length; j++) {
-            bce.add(solver.formula.getQuick(j));
-          }
-          bce.add(literal);
-          bce.add(encode(length, OR));
+  /** Queues literals of clauses near literals whose clauses changed. */
+  private void seed() {
+    int[] current = signatures();
+    int[] previous = state.signatures;
 
-          solver.watchLists.removeClause(clause);
+    if (previous == null || previous.length != current.length) {
+      for (int u = -solver.numVariables; u <= solver.numVariables; u++) {
+        if (u != 0) {
+          enqueue(u);
         }
       }
+      return;
     }
 
-    // Solution is reconstructed starting from last removed
-    // blocked clause.
-    bce.reverse();
+    for (int i = 0; i < state.pending.size(); i++) {
+      enqueue(state.pending.getQuick(i));
+    }
+    for (int u = -solver.numVariables; u <= solver.numVariables; u++) {
+      int u_ = u + solver.numVariables;
+      if (u != 0 && current[u_] != previous[u_]) {
+        // New clauses containing u are checked, too.
+        enqueueClauses(u);
+        enqueueClauses(neg(u));
+      }
+    }
+  }
 
-    logger.info("Found " + bce.size() + " literals in "
-                + numBlocked + " blocked clauses");
-    return bce;
+  /** Queues u and the literals of all clauses containing u. */
+  private void enqueueClauses(final int u) {
+    enqueue(u);
+    TIntHashSet clauses = solver.watchLists.get(u);
+    TIntIterator it = clauses.iterator();
+    for (int size = clauses.size(); size > 0; size--) {
+      int clause = it.next();
+      int length = length(solver.formula, clause);
+      for (int i = clause; i < clause + length; i++) {
+        enqueue(solver.formula.getQuick(i));
+      }
+      numSteps += length;
+    }
   }
 
   /**
-   * Returns true if there exists a XOR clause containing literal.
+   * Computes for every literal a signature of clauses containing it.
    *
-   * @param literal literal to search in XOR clauses
-   * @return true if there is XOR clause containing literal
+   * Clauses are identified by their literals, not by their
+   * position, because formula is compacted between runs.
    */
-  private boolean hasXORClauses(final int literal) {
-    TIntHashSet clauses = solver.watchLists.get(var(literal));
-    TIntIterator it = clauses.iterator();
-    for (int size = clauses.size(); size > 0; size--) {
+  private int[] signatures() {
+    final TIntArrayList formula = solver.formula;
+    int[] signatures = new int[2 * solver.numVariables + 1];
+
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
       int clause = it.next();
+      int length = length(formula, clause);
+
+      int signature = type(formula, clause);
+      for (int i = clause; i < clause + length; i++) {
+        signature += hash(formula.getQuick(i));
+      }
+      signature = hash(signature);
+
+      for (int i = clause; i < clause + length; i++) {
+        signatures[formula.getQuick(i) + solver.numVariables] += signature;
+      }
+    }
+
+    return signatures;
+  }
+
+  /** Adds literal to the queue if not already there. */
+  private void enqueue(final int literal) {
+    if (!queued[literal + solver.numVariables]) {
+      queued[literal + solver.numVariables] = true;
+      queue.add(literal);
+    }
+  }
+
+  /**
+   * Removes clauses blocked on literal.
+   *
+   * @return number of clauses removed
+   */
+  private int eliminate(final int literal) {
+    int ne = solver.watchLists.get(neg(literal)).size();
+    int pe = solver.watchLists.get(literal).size();
+    if (pe == 0) {
+      return 0;
+    }
+    if (ne > 128 || 1L * ne * pe > 16384L) {
+      // This is a cutoff to avoid very expensive literals.
+      return 0;
+    }
+    if (Configure.xor && hasXORClauses(literal)) {
+      // BCE can't handle xor clauses.
+      return 0;
+    }
+
+    findHiddenLiterals(literal);
+
+    // Checks each clause containing literal if it is blocked on literal.
+    int numBlocked = 0;
+    int[] clauses = solver.watchLists.get(literal).toArray();
+    for (int i = 0; i < clauses.length; i++) {
+      int clause = clauses[i];
       if (type(solver.formula, clause) != OR) {
-        return true;
+        continue;
+      }
+
+      int blocking = isBlocked(literal, clause);
+      if (blocking == 0) {
+        continue;
+      }
+
+      numBlocked++;
+      bce.addAll(covered);
+      push(bce, extended, extended.size(), blocking);
+
+      solver.watchLists.removeClause(clause);
+
+      // Clauses containing the negation of removed literals can
+      // now be blocked.
+      int length = length(solver.formula, clause);
+      for (int j = clause; j < clause + length; j++) {
+        enqueueClauses(neg(solver.formula.getQuick(j)));
+      }
+
+      if (length == 2) {
+        // Hidden literals cannot depend on removed binaries.
+        solver.graph.remove(
+            neg(solver.formula.getQuick(clause)),
+            solver.formula.getQuick(clause + 1));
+        findHiddenLiterals(literal);
       }
     }
-    return false;
+
+    return numBlocked;
+  }
+
+  /**
+   * Finds hidden literals by literal: if u &rarr; literal
+   * then u can be added to any clause containing literal.
+   */
+  private void findHiddenLiterals(final int literal) {
+    hidden.reset();
+    TIntArrayList reachable = new TIntArrayList();
+    solver.graph.bfs(neg(literal), reachable);
+    for (int i = 0; i < reachable.size(); i++) {
+      hidden.add(neg(reachable.getQuick(i)));
+    }
+    numSteps += reachable.size();
   }
 
   /**
    * Tests if literal blocks clause.
    *
+   * If not, the clause is extended with covered literals and
+   * tested again. Covered literals for u in clause are
+   * the literals common to all non tautological resolvents on u.
+   * Every extension is stored in covered and, if the extended clause is
+   * blocked, pushed on the restore stack before the extended clause.
+   *
    * @param literal blocked literal
    * @param clause blocked clause
-   * @return true if clause is blocked on literal
+   * @return the blocking literal or 0 if clause is not blocked
    */
-  private boolean isBlocked(final int literal, final int clause) {
-    seen.reset();
+  private int isBlocked(final int literal, final int clause) {
     int length = length(solver.formula, clause);
+    // Binaries are in the implication graph, so for binaries
+    // hidden literals are implied by the clause itself.
+    boolean useHidden = length > 2;
+
+    seen.reset();
+    extended.reset();
+    covered.reset();
     for (int i = clause; i < clause + length; i++) {
-      seen.add(solver.formula.getQuick(i));
+      int u = solver.formula.getQuick(i);
+      seen.add(u);
+      extended.add(u);
+    }
+
+    if (isBlocked(literal, useHidden)) {
+      return literal;
     }
 
+    for (int i = clause; i < clause + length; i++) {
+      int u = solver.formula.getQuick(i);
+      if (u == literal) {
+        continue;
+      }
+      if (numSteps >= STEPS_LIMIT) {
+        return 0;
+      }
+      if (Configure.xor && hasXORClauses(u)) {
+        continue;
+      }
+
+      int size = extended.size();
+      if (!addCoveredLiterals(u, useHidden)) {
+        // All resolvents on u are tautologies.
+        return u;
+      }
+
+      if (extended.size() > size) {
+        // Clause before extension is blocked on u.
+        numCovered += extended.size() - size;
+        push(covered, extended, size, u);
+
+        if (isBlocked(literal, useHidden)) {
+          return literal;
+        }
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Tests if the extended clause is blocked on literal.
+   *
+   * @param literal blocking literal
+   * @param useHidden true to use hidden literals
+   * @return true if the extended clause is blocked on literal
+   */
+  private boolean isBlocked(final int literal, final boolean useHidden) {
     TIntHashSet clauses = solver.watchLists.get(neg(literal));
     TIntIterator it = clauses.iterator();
     for (int size = clauses.size(); size > 0; size--) {
-      if (!isResolutionTautology(it.next())) {
+      if (!isResolutionTautology(it.next(), useHidden)) {
         return false;
       }
     }
@@ -186,6 +385,103 @@ public final class BlockedClauseElimination {
     return true;
   }
 
+  /**
+   * Adds to the extended clause the literals common to
+   * all clauses containing -u whose resolution with the
+   * extended clause is not a tautology.
+   *
+   * @return false if there is no such clause
+   */
+  private boolean addCoveredLiterals(final int u, final boolean useHidden) {
+    TIntArrayList common = null;
+
+    TIntHashSet clauses = solver.watchLists.get(neg(u));
+    TIntIterator it = clauses.iterator();
+    for (int size = clauses.size(); size > 0; size--) {
+      int other = it.next();
+      if (isResolutionTautology(other, useHidden)) {
+        continue;
+      }
+
+      int length = length(solver.formula, other);
+      if (common == null) {
+        common = new TIntArrayList();
+        for (int i = other; i < other + length; i++) {
+          int v = solver.formula.getQuick(i);
+          if (v != neg(u) && !seen.contains(v)) {
+            common.add(v);
+          }
+        }
+      } else {
+        marked.reset();
+        for (int i = other; i < other + length; i++) {
+          marked.add(solver.formula.getQuick(i));
+        }
+
+        int p = 0;
+        for (int i = 0; i < common.size(); i++) {
+          int v = common.getQuick(i);
+          if (marked.contains(v)) {
+            common.setQuick(p++, v);
+          }
+        }
+        common.remove(p, common.size() - p);
+      }
+
+      numSteps += length;
+      if (common.isEmpty()) {
+        return true;
+      }
+    }
+
+    if (common == null) {
+      return false;
+    }
+
+    for (int i = 0; i < common.size(); i++) {
+      int v = common.getQuick(i);
+      seen.add(v);
+      extended.add(v);
+    }
+    return true;
+  }
+
+  /**
+   * Pushes first length literals of clause on a restore stack
+   * with blocking literal in front. Literals are added in reverse order.
+   */
+  private static void push(final TIntArrayList stack,
+                           final TIntArrayList clause,
+                           final int length,
+                           final int literal) {
+    for (int i = length - 1; i >= 0; i--) {
+      int u = clause.getQuick(i);
+      if (u != literal) {
+        stack.add(u);
+      }
+    }
+    stack.add(literal);
+    stack.add(encode(length, OR));
+  }
+
+  /**
+   * Returns true if there exists a XOR clause containing literal.
+   *
+   * @param literal literal to search in XOR clauses
+   * @return true if there is XOR clause containing literal
+   */
+  private boolean hasXORClauses(final int literal) {
+    TIntHashSet clauses = solver.watchLists.get(var(literal));
+    TIntIterator it = clauses.iterator();
+    for (int size = clauses.size(); size > 0; size--) {
+      int clause = it.next();
+      if (type(solver.formula, clause) != OR) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Checks if resolution between clause and clause
    * marked in seen is a tautology.
@@ -196,15 +492,18 @@ public final class BlockedClauseElimination {
    * then resolution is a tautology.
    *
    * @param clause clause to be resoluted and checked
+   * @param useHidden true to use hidden literals
    * @param true if resolution is a tautology
    */
-  private boolean isResolutionTautology(final int clause) {
+  private boolean isResolutionTautology(final int clause,
+                                        final boolean useHidden) {
     int length = length(solver.formula, clause);
     boolean found = false;
+    numSteps += length;
 
     for (int i = clause; i < clause + length; i++) {
       int literal = neg(solver.formula.getQuick(i));
-      if (seen.contains(literal) || hidden.contains(literal)) {
+      if (seen.contains(literal) || (useHidden && hidden.contains(literal))) {
         if (found) {
           return true;
         }
@@ -13,48 +13,49 @@ public final class BlockedClauseEliminationActivity extends Activity {
   private static final Logger logger = Logger.getLogger(
       BlockedClauseEliminationActivity.class);
 
-  /** Object used to restore solution. */
-  private TIntArrayList bce = null;
+  /** Restores solution after Blocked Clause Elimination. */
+  private Checkpoint.Frame frame = null;
+  /** State of the restart loop. */
+  private RestartState state = null;
 
   public BlockedClauseEliminationActivity(final ActivityIdentifier parent,
                                           final ActivityIdentifier tracer,
                                           final TDoubleArrayList scores,
+                                          final RestartState state,
                                           final Skeleton instance) {
     super(parent, tracer, 0, 0, scores, instance);
+    this.state = state;
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     if (!Configure.bce) {
       executor.submit(new VariableEliminationActivity(
-            parent, tracer, scores, instance));
+            parent, tracer, scores, state, instance));
       finish();
       return;
     }
 
     try {
       Solver solver = new Solver(instance);
-      bce = BlockedClauseElimination.run(solver);
-
+      TIntArrayList bce = BlockedClauseElimination.run(solver, state.bce);
+      frame = Checkpoint.bce(bce);
     } catch (ContradictionException e) {
       reply(Solution.unsatisfiable());
       finish();
       return;
     }
 
+    state.frames.add(frame);
     executor.submit(new VariableEliminationActivity(
-          identifier(), tracer, scores, instance));
+          identifier(), tracer, scores, state, instance));
     suspend();
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution response = (Solution) e.data;
-    if (response.isSatisfiable()) {
-      response = BlockedClauseElimination.restore(bce, response);
-    }
-
-    reply(response);
+    reply(frame.restore(response));
     finish();
   }
 }
@@ -0,0 +1,446 @@
+package ibis.structure;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+import ibis.constellation.SingleEventCollector;
+import ibis.constellation.context.UnitActivityContext;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Runs the search of a generation as blocking tasks.<br/>
+ *
+ * The search activities (SplitActivity, BranchActivity,
+ * SolveActivity) keep their state between events because
+ * they cannot block. Here every node of the search tree is
+ * a task which forks its children and waits for them, so the
+ * state lives on the stack and no messages are exchanged.<br/>
+ *
+ * Tasks run on a ForkJoinPool with Configure.numExecutors
+ * workers. A worker waiting in join() runs other tasks, so
+ * few threads carry the whole tree. Dead generations are
+ * dropped as in BlackHoleActivity. When the search is over its
+ * memory budget (see MemoryBudget) children are run in the
+ * current thread instead of being forked.<br/>
+ *
+ * Components of a split run in their own cancellation scope
+ * (see Cancellation.Scope) which is cancelled once a component
+ * is unsatisfiable, so the other components stop early.<br/>
+ *
+ * Every task and every task run by a waiting worker adds frames
+ * to the stack of the worker. Past MAX_NESTING nested tasks the
+ * remaining subtree is searched by activities and the worker
+ * waits for their solution in ForkJoinPool.managedBlock().
+ */
+public final class BlockingSearch {
+  private static final Logger logger = Logger.getLogger(BlockingSearch.class);
+
+  /** Nested tasks on the stack of a worker before using activities. */
+  private static final int MAX_NESTING = 64;
+
+  private static final Random random = new Random(1);
+  /** Pool running the tasks, created on first use. */
+  private static ForkJoinPool pool = null;
+  /** Number of tasks on the stack of the current thread. */
+  private static final ThreadLocal<int[]> nesting = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  private BlockingSearch() {
+  }
+
+  /**
+   * Searches instance and sends the solution to parent.
+   *
+   * @param executor executor used to send the solution
+   * @param source identifier of the sender
+   * @param parent activity receiving the solution
+   * @param tracer master tracer of activities past MAX_NESTING
+   * @param generation current restart generation
+   * @param scores variables scores
+   * @param instance instance to search
+   */
+  public static void submit(final ActivityExecutor executor,
+                            final ActivityIdentifier source,
+                            final ActivityIdentifier parent,
+                            final ActivityIdentifier tracer,
+                            final long generation,
+                            final TDoubleArrayList scores,
+                            final Skeleton instance) {
+    final Search search = new Search(executor, tracer, generation, scores);
+    pool().execute(new RecursiveAction() {
+      protected void compute() {
+        Solution solution;
+        try {
+          solution = new SplitTask(
+              search, 0, null, instance, false).invoke();
+        } catch (OutOfMemoryError e) {
+          ResourceMonitor.abort("out of memory");
+          return;
+        } catch (Throwable e) {
+          logger.error("Search failed", e);
+          System.exit(1);
+          return;
+        }
+        executor.send(new Event(source, parent, solution));
+      }
+    });
+  }
+
+  private static synchronized ForkJoinPool pool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(Configure.numExecutors);
+    }
+    return pool;
+  }
+
+  /** State shared by all tasks of a generation. */
+  private static final class Search {
+    final ActivityExecutor executor;
+    final ActivityIdentifier tracer;
+    final long generation;
+    final TDoubleArrayList scores;
+
+    Search(final ActivityExecutor executor,
+           final ActivityIdentifier tracer,
+           final long generation,
+           final TDoubleArrayList scores) {
+      this.executor = executor;
+      this.tracer = tracer;
+      this.generation = generation;
+      this.scores = scores;
+    }
+  }
+
+  /**
+   * A node of the search. Runs in the scope it was created for
+   * and counts the tasks on the stack of the current thread.
+   */
+  private abstract static class Task extends RecursiveTask<Solution> {
+    protected final Search search;
+    protected final int depth;
+    /** Scope cancelling this task or null. */
+    protected final Cancellation.Scope scope;
+
+    Task(final Search search,
+         final int depth,
+         final Cancellation.Scope scope) {
+      this.search = search;
+      this.depth = depth;
+      this.scope = scope;
+    }
+
+    @Override
+    protected final Solution compute() {
+      Cancellation.Scope outer = Cancellation.enterScope(scope);
+      int[] count = nesting.get();
+      count[0]++;
+      try {
+        return run(count[0] > MAX_NESTING);
+      } finally {
+        count[0]--;
+        Cancellation.enterScope(outer);
+      }
+    }
+
+    /**
+     * Searches this node.
+     *
+     * @param deep true if the stack is too deep for more tasks
+     */
+    protected abstract Solution run(boolean deep);
+  }
+
+  /** Splits the instance in components. See SplitActivity. */
+  private static final class SplitTask extends Task {
+    private final Skeleton instance;
+    private final boolean connected;
+
+    SplitTask(final Search search,
+              final int depth,
+              final Cancellation.Scope scope,
+              final Skeleton instance,
+              final boolean connected) {
+      super(search, depth, scope);
+      this.instance = instance;
+      this.connected = connected;
+    }
+
+    @Override
+    protected Solution run(final boolean deep) {
+      if (!Configure.split || connected) {
+        return branch(search, depth, scope, instance);
+      }
+
+      Components split = new Components(instance);
+      if (!split.isSplit()) {
+        return branch(search, depth, scope, instance);
+      }
+
+      split.split();
+      Skeleton[] components = split.instances();
+      int[][] inverses = split.variables();
+      TIntArrayList units = new TIntArrayList(instance.numVariables);
+      Cancellation.Scope inner = new Cancellation.Scope(scope);
+
+      ComponentCache.Key[] keys = new ComponentCache.Key[components.length];
+      SplitTask[] tasks = new SplitTask[components.length];
+      for (int i = 0; i < components.length; i++) {
+        if (Configure.cache) {
+          keys[i] = ComponentCache.key(components[i]);
+          Solution cached = ComponentCache.get(keys[i]);
+          if (cached != null) {
+            if (cached.isUnsatisfiable()) {
+              // Stops the components already forked.
+              inner.cancel();
+              return Solution.unsatisfiable();
+            }
+            Components.merge(units, cached.units(), inverses[i]);
+            continue;
+          }
+        }
+
+        // A component is connected.
+        tasks[i] = new SplitTask(
+            search, depth, inner, components[i], true);
+        spawn(tasks[i]);
+      }
+
+      boolean isUnknown = false;
+      for (int i = 0; i < tasks.length; i++) {
+        if (tasks[i] == null) {
+          continue;
+        }
+
+        Solution response = tasks[i].join();
+        if (keys[i] != null) {
+          ComponentCache.put(keys[i], response);
+        }
+        if (response.isUnsatisfiable()) {
+          // Remaining components are not needed.
+          inner.cancel();
+          return Solution.unsatisfiable();
+        }
+        if (response.isUnknown()) {
+          isUnknown = true;
+        } else if (!isUnknown) {
+          Components.merge(units, response.units(), inverses[i]);
+        }
+      }
+
+      return isUnknown ? Solution.unknown() : Solution.satisfiable(units);
+    }
+  }
+
+  /** Picks a branch and searches both branches. See BranchActivity. */
+  private static Solution branch(final Search search,
+                                 final int depth,
+                                 final Cancellation.Scope scope,
+                                 final Skeleton instance) {
+    int branch = instance.pickVariables(search.scores, 1)[0];
+    synchronized (random) {
+      branch = random.nextBoolean() ? branch : neg(branch);
+    }
+
+    Skeleton copy = instance.clone();
+    addBranch(copy, branch);
+    SolveTask first = new SolveTask(search, depth + 1, scope, copy, branch);
+    if (!spawn(first)) {
+      if (first.join().isSatisfiable()) {
+        // The other branch is not needed.
+        return first.join();
+      }
+    }
+
+    addBranch(instance, neg(branch));
+    Solution second = new SolveTask(
+        search, depth + 1, scope, instance, neg(branch)).invoke();
+    if (second.isSatisfiable()) {
+      // The other branch is not needed.
+      return second;
+    }
+
+    Solution response = first.join();
+    if (response.isSatisfiable()) {
+      return response;
+    }
+    if (response.isUnsatisfiable() && second.isUnsatisfiable()) {
+      return Solution.unsatisfiable();
+    }
+    return Solution.unknown(response, second, true);
+  }
+
+  /**
+   * Forks task or runs it now if the search is over its memory budget.
+   *
+   * @return true if task was forked
+   */
+  private static boolean spawn(final ForkJoinTask<Solution> task) {
+    if (MemoryBudget.isOver()) {
+      MemoryBudget.throttled();
+      task.invoke();
+      return false;
+    }
+    task.fork();
+    return true;
+  }
+
+  /** Adds a branch to instance as an unit clause. */
+  private static void addBranch(final Skeleton instance, final int branch) {
+    instance.formula.add(encode(1, OR));
+    instance.formula.add(branch);
+  }
+
+  /** Simplifies and solves an instance. See SolveActivity. */
+  private static final class SolveTask extends Task {
+    private final Skeleton instance;
+    private final int branch;
+    /** Bytes of instance registered with MemoryBudget. */
+    private final long bytes;
+
+    SolveTask(final Search search,
+              final int depth,
+              final Cancellation.Scope scope,
+              final Skeleton instance,
+              final int branch) {
+      super(search, depth, scope);
+      this.instance = instance;
+      this.branch = branch;
+      this.bytes = MemoryBudget.acquire(instance);
+    }
+
+    @Override
+    protected Solution run(final boolean deep) {
+      final long generation = search.generation;
+      if (BlackHoleActivity.isDead(generation)
+          || Cancellation.isCancelled(scope)) {
+        MemoryBudget.release(bytes);
+        return Solution.unknown();
+      }
+
+      Solver solver;
+      Solution solution;
+      boolean connected = false;
+      Normalizer normalizer = new Normalizer();
+
+      Cancellation.enter(generation);
+      RestartScheduler.work(generation, instance.size());
+      try {
+        normalizer.normalize(instance);
+        solver = new Solver(instance);
+        SolveActivity.simplify(solver, generation);
+
+        solution = normalizer.denormalize(solver.solve());
+        if (solution.isUnknown() && Configure.split) {
+          connected = Connectivity.isConnected(solver);
+        }
+      } catch (ContradictionException e) {
+        RestartScheduler.conflict(generation);
+        return Solution.unsatisfiable(branch);
+      } catch (CancelledException e) {
+        return Solution.unknown();
+      } finally {
+        Cancellation.exit();
+        // The instance was consumed by the solver.
+        MemoryBudget.release(bytes);
+      }
+
+      if (!solution.isUnknown()) {
+        return solution;
+      }
+
+      Core core = normalizer.denormalize(solver.core());
+      Solution response = deep
+          ? delegate(search, depth, core.instance(), connected)
+          : new SplitTask(search, depth, scope, core.instance(), connected)
+              .invoke();
+
+      if (response.isSatisfiable()) {
+        return core.merge(response);
+      } else if (response.isUnsatisfiable()) {
+        return Solution.unsatisfiable(branch);
+      }
+      return Solution.unknown(branch, response, core, depth < 3, depth < 2);
+    }
+  }
+
+  /**
+   * Searches instance with activities and waits for the solution.
+   * The activities inherit the scope of the current thread.
+   */
+  private static Solution delegate(final Search search,
+                                   final int depth,
+                                   final Skeleton instance,
+                                   final boolean connected) {
+    Waiter waiter;
+    ActivityIdentifier parent;
+    if (search.executor instanceof ForkJoinExecutor) {
+      final ForkJoinExecutor executor = (ForkJoinExecutor) search.executor;
+      final ActivityIdentifier collector = executor.collector();
+      parent = collector;
+      waiter = new Waiter() {
+        protected Event take() throws InterruptedException {
+          try {
+            return executor.waitForEvent(collector);
+          } catch (ExecutionException e) {
+            // The executor stopped and reports the failure itself.
+            return new Event(null, collector, Solution.unknown());
+          }
+        }
+      };
+    } else {
+      final SingleEventCollector collector = new SingleEventCollector(
+          new UnitActivityContext(Configure.localContext));
+      Configure.localExecutor.submit(collector);
+      parent = collector.identifier();
+      waiter = new Waiter() {
+        protected Event take() {
+          return collector.waitForEvent();
+        }
+      };
+    }
+
+    search.executor.submit(new SplitActivity(
+          parent, search.tracer, depth, search.generation, search.scores,
+          instance, connected));
+    try {
+      ForkJoinPool.managedBlock(waiter);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Solution.unknown();
+    }
+    return (Solution) waiter.event.data;
+  }
+
+  /** Waits for one event letting the pool add a worker meanwhile. */
+  private abstract static class Waiter implements ForkJoinPool.ManagedBlocker {
+    Event event = null;
+
+    /** Blocks until the event arrives. */
+    protected abstract Event take() throws InterruptedException;
+
+    public boolean block() throws InterruptedException {
+      if (event == null) {
+        event = take();
+      }
+      return true;
+    }
+
+    public boolean isReleasable() {
+      return event != null;
+    }
+  }
+}
@@ -19,6 +19,10 @@ import static ibis.structure.Misc.*;
  *
  * If any child instance is satisfiable instance is satisfiable,
  * otherwse instance is unsatisfiable.
+ *
+ * When the search is over its memory budget (see MemoryBudget)
+ * the second child is submitted only if the first one is not
+ * satisfiable.
  */
 public final class BranchActivity extends Activity {
   private static final Logger logger = Logger.getLogger(BranchActivity.class);
@@ -29,6 +33,8 @@ public final class BranchActivity extends Activity {
   private Solution[] responses = new Solution[2];
   /** Number of responses received. */
   private int numReplies = 0;
+  /** True if the second branch waits for the first one. */
+  private boolean deferred = false;
 
   /**
    * @param branch branching literal.
@@ -44,28 +50,57 @@ public final class BranchActivity extends Activity {
     this.branch = branch;
   }
 
+  protected void gc() {
+    if (!deferred) {
+      super.gc();
+    }
+  }
+
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     Skeleton copy1 = instance.clone();
-    Skeleton copy2 = instance;
-
-
     addBranch(copy1, branch);
     executor.submit(new BlackHoleActivity(
           identifier(), tracer, depth + 1,
           generation, scores, copy1, branch));
 
+    if (MemoryBudget.isOver()) {
+      MemoryBudget.throttled();
+      deferred = true;
+    } else {
+      submitSecond();
+    }
+    suspend();
+  }
+
+  /** Submits the second branch. */
+  private void submitSecond() {
+    Skeleton copy2 = instance;
     addBranch(copy2, neg(branch));
     executor.submit(new BlackHoleActivity(
           identifier(), tracer, depth + 1,
           generation, scores, copy2, neg(branch)));
-
-    suspend();
+    deferred = false;
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution response = (Solution) e.data;
+    if (deferred) {
+      if (response.isSatisfiable()) {
+        // The other branch is not needed.
+        reply(response);
+        finish();
+        return;
+      }
+
+      responses[numReplies] = response;
+      numReplies++;
+      submitSecond();
+      suspend();
+      return;
+    }
+
     if (response.isSatisfiable()) {
       if (numReplies == 0 || !responses[0].isSatisfiable()) {
         // Sends the solution to parent.
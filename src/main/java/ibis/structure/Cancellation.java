@@ -0,0 +1,176 @@
+package ibis.structure;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * Registry of killed generations and cancellation tokens.<br/>
+ *
+ * Every generation has a token with a volatile flag set when the
+ * generation is killed. Checking and killing are lock free.<br/>
+ *
+ * A thread working for a generation enters its token. Long loops
+ * (propagation, simplifications) call poll() which throws
+ * CancelledException if the generation was killed, so killed
+ * generations release their threads before the nodes finish.
+ * Threads without a token (e.g. preprocessing) are never cancelled.<br/>
+ *
+ * Tokens of finished generations which were not killed are dropped
+ * by forget(). Killed generations are remembered so activities still
+ * queued for them are discarded (see BlackHoleActivity), but only
+ * the MAX_TOKENS most recent generations are kept.<br/>
+ *
+ * A Scope cancels a subtree of the search within a generation, e.g.
+ * the components of a split once one of them is unsatisfiable.
+ * Activities remember the scope of the activity which created them
+ * and ForkJoinExecutor makes it the scope of the thread running them,
+ * so poll() also throws if the scope was cancelled. Scopes are not
+ * sent to other JVMs.
+ */
+public final class Cancellation {
+  /** Token of a generation. */
+  private static final class Token {
+    volatile boolean killed = false;
+  }
+
+  /** A cancellable subtree of the search. */
+  public static final class Scope {
+    private final Scope parent;
+    private volatile boolean cancelled = false;
+
+    /** Creates a scope inside parent (null for none). */
+    public Scope(final Scope parent) {
+      this.parent = parent;
+    }
+
+    /** Cancels this scope and the scopes inside it. */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    /** Returns true if this scope or an enclosing scope was cancelled. */
+    public boolean isCancelled() {
+      for (Scope scope = this; scope != null; scope = scope.parent) {
+        if (scope.cancelled) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** Maximum number of generations remembered. */
+  static final int MAX_TOKENS = 1024;
+
+  /** Tokens of the known generations. */
+  private static final ConcurrentHashMap<Long, Token> tokens =
+      new ConcurrentHashMap<Long, Token>();
+  /** Generations in tokens from the oldest, may include forgotten ones. */
+  private static final ConcurrentLinkedQueue<Long> order =
+      new ConcurrentLinkedQueue<Long>();
+  /** Token of the generation the current thread works for. */
+  private static final ThreadLocal<Token> current = new ThreadLocal<Token>();
+  /** Scope of the activity run by the current thread. */
+  private static final ThreadLocal<Scope> scope = new ThreadLocal<Scope>();
+
+  private Cancellation() {
+  }
+
+  /** Returns the token of generation creating it if needed. */
+  private static Token token(final long generation) {
+    Token token = tokens.get(generation);
+    if (token == null) {
+      Token other = tokens.putIfAbsent(generation, token = new Token());
+      if (other != null) {
+        return other;
+      }
+
+      // Threads working for an evicted generation keep its token.
+      order.add(generation);
+      while (order.size() > MAX_TOKENS) {
+        Long oldest = order.poll();
+        if (oldest != null) {
+          tokens.remove(oldest);
+        }
+      }
+    }
+    return token;
+  }
+
+  /** Marks generation as killed. */
+  public static void kill(final long generation) {
+    token(generation).killed = true;
+  }
+
+  /**
+   * Drops the token of a finished generation unless it was killed.
+   * Called once no activity of generation can poll.
+   */
+  public static void forget(final long generation) {
+    Token token = tokens.get(generation);
+    if (token != null && !token.killed) {
+      tokens.remove(generation, token);
+    }
+  }
+
+  /** Returns the number of remembered generations. */
+  static int size() {
+    return tokens.size();
+  }
+
+  /** Returns true if generation was killed. */
+  public static boolean isKilled(final long generation) {
+    Token token = tokens.get(generation);
+    return token != null && token.killed;
+  }
+
+  /** Makes the current thread work for generation (0 for none). */
+  public static void enter(final long generation) {
+    if (generation == 0) {
+      current.remove();
+    } else {
+      current.set(token(generation));
+    }
+  }
+
+  /** Makes the current thread work for no generation. */
+  public static void exit() {
+    current.remove();
+  }
+
+  /** Returns the scope of the current thread or null. */
+  public static Scope scope() {
+    return scope.get();
+  }
+
+  /**
+   * Makes the current thread work in scope (null for none).
+   *
+   * @return the previous scope of the current thread
+   */
+  public static Scope enterScope(final Scope inner) {
+    Scope outer = scope.get();
+    scope.set(inner);
+    return outer;
+  }
+
+  /** Returns true if scope is not null and was cancelled. */
+  public static boolean isCancelled(final Scope scope) {
+    return scope != null && scope.isCancelled();
+  }
+
+  /**
+   * Throws CancelledException if the current generation was killed
+   * or the current scope was cancelled.
+   */
+  public static void poll() {
+    Token token = current.get();
+    if (token != null && token.killed) {
+      throw new CancelledException();
+    }
+    if (isCancelled(scope.get())) {
+      throw new CancelledException();
+    }
+  }
+}
@@ -0,0 +1,8 @@
+package ibis.structure;
+
+/**
+ * CancelledException is thrown by Cancellation.poll() when
+ * the generation of the current thread was killed.
+ */
+public class CancelledException extends RuntimeException {
+}
@@ -0,0 +1,287 @@
+package ibis.structure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Saves the restart loop to a file and resumes it.<br/>
+ *
+ * Every activity between the input and the running generation
+ * that waits to restore the solution (XOR's dve, BCE, VE and the
+ * cores of the simplifications) pushes a Frame on RestartState.
+ * At a generation boundary RestartActivity writes the frames
+ * together with its instance, the scores and the rest of the
+ * state (learned clauses, restart policy). The file is written
+ * next to the checkpoint and renamed over it so a crash never
+ * leaves a partial checkpoint.<br/>
+ *
+ * With -resume the chain is rebuilt by a ResumeActivity which
+ * starts the restart loop from the saved instance and applies
+ * the saved frames to the solution.
+ */
+public final class Checkpoint implements java.io.Serializable {
+  private static final Logger logger = Logger.getLogger(Checkpoint.class);
+
+  /** Hash of the input instance (see start()). */
+  private static int input = 0;
+  /** Time of the last checkpoint written. */
+  private static long lastSave = 0;
+
+  /** Restores a solution for an activity of the chain. */
+  public abstract static class Frame implements java.io.Serializable {
+    public abstract Solution restore(Solution solution);
+  }
+
+  /** Hash of the input the checkpoint was written for. */
+  private final int hash;
+  /** Variables scores. */
+  private final TDoubleArrayList scores;
+  /** State of the restart loop including the frames. */
+  private final RestartState state;
+  /** Instance of the next generation. */
+  private final Skeleton instance;
+
+  private Checkpoint(final TDoubleArrayList scores,
+                     final RestartState state,
+                     final Skeleton instance) {
+    this.hash = input;
+    this.scores = scores;
+    this.state = state;
+    this.instance = instance;
+  }
+
+  /** Remembers the input so checkpoints of other inputs are ignored. */
+  public static void start(final Skeleton instance) {
+    input = instance.hash();
+    lastSave = System.currentTimeMillis();
+  }
+
+  /**
+   * Writes the state of the restart loop if a checkpoint is due.
+   *
+   * @param scores variables scores
+   * @param state state of the restart loop
+   * @param instance instance of the next generation
+   */
+  public static synchronized void save(final TDoubleArrayList scores,
+                                       final RestartState state,
+                                       final Skeleton instance) {
+    if (Configure.checkpoint == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (now - lastSave < Configure.checkpointInterval * 1000L) {
+      return;
+    }
+    lastSave = now;
+
+    File file = new File(Configure.checkpoint);
+    File tmp = new File(file.getPath() + ".tmp");
+    try {
+      ObjectOutputStream out = new ObjectOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        out.writeObject(new Checkpoint(scores, state, instance));
+      } finally {
+        out.close();
+      }
+      Files.move(tmp.toPath(), file.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.error("Cannot write checkpoint " + file, e);
+      return;
+    }
+
+    logger.info("Wrote checkpoint after " + state.numGenerations
+                + " generations in " + (System.currentTimeMillis() - now)
+                + " ms");
+  }
+
+  /** Reads the checkpoint of the input or returns null. */
+  public static Checkpoint load() {
+    File file = new File(Configure.checkpoint);
+    if (!file.exists()) {
+      logger.info("No checkpoint " + file + ", starting from input");
+      return null;
+    }
+
+    Checkpoint checkpoint;
+    try {
+      ObjectInputStream in = new ObjectInputStream(
+          new BufferedInputStream(new FileInputStream(file)));
+      try {
+        checkpoint = (Checkpoint) in.readObject();
+      } finally {
+        in.close();
+      }
+    } catch (Exception e) {
+      logger.error("Cannot read checkpoint " + file, e);
+      return null;
+    }
+
+    if (checkpoint.hash != input) {
+      logger.error("Checkpoint " + file + " is for another input");
+      return null;
+    }
+    logger.info("Resuming after " + checkpoint.state.numGenerations
+                + " generations");
+    return checkpoint;
+  }
+
+  /** Returns the activity resuming the restart loop. */
+  public Activity resume(final ActivityIdentifier parent,
+                         final ActivityIdentifier tracer) {
+    return new ResumeActivity(parent, tracer, scores, state, instance);
+  }
+
+  /** Starts the restart loop and restores its solution. */
+  private static final class ResumeActivity extends Activity {
+    /** State of the restart loop. */
+    private RestartState state;
+    /** Frames saved by the activities of the previous run. */
+    private ArrayList<Frame> frames;
+
+    ResumeActivity(final ActivityIdentifier parent,
+                   final ActivityIdentifier tracer,
+                   final TDoubleArrayList scores,
+                   final RestartState state,
+                   final Skeleton instance) {
+      super(parent, tracer, 0, 0, scores, instance);
+      this.state = state;
+      this.frames = new ArrayList<Frame>(state.frames);
+    }
+
+    @Override
+    protected void doInitialize() {
+      executor.submit(new RestartActivity(
+            identifier(), tracer, scores, state, instance));
+      suspend();
+    }
+
+    @Override
+    protected void doProcess(final Event e) throws Exception {
+      Solution response = (Solution) e.data;
+      for (int i = frames.size() - 1; i >= 0; i--) {
+        response = frames.get(i).restore(response);
+      }
+      reply(response);
+      finish();
+    }
+  }
+
+  /** Returns a frame merging the core of a simplification. */
+  public static Frame core(final Core core) {
+    return new CoreFrame(core);
+  }
+
+  private static final class CoreFrame extends Frame {
+    private final Core core;
+
+    CoreFrame(final Core core) {
+      this.core = core;
+    }
+
+    public Solution restore(final Solution solution) {
+      return solution.isSatisfiable() ? core.merge(solution) : solution;
+    }
+  }
+
+  /** Returns a frame for Dependent Variable Elimination. */
+  public static Frame dve(final TIntArrayList dve) {
+    return new DVEFrame(dve);
+  }
+
+  private static final class DVEFrame extends Frame {
+    private final TIntArrayList dve;
+
+    DVEFrame(final TIntArrayList dve) {
+      this.dve = dve;
+    }
+
+    public Solution restore(final Solution solution) {
+      return DependentVariableElimination.restore(dve, solution);
+    }
+  }
+
+  /** Returns a frame for Blocked Clause Elimination. */
+  public static Frame bce(final TIntArrayList bce) {
+    return new BCEFrame(bce);
+  }
+
+  private static final class BCEFrame extends Frame {
+    private final TIntArrayList bce;
+
+    BCEFrame(final TIntArrayList bce) {
+      this.bce = bce;
+    }
+
+    public Solution restore(final Solution solution) {
+      if (!solution.isSatisfiable()) {
+        return solution;
+      }
+      return BlockedClauseElimination.restore(bce, solution);
+    }
+  }
+
+  /**
+   * Returns a frame for Variable Elimination.
+   *
+   * @param core core of the instance after elimination
+   * @param ve object returned by VariableElimination.run()
+   * @param initial variables of the instance before elimination
+   */
+  public static Frame ve(final Core core,
+                         final Object ve,
+                         final TIntHashSet initial) {
+    return new VEFrame(core, ve, initial);
+  }
+
+  private static final class VEFrame extends Frame {
+    private final Core core;
+    private final Object ve;
+    private final TIntHashSet initial;
+
+    VEFrame(final Core core, final Object ve, final TIntHashSet initial) {
+      this.core = core;
+      this.ve = ve;
+      this.initial = initial;
+    }
+
+    public Solution restore(Solution solution) {
+      if (!solution.isSatisfiable()) {
+        return solution;
+      }
+
+      solution = core.merge(solution);
+      solution = VariableElimination.restore(ve, solution);
+
+      // Finds missing variables and adds them to solution
+      TIntHashSet missing = new TIntHashSet(initial);
+      TIntArrayList units = solution.units();
+      for (int i = 0; i < units.size(); i++) {
+        missing.remove(Misc.var(units.getQuick(i)));
+      }
+      for (int unit : missing.toArray()) {
+        units.add(unit);
+      }
+      return solution;
+    }
+  }
+}
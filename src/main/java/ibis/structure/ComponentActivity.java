@@ -0,0 +1,48 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+/**
+ * Solves a component found by SplitActivity and stores
+ * the solution in ComponentCache if the cache is enabled.
+ */
+public final class ComponentActivity extends Activity {
+  private static final Logger logger = Logger.getLogger(
+      ComponentActivity.class);
+
+  /** Canonical form of instance or null if cache is disabled. */
+  private ComponentCache.Key key;
+
+  public ComponentActivity(final ActivityIdentifier parent,
+                           final ActivityIdentifier tracer,
+                           final int depth,
+                           final long generation,
+                           final TDoubleArrayList scores,
+                           final Skeleton instance,
+                           final ComponentCache.Key key) {
+    super(parent, tracer, depth, generation, scores, instance);
+    this.key = key;
+  }
+
+  @Override
+  protected void doInitialize() {
+    executor.submit(new SelectBranchActivity(
+          identifier(), tracer, depth, generation, scores, instance));
+    suspend();
+  }
+
+  @Override
+  protected void doProcess(final Event e) throws Exception {
+    Solution response = (Solution) e.data;
+    if (key != null) {
+      ComponentCache.put(key, response);
+    }
+    reply(response);
+    finish();
+  }
+}
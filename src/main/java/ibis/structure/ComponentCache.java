@@ -0,0 +1,286 @@
+package ibis.structure;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import gnu.trove.list.array.TIntArrayList;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Caches results of independent components found by SplitActivity.<br/>
+ *
+ * The same component often reappears in different branches and
+ * generations. Components are identified by a canonical form of
+ * their formula: variables are renumbered 1, 2, ... in increasing
+ * order, literals in every clause are sorted and clauses are sorted.
+ * The canonical form does not depend on the order of clauses
+ * so the component is recognized after the parent was simplified.<br/>
+ *
+ * For satisfiable components the model is stored using
+ * the canonical numbering. For unsatisfiable components only
+ * the verdict is stored. Unknown results are never stored.<br/>
+ *
+ * The cache is shared by all activities in the same JVM.
+ * When the cache exceeds Configure.cacheMemory the least recently
+ * used entries are evicted until it is below 3/4 of the limit, so
+ * components that keep reappearing (e.g. in every generation) stay.
+ * Lookups and updates are serialized by a lock; they are rare
+ * compared to solving the components.
+ */
+public final class ComponentCache {
+  private static final Logger logger = Logger.getLogger(ComponentCache.class);
+
+  /** Approximate size in bytes of an entry excluding its arrays. */
+  private static final int ENTRY_OVERHEAD = 64;
+  /** Stored for unsatisfiable components. */
+  private static final int[] UNSATISFIABLE = new int[0];
+
+  /**
+   * Maps canonical formulas to canonical models from
+   * the least to the most recently used. Guarded by itself.
+   */
+  private static final LinkedHashMap<Key, int[]> cache =
+      new LinkedHashMap<Key, int[]>(16, 0.75f, true);
+  /** Approximate memory used by the cache in bytes. Guarded by cache. */
+  private static long memory = 0;
+
+  private static final AtomicLong numHits = new AtomicLong();
+  private static final AtomicLong numMisses = new AtomicLong();
+
+  private ComponentCache() {
+  }
+
+  /** Canonical form of a component. */
+  public static final class Key implements java.io.Serializable {
+    /** Canonical formula. */
+    private final int[] formula;
+    /** Maps canonical variables to instance variables. */
+    private final int[] variables;
+    /** Hash of formula. */
+    private final int hash;
+
+    private Key(final int[] formula, final int[] variables) {
+      this.formula = formula;
+      this.variables = variables;
+
+      int hash = formula.length;
+      for (int i = 0; i < formula.length; i++) {
+        hash = Misc.hash(hash + formula[i]);
+      }
+      this.hash = hash;
+    }
+
+    /** Returns the approximate memory used by an entry with this key. */
+    private long memory(final int[] model) {
+      return 4L * (formula.length + model.length) + ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    /** Keys are equal if they have the same canonical formula. */
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return hash == key.hash && Arrays.equals(formula, key.formula);
+    }
+  }
+
+  /** Computes the canonical form of instance. */
+  public static Key key(final Skeleton instance) {
+    final TIntArrayList formula = instance.formula;
+
+    // Renumbers variables keeping their order.
+    int[] rename = new int[instance.numVariables + 1];
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      int length = length(formula, clause);
+      for (int i = clause; i < clause + length; i++) {
+        rename[var(formula.getQuick(i))] = 1;
+      }
+    }
+
+    int numVariables = 0;
+    for (int u = 1; u <= instance.numVariables; u++) {
+      if (rename[u] != 0) {
+        rename[u] = ++numVariables;
+      }
+    }
+
+    int[] variables = new int[numVariables + 1];
+    for (int u = 1; u <= instance.numVariables; u++) {
+      if (rename[u] != 0) {
+        variables[rename[u]] = u;
+      }
+    }
+
+    // Renames and sorts every clause.
+    final TIntArrayList clauses = new TIntArrayList(formula.size());
+    TIntArrayList starts = new TIntArrayList();
+    it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      int length = length(formula, clause);
+
+      clauses.add(encode(length, type(formula, clause)));
+      starts.add(clauses.size());
+      for (int i = clause; i < clause + length; i++) {
+        int literal = formula.getQuick(i);
+        clauses.add(literal < 0 ? -rename[var(literal)] : rename[var(literal)]);
+      }
+      clauses.sort(clauses.size() - length, clauses.size());
+    }
+
+    // Sorts clauses by header then by literals.
+    Integer[] order = new Integer[starts.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = starts.getQuick(i);
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(final Integer o1, final Integer o2) {
+        int c1 = o1, c2 = o2;
+        int h1 = clauses.getQuick(c1 - 1), h2 = clauses.getQuick(c2 - 1);
+        if (h1 != h2) {
+          return h1 < h2 ? -1 : 1;
+        }
+        for (int i = 0; i < length(clauses, c1); i++) {
+          int u1 = clauses.getQuick(c1 + i), u2 = clauses.getQuick(c2 + i);
+          if (u1 != u2) {
+            return u1 < u2 ? -1 : 1;
+          }
+        }
+        return 0;
+      }
+    });
+
+    TIntArrayList canonical = new TIntArrayList(clauses.size());
+    for (int i = 0; i < order.length; i++) {
+      copy(canonical, clauses, order[i]);
+    }
+
+    return new Key(canonical.toArray(), variables);
+  }
+
+  /**
+   * Returns the cached solution of the component identified by key.
+   *
+   * @param key canonical form of the component
+   * @return the solution renamed for key or null if not in cache
+   */
+  public static Solution get(final Key key) {
+    int[] model;
+    synchronized (cache) {
+      model = cache.get(key);
+    }
+    if (model == null) {
+      numMisses.incrementAndGet();
+      return null;
+    }
+
+    numHits.incrementAndGet();
+    if (model == UNSATISFIABLE) {
+      return Solution.unsatisfiable();
+    }
+
+    TIntArrayList units = new TIntArrayList(model.length);
+    for (int i = 0; i < model.length; i++) {
+      int literal = model[i];
+      units.add(literal < 0
+                ? -key.variables[var(literal)] : key.variables[var(literal)]);
+    }
+    return Solution.satisfiable(units);
+  }
+
+  /**
+   * Stores the solution of the component identified by key.
+   *
+   * @param key canonical form of the component
+   * @param solution solution of the component
+   */
+  public static void put(final Key key, final Solution solution) {
+    int[] model;
+    if (solution.isUnsatisfiable()) {
+      model = UNSATISFIABLE;
+    } else if (solution.isSatisfiable()) {
+      // Inverts key.variables.
+      int numVariables = key.variables[key.variables.length - 1];
+      int[] rename = new int[numVariables + 1];
+      for (int i = 1; i < key.variables.length; i++) {
+        rename[key.variables[i]] = i;
+      }
+
+      TIntArrayList units = solution.units();
+      TIntArrayList renamed = new TIntArrayList(units.size());
+      for (int i = 0; i < units.size(); i++) {
+        int literal = units.getQuick(i);
+        if (var(literal) <= numVariables && rename[var(literal)] != 0) {
+          renamed.add(literal < 0
+                      ? -rename[var(literal)] : rename[var(literal)]);
+        }
+      }
+      model = renamed.toArray();
+    } else {
+      return;
+    }
+
+    // Keys are stored without the variables of the component.
+    Key stored = new Key(key.formula, null);
+    synchronized (cache) {
+      if (cache.containsKey(stored)) {
+        return;
+      }
+      cache.put(stored, model);
+      memory += stored.memory(model);
+      if (memory > Configure.cacheMemory) {
+        evict(Configure.cacheMemory / 4 * 3);
+      }
+    }
+  }
+
+  /** Removes all entries, e.g. between two unrelated instances. */
+  public static void clear() {
+    synchronized (cache) {
+      cache.clear();
+      memory = 0;
+    }
+  }
+
+  /** Returns the number of cached components. */
+  static int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * Evicts the least recently used entries until memory is below
+   * ceiling. Called with the lock held.
+   */
+  private static void evict(final long ceiling) {
+    int numEvicted = 0;
+    Iterator<Map.Entry<Key, int[]>> it = cache.entrySet().iterator();
+    while (it.hasNext() && memory > ceiling) {
+      Map.Entry<Key, int[]> entry = it.next();
+      memory -= entry.getKey().memory(entry.getValue());
+      it.remove();
+      numEvicted++;
+    }
+
+    logger.info("Evicted " + numEvicted + " components; cache has "
+                + cache.size() + " components (" + memory / 1024
+                + " KiB), " + numHits.get() + " hits and "
+                + numMisses.get() + " misses");
+  }
+}
@@ -0,0 +1,184 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import static ibis.structure.Misc.*;
+
+/**
+ * Finds the independent components of an instance.
+ *
+ * The algorithm is as follows: puts variables in the same clause
+ * into the same set using disjoint sets. The instance can be split
+ * into variables dictated by the disjoints sets.
+ *
+ * Variables of every component are renumbered 1, 2, ...
+ * in increasing order so the component is only as large
+ * as its variables.
+ */
+public final class Components {
+  private final Skeleton instance;
+  /** Representants in disjoint set.  */
+  private int[] repr;
+  /** Height of disjoint set. */
+  private int[] height;
+  /** Components. */
+  private Skeleton[] instances = null;
+  /** Maps variables of every component to instance's variables. */
+  private int[][] variables = null;
+
+  public Components(final Skeleton instance) {
+    this.instance = instance;
+    repr = new int[instance.numVariables + 1];
+    height = new int[instance.numVariables + 1];
+    joinVariablesInClauses(instance.formula);
+  }
+
+  /** Returns the components found by split(). */
+  public Skeleton[] instances() {
+    return instances;
+  }
+
+  /** Returns the variables maps of the components found by split(). */
+  public int[][] variables() {
+    return variables;
+  }
+
+  /**
+   * Renames units from a component and adds them to units.
+   *
+   * @param units units in instance numbering
+   * @param newUnits units in component numbering
+   * @param inverse maps variables of component to variables of instance
+   */
+  public static void merge(final TIntArrayList units,
+                           final TIntArrayList newUnits,
+                           final int[] inverse) {
+    for (int i = 0; i < newUnits.size(); i++) {
+      int literal = newUnits.getQuick(i);
+      units.add(literal < 0 ? -inverse[var(literal)] : inverse[var(literal)]);
+    }
+  }
+
+  /** Puts variables in each clause in the same set. */
+  private void joinVariablesInClauses(final TIntArrayList formula) {
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      int length = length(formula, clause);
+
+      int u = formula.get(clause);
+      for (int i = clause; i < clause + length; i++) {
+        join(u, formula.getQuick(i));
+      }
+    }
+  }
+
+  /** Returns true if this instance can be split. */
+  public boolean isSplit() {
+    for (int u = 0, v = 1; v <= instance.numVariables; v++) {
+      if (repr[v] != 0) {
+        if (u == 0) {
+          u = find(v);
+        } else if (u != find(v)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /** Splits the instance in components. */
+  public void split() {
+    TIntObjectHashMap<Skeleton> subInstances =
+        new TIntObjectHashMap<Skeleton>();
+    TIntObjectHashMap<int[]> subVariables = new TIntObjectHashMap<int[]>();
+
+    // Renames variables. Variables in no clause are not in repr.
+    int[] rename = new int[instance.numVariables + 1];
+    TIntObjectHashMap<TIntArrayList> inverses =
+        new TIntObjectHashMap<TIntArrayList>();
+    for (int u = 1; u <= instance.numVariables; u++) {
+      if (repr[u] != 0) {
+        TIntArrayList inverse = inverses.get(find(u));
+        if (inverse == null) {
+          inverse = new TIntArrayList();
+          inverse.add(0);
+          inverses.put(find(u), inverse);
+        }
+        rename[u] = inverse.size();
+        inverse.add(u);
+      }
+    }
+
+    TIntArrayList roots = new TIntArrayList();
+    final TIntArrayList formula = instance.formula;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      int length = length(formula, clause);
+      int type = type(formula, clause);
+
+      int u = find(formula.get(clause));
+      Skeleton subInstance = subInstances.get(u);
+      if (subInstance == null) {
+        TIntArrayList inverse = inverses.get(u);
+        subInstance = new Skeleton(inverse.size() - 1);
+        subInstances.put(u, subInstance);
+        subVariables.put(u, inverse.toArray());
+        roots.add(u);
+      }
+
+      TIntArrayList subFormula = subInstance.formula;
+      subFormula.add(encode(length, type));
+      for (int i = clause; i < clause + length; i++) {
+        int literal = formula.getQuick(i);
+        subFormula.add(literal < 0 ? -rename[var(literal)] : rename[var(literal)]);
+      }
+    }
+
+    instances = new Skeleton[roots.size()];
+    variables = new int[roots.size()][];
+    for (int i = 0; i < roots.size(); i++) {
+      instances[i] = subInstances.get(roots.getQuick(i));
+      variables[i] = subVariables.get(roots.getQuick(i));
+    }
+
+    repr = null;
+    height = null;
+  }
+
+  /** Returns the top representant of u. */
+  private int find(int u) {
+    u = Math.abs(u);
+    if (repr[u] == 0) {
+      repr[u] = u;
+      return u;
+    }
+    return findInternal(u);
+  }
+
+  /** Helper function for find. */
+  private int findInternal(final int u) {
+    if (repr[u] == u) {
+      return u;
+    }
+    repr[u] = find(repr[u]);
+    return repr[u];
+  }
+
+  /** Joins u and v's sets. */
+  private void join(int u, int v) {
+    u = find(u);
+    v = find(v);
+    if (height[u] < height[v]) {
+      repr[u] = v;
+    } else if (height[u] > height[v]) {
+      repr[v] = u;
+    } else if (u != v) {
+      repr[u] = v;
+      height[v]++;
+    }
+  }
+}
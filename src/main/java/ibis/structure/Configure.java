@@ -16,38 +16,87 @@ public class Configure {
   public static String inputFile = null;
   /** Path to output file. */
   public static String outputFile = null;
-  /** Number of executors to used. */
-  public static int numExecutors = 1; // Runtime.getRuntime().availableProcessors();
+  /** Number of executors to used (see defaultExecutors()). */
+  public static int numExecutors = 1;
+  /** True to run activities on a ForkJoinPool instead of Constellation. */
+  public static boolean forkJoin = false;
+  /** Port to accept TCP workers on or 0. */
+  public static int masterPort = 0;
+  /** Address (host:port) of the TCP master to work for or null. */
+  public static String workerOf = null;
+  /** True to search generations with blocking tasks. */
+  public static boolean blocking = false;
+  /** Path to the checkpoint file or null (see Checkpoint). */
+  public static String checkpoint = null;
+  /** Minimum number of seconds between two checkpoints. */
+  public static int checkpointInterval = 60;
+  /** True to resume from the checkpoint file. */
+  public static boolean resume = false;
+  /** Wall-clock limit in seconds or 0 (see ResourceMonitor). */
+  public static int timeLimit = 0;
+  /** CPU time limit in seconds or 0. */
+  public static int cpuLimit = 0;
+  /** Fraction of the heap live after GC above which work is shed. */
+  public static double softHeap = 0.8;
+  /** Fraction of the heap live after GC above which solving stops. */
+  public static double hardHeap = 0.95;
   /** True to enable expensive checks for debugging. */
   public static boolean enableExpensiveChecks = false;
+  /** Path to write statistics to as JSON or null (see Statistics). */
+  public static String statistics = null;
+  /** Path to record the search tree to or null (see SearchTrace). */
+  public static String trace = null;
   /** True to print more info. */
   public static boolean verbose = true;
   /** True to perform hidden tautology elimination. */
   public static boolean hur = true;
+  /** True to perform failed literal probing. */
+  public static boolean flp = true;
   /** True to perform binary (self) subsumming. */
   public static boolean sss = true;
-  /** True to split instances when possible. */
-  public static boolean split = true;
+  /** True to split instances when possible. Set by ResourceMonitor. */
+  public static volatile boolean split = true;
+  /** True to cache solutions of split components. */
+  public static boolean cache = true;
+  /** Maximum memory in bytes used by the component cache. */
+  public static volatile long cacheMemory = 32L << 20;
   /** True to extract xor gates and enable dependent variable elimination. */
   public static boolean xor = true;
   /** True to run blocked clause elimination. */
   public static boolean bce = true;
   /** True to enable variable elimination. */
   public static boolean ve = true;
+  /** True to vivify clauses between generations. */
+  public static boolean vivify = true;
   /** True to enable learning. */
   public static boolean learn = true;
+  /** Memory in bytes of search instances before throttling. */
+  public static volatile long searchMemory = 0;
+  /** Maximum memory in bytes used by learned clauses. */
+  public static volatile long learnedMemory = 64L << 20;
   /** True to enable sorting binaries in RestartActivity. */
   public static boolean sb = false;
 
   /** Root look-ahead size. */
   public static int lookAheadSize = 4;
-  /** Generation initial timeToLive. */
-  public static int initialTTL = 10;
-  /** Generation extra timeToLive. */
-  public static int extralTTL = 10;
+  /** Restart policy (see RestartPolicy). */
+  public static String restart = "arithmetic";
+  /** Work units of the first generation (see RestartScheduler). */
+  public static long restartUnit = 4000;
   /** ttc is used to set some coefficients. */
   public static double[] ttc = { 3, 2 };
 
+  /**
+   * Copies of the formula alive per executor during the search
+   * (see fitExecutors()). A running node holds its instance, the
+   * solver's copy with watch lists (about three copies) and the core
+   * passed to its children (one more); suspended ancestors keep
+   * their cores. Adjust with -ec after measuring a workload.
+   */
+  public static int executorCopies = 8;
+  /** True if numExecutors was not given and is sized automatically. */
+  private static boolean sizeExecutors = false;
+
   /** Context for local jobs. */
   public static String localContext;
   /** Executor for local jobs. */
@@ -56,21 +105,44 @@ public class Configure {
   public static boolean configure(String[] args) {
     Options options = new Options();
     options.addOption("help", false, "print this help");
-    options.addOption("e", true, "# of executors (defaults to number of CPUs)");
+    options.addOption("e", true, "# of executors (defaults to what fits the CPUs and memory)");
     options.addOption("o", true, "output file (defaults to stdout)");
     options.addOption("debug", false, "enable expensive checks");
+    options.addOption("fj", false, "run on a local fork-join pool");
+    options.addOption("master", true, "accept TCP workers on port");
+    options.addOption("worker", true, "work for TCP master at host:port");
+    options.addOption("blocking", false, "search with blocking tasks");
+    options.addOption("ec", true, "formula copies per executor when sizing executors");
+    options.addOption("checkpoint", true, "save the restart loop to file");
+    options.addOption("ci", true, "seconds between checkpoints");
+    options.addOption("resume", false, "resume from the checkpoint file");
+    options.addOption("tl", true, "wall-clock limit in seconds");
+    options.addOption("cpu", true, "CPU time limit in seconds");
+    options.addOption("sh", true, "% of heap above which work is shed");
+    options.addOption("hh", true, "% of heap above which solving stops");
+    options.addOption("stats", true, "write statistics to file as JSON");
+    options.addOption("trace", true, "record the search tree to file");
 
     options.addOption("q", false, "be quiet");
     options.addOption("nohur", false, "disable hyper unit resolution");
+    options.addOption("noflp", false, "disable failed literal probing");
     options.addOption("nosss", false, "disable self-subsumming");
     options.addOption("nosplit", false, "disable splitting");
+    options.addOption("nocache", false, "disable component cache");
     options.addOption("noxor", false, "disable xor gates extraction");
     options.addOption("nobce", false, "disable blocked clause elimination");
     options.addOption("nove", false, "disable variable elimination");
+    options.addOption("novivify", false, "disable vivification");
     options.addOption("nolearn", false, "disable learning");
     options.addOption("nosb", false, "disable binaries sorting");
 
     options.addOption("la", true, "root look-ahead size");
+    options.addOption("restart", true,
+                      "restart policy: arithmetic, luby, geometric or progress");
+    options.addOption("ru", true, "work units of the first generation");
+    options.addOption("lm", true, "memory for learned clauses in MiB");
+    options.addOption("cm", true, "memory for component cache in MiB");
+    options.addOption("sm", true, "memory for search instances in MiB");
     options.addOption("ttc", true, "some coefficients");
 
     BasicParser parser = new BasicParser();
@@ -85,14 +157,18 @@ public class Configure {
       wrongArguments = true;
     }
 
-    if (wrongArguments || cl.hasOption('?') || args.length != 1) {
+    // Workers receive the instance from master.
+    int numArguments = cl != null && cl.hasOption("worker") ? 0 : 1;
+    if (wrongArguments || cl.hasOption('?') || args.length != numArguments) {
       HelpFormatter formatter = new HelpFormatter();
       formatter.printHelp("solve input", options, true);
       return false;
     }
 
-    inputFile = args[0];
-    logger.info("Reading from input " + inputFile);
+    if (numArguments == 1) {
+      inputFile = args[0];
+      logger.info("Reading from input " + inputFile);
+    }
 
     if (cl.hasOption("e")) {
       numExecutors = Integer.parseInt(cl.getOptionValue("e"));
@@ -102,14 +178,57 @@ public class Configure {
     }
 
     enableExpensiveChecks = cl.hasOption("debug");
+    forkJoin = cl.hasOption("fj");
+    if (cl.hasOption("master")) {
+      // Workers can only connect to a fork-join master.
+      masterPort = Integer.parseInt(cl.getOptionValue("master"));
+      forkJoin = true;
+    }
+    if (cl.hasOption("worker")) {
+      workerOf = cl.getOptionValue("worker");
+      forkJoin = true;
+    }
+    blocking = cl.hasOption("blocking");
+    if (cl.hasOption("checkpoint")) {
+      checkpoint = cl.getOptionValue("checkpoint");
+    }
+    if (cl.hasOption("stats")) {
+      statistics = cl.getOptionValue("stats");
+    }
+    if (cl.hasOption("trace")) {
+      trace = cl.getOptionValue("trace");
+    }
+    if (cl.hasOption("ci")) {
+      checkpointInterval = Integer.parseInt(cl.getOptionValue("ci"));
+    }
+    resume = cl.hasOption("resume");
+    if (cl.hasOption("tl")) {
+      timeLimit = Integer.parseInt(cl.getOptionValue("tl"));
+    }
+    if (cl.hasOption("cpu")) {
+      cpuLimit = Integer.parseInt(cl.getOptionValue("cpu"));
+    }
+    if (cl.hasOption("sh")) {
+      softHeap = Integer.parseInt(cl.getOptionValue("sh")) / 100.;
+    }
+    if (cl.hasOption("hh")) {
+      hardHeap = Integer.parseInt(cl.getOptionValue("hh")) / 100.;
+    }
+    if (resume && checkpoint == null) {
+      logger.error("-resume needs a -checkpoint file");
+      return false;
+    }
 
     verbose = verbose && !cl.hasOption("q");
     hur = hur && !cl.hasOption("nohur");
+    flp = flp && !cl.hasOption("noflp");
     sss = sss && !cl.hasOption("nosss");
     split = split && !cl.hasOption("nosplit");
+    cache = cache && !cl.hasOption("nocache");
     xor = xor && !cl.hasOption("noxor");
     bce = bce && !cl.hasOption("nobce");
     ve = ve && !cl.hasOption("nove");
+    vivify = vivify && !cl.hasOption("novivify");
     learn = learn && !cl.hasOption("nolearn");
     sb = sb && !cl.hasOption("nosb");
 
@@ -117,6 +236,21 @@ public class Configure {
       lookAheadSize = Integer.parseInt(cl.getOptionValue("la"));
     }
 
+    if (cl.hasOption("restart")) {
+      restart = cl.getOptionValue("restart");
+    }
+    if (cl.hasOption("ru")) {
+      restartUnit = Long.parseLong(cl.getOptionValue("ru"));
+    }
+
+    if (cl.hasOption("lm")) {
+      learnedMemory = Long.parseLong(cl.getOptionValue("lm")) << 20;
+    }
+
+    if (cl.hasOption("cm")) {
+      cacheMemory = Long.parseLong(cl.getOptionValue("cm")) << 20;
+    }
+
     if (cl.hasOption("ttc")) {
       String[] ttc_ = cl.getOptionValue("ttc").split(",");
       ttc = new double[ttc_.length];
@@ -125,6 +259,52 @@ public class Configure {
       }
     }
 
+    if (cl.hasOption("ec")) {
+      executorCopies = Integer.parseInt(cl.getOptionValue("ec"));
+    }
+    sizeExecutors = !cl.hasOption("e");
+    if (sizeExecutors) {
+      numExecutors = defaultExecutors(0);
+    }
+    if (cl.hasOption("sm")) {
+      searchMemory = Long.parseLong(cl.getOptionValue("sm")) << 20;
+    } else {
+      searchMemory = Math.max(0, Runtime.getRuntime().maxMemory()
+                              - cacheMemory - learnedMemory) / 2;
+    }
     return true;
   }
+
+  /**
+   * Lowers numExecutors to fit the memory once the instance was read.
+   * Does nothing if the number of executors was given by -e.
+   * Constellation creates its executors before the master reads
+   * the instance so there only the CPUs bound them.
+   */
+  public static void fitExecutors(final Skeleton instance) {
+    if (sizeExecutors) {
+      numExecutors = defaultExecutors(4L * instance.formula.size());
+    }
+  }
+
+  /**
+   * Returns the number of executors fitting the CPUs and memory.
+   *
+   * The memory left after the caches is divided between the
+   * executors each keeping executorCopies copies of the formula.
+   *
+   * @param formula bytes of the formula or 0 if not known yet
+   */
+  public static int defaultExecutors(final long formula) {
+    Runtime runtime = Runtime.getRuntime();
+    int numCPUs = runtime.availableProcessors();
+
+    long memory = runtime.maxMemory() - cacheMemory - learnedMemory - formula;
+    long perExecutor = Math.max(1, executorCopies * formula);
+    int num = (int) Math.max(1, Math.min(numCPUs, memory / perExecutor));
+
+    logger.info("Using " + num + " executors for " + numCPUs + " CPUs and "
+                + (runtime.maxMemory() >> 20) + " MiB");
+    return num;
+  }
 }
@@ -0,0 +1,121 @@
+package ibis.structure;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Checks if an instance simplified in the search loop is
+ * still connected without rebuilding the components.<br/>
+ *
+ * Instances reaching SolveActivity are connected because
+ * SplitActivity did not split them (the branch is on one
+ * of their variables). Simplification changes the connections
+ * between variables only by removing and shortening clauses,
+ * which WatchLists records together with the variables of
+ * the removed literals, by merging equivalent variables
+ * and by adding clauses between already connected variables.
+ * A path between two variables breaks only at the changed
+ * clauses, so if the remaining variables of the changed clauses
+ * and the removed literals are connected then the whole instance
+ * is connected.<br/>
+ *
+ * The remaining variables are joined by a breadth first search
+ * which stops when all of them were reached or after a number
+ * of steps. In the latter case SplitActivity rebuilds
+ * the components.
+ */
+public final class Connectivity {
+  private static final Logger logger = Logger.getLogger(Connectivity.class);
+
+  private Connectivity() {
+  }
+
+  /**
+   * Returns true if the instance in solver is known to be connected.
+   *
+   * @param solver solver of a connected instance after simplifications
+   * @return true if instance is connected, false if unknown
+   */
+  public static boolean isConnected(final Solver solver) {
+    final TIntArrayList formula = solver.formula;
+    final TIntArrayList changed = solver.watchLists.changed;
+    final TIntArrayList removed = solver.watchLists.removed;
+
+    // Finds remaining variables of changed clauses and removed literals.
+    TIntHashSet touched = new TIntHashSet();
+    for (int i = 0; i < changed.size(); i++) {
+      int clause = changed.getQuick(i);
+      int length = length(formula, clause);
+      for (int j = clause; j < clause + length; j++) {
+        touch(solver, touched, formula.getQuick(j));
+      }
+    }
+    for (int i = 0; i < removed.size(); i++) {
+      touch(solver, touched, removed.getQuick(i));
+    }
+
+    if (touched.size() <= 1) {
+      return true;
+    }
+
+    // Searches from one variable until all others are reached.
+    int limit = formula.size() / 4;
+    int numSteps = 0;
+    boolean[] visited = new boolean[solver.numVariables + 1];
+    TIntArrayList queue = new TIntArrayList();
+
+    int start = touched.iterator().next();
+    visited[start] = true;
+    queue.add(start);
+    int numReached = 1;
+
+    for (int head = 0; head < queue.size(); head++) {
+      int u = queue.getQuick(head);
+      for (int k = 0; k < 2; k++) {
+        int literal = k == 0 ? u : neg(u);
+        TIntIterator it = solver.watchLists.get(literal).iterator();
+        while (it.hasNext()) {
+          int clause = it.next();
+          int length = length(formula, clause);
+          numSteps += length;
+          for (int j = clause; j < clause + length; j++) {
+            int v = var(formula.getQuick(j));
+            if (!visited[v]) {
+              visited[v] = true;
+              queue.add(v);
+              if (touched.contains(v)) {
+                numReached++;
+              }
+            }
+          }
+        }
+      }
+
+      if (numReached == touched.size()) {
+        return true;
+      }
+      if (numSteps > limit) {
+        break;
+      }
+    }
+
+    logger.debug("Reached " + numReached + " of " + touched.size()
+                 + " changed variables in " + numSteps + " steps");
+    return false;
+  }
+
+  /** Adds the variable of literal to touched if it is still in formula. */
+  private static void touch(final Solver solver,
+                            final TIntHashSet touched,
+                            final int literal) {
+    int u = var(solver.proxy(literal));
+    if (!solver.isLiteralAssigned(u) && !solver.isVariableMissing(u)) {
+      touched.add(u);
+    }
+  }
+}
@@ -12,13 +12,16 @@ import static ibis.structure.Misc.*;
  * It contains a smaller formula to needed to be solved
  * in order to solve the original formula.
  */
-public final class Core {
+public final class Core implements java.io.Serializable {
   /** Set of units. */
   private TIntArrayList units;
   /** Proxies for equivalent literals. */
   private TIntArrayList proxies;
-  /** Core instance without units and equivalent literals. */
-  private Skeleton instance;
+  /**
+   * Core instance without units and equivalent literals.
+   * Not needed to merge so it is not saved (see Checkpoint).
+   */
+  private transient Skeleton instance;
 
   /**
    * Constructor.
@@ -90,6 +90,7 @@ public final class DependentVariableElimination {
       dve.add(encode(length, type));
     }
 
+    Statistics.add("dve.variables", numDependent);
     logger.info("Found " + numDependent + " dependent variables");
     dve.reverse();
     compact(xorGates);
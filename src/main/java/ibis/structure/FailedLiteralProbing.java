@@ -0,0 +1,356 @@
+package ibis.structure;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Performs failed literal probing using tree-based look-ahead.<br/>
+ *
+ * Every literal is assigned and propagated. If propagation
+ * finds a contradiction the negation of the literal is an unit.
+ * If both u and -u imply v then v is an unit (necessary assignment)
+ * and if u implies v and -u implies -v then u and v are equivalent.<br/>
+ *
+ * Literals are probed in the order of a depth first search on the
+ * reversed implication graph starting from literals implying nothing.
+ * If c &rarr; u then c is probed right after u without undoing
+ * the propagation of u, so every probe costs only what it newly
+ * propagates. See
+ * <a href="http://www.st.ewi.tudelft.nl/sat/Sources/march_dl/Tree_based_look-ahead.pdf">
+ * Tree-based look-ahead</a> by Heule and van Maaren.
+ */
+public final class FailedLiteralProbing {
+  private static final Logger logger = Logger.getLogger(FailedLiteralProbing.class);
+  private static final Statistics.Timer timer = Statistics.timer("flp");
+
+  /** Maximum number of literals visited during propagation. */
+  private static final int STEPS_LIMIT = 1 << 25;
+  /** Maximum size of a propagation kept for necessary assignments. */
+  private static final int IMPLIED_LIMIT = 1 << 10;
+
+  private final Solver solver;
+  private final int numVariables;
+  /** True for literals assigned on the trail. */
+  private final boolean[] assigned;
+  /** True for literals assigned before any probe. */
+  private final boolean[] fixed;
+  /** True for literals already probed. */
+  private final boolean[] probed;
+  /** Assigned literals in order of assignment. */
+  private final TIntArrayList trail = new TIntArrayList();
+  /** Literals on the current probe path. */
+  private final int[] path;
+  /** Trail size before probing each literal on the path. */
+  private final int[] marks;
+  /** Next predecessor to probe for each literal on the path. */
+  private final int[] next;
+  /** Literals implied by the first probed polarity of each variable. */
+  private final TIntArrayList[] implied;
+  /** Used to intersect propagations of u and -u. */
+  private final TouchSet touched;
+  /** Discovered units. */
+  private final TIntArrayList units = new TIntArrayList();
+  /** Discovered equivalences as binaries. */
+  private final TIntArrayList binaries = new TIntArrayList();
+
+  /** Number of literals visited during propagation. */
+  private int numSteps = 0;
+  private int numProbes = 0;
+  private int numFailedLiterals = 0;
+  private int numNecessaryAssignments = 0;
+  private int numEquivalences = 0;
+
+  private FailedLiteralProbing(final Solver solver) {
+    this.solver = solver;
+
+    numVariables = solver.numVariables;
+    assigned = new boolean[2 * numVariables + 1];
+    fixed = new boolean[2 * numVariables + 1];
+    probed = new boolean[2 * numVariables + 1];
+    path = new int[2 * numVariables + 1];
+    marks = new int[2 * numVariables + 1];
+    next = new int[2 * numVariables + 1];
+    implied = new TIntArrayList[numVariables + 1];
+    touched = new TouchSet(numVariables);
+  }
+
+  public static void run(final Solver solver) throws ContradictionException {
+    long start = Statistics.start();
+    FailedLiteralProbing flp = new FailedLiteralProbing(solver);
+    try {
+      flp.run();
+    } finally {
+      timer.stop(start, flp.numFailedLiterals + flp.numNecessaryAssignments
+                 + flp.numEquivalences);
+    }
+  }
+
+  private void run() throws ContradictionException {
+    solver.propagateBinaries();
+
+    // Trees are rooted in literals that imply nothing.
+    for (int u = -numVariables; u <= numVariables; u++) {
+      if (u != 0 && solver.graph.edges(u).isEmpty()) {
+        probeTree(u);
+      }
+    }
+    // Remaining literals are on cycles.
+    for (int u = -numVariables; u <= numVariables; u++) {
+      if (u != 0) {
+        probeTree(u);
+      }
+    }
+
+    // Literals assigned before probing are implied by the units.
+    for (int i = 0; i < trail.size(); i++) {
+      solver.queueUnit(trail.getQuick(i));
+    }
+    solver.watchLists.append(binaries);
+    solver.propagate();
+    if (!binaries.isEmpty()) {
+      solver.renameEquivalentLiterals();
+    }
+
+    logger.info("Probed " + numProbes + " literals in " + numSteps
+                + " steps: found " + numFailedLiterals + " failed literals, "
+                + numNecessaryAssignments + " necessary assignments and "
+                + numEquivalences + " equivalences");
+    Statistics.add("flp.probes", numProbes);
+    Statistics.add("flp.failed", numFailedLiterals);
+    Statistics.add("flp.necessary", numNecessaryAssignments);
+    Statistics.add("flp.equivalences", numEquivalences);
+  }
+
+  /** Returns true if literal can be probed. */
+  private boolean canProbe(final int literal) {
+    return !get(probed, literal)
+        && !get(fixed, literal) && !get(fixed, neg(literal))
+        && !solver.isLiteralAssigned(literal)
+        && !solver.isVariableMissing(var(literal));
+  }
+
+  /**
+   * Probes all literals implying root.
+   *
+   * Units found are assigned after the whole tree was probed.
+   */
+  private void probeTree(final int root) throws ContradictionException {
+    if (numSteps >= STEPS_LIMIT || !canProbe(root)) {
+      return;
+    }
+
+    int top = 0;
+    if (probe(root, top)) {
+      path[top++] = root;
+    }
+
+    while (top > 0) {
+      final int u = path[top - 1];
+      // c &rarr; u iff -u &rarr; -c
+      final TIntArrayList edges = solver.graph.edges(neg(u));
+
+      if (next[top - 1] < edges.size() && numSteps < STEPS_LIMIT) {
+        int c = neg(edges.getQuick(next[top - 1]++));
+        if (canProbe(c) && probe(c, top)) {
+          path[top++] = c;
+        }
+      } else {
+        backtrack(marks[top - 1]);
+        top--;
+      }
+    }
+
+    // Assigns discovered units before any other probe.
+    for (int i = 0; i < units.size(); i++) {
+      int unit = units.getQuick(i);
+      if (!assign(unit) || !propagate(trail.size() - 1)) {
+        throw new ContradictionException();
+      }
+    }
+    for (int i = 0; i < trail.size(); i++) {
+      set(fixed, trail.getQuick(i), true);
+    }
+    units.reset();
+  }
+
+  /**
+   * Assigns literal on top of current trail and propagates it.
+   *
+   * @param literal literal to probe
+   * @param top position of literal on the path
+   * @return true if literal was not failed and it was left assigned.
+   */
+  private boolean probe(final int literal, final int top) {
+    set(probed, literal, true);
+    numProbes++;
+
+    int mark = trail.size();
+    marks[top] = mark;
+    next[top] = 0;
+
+    if (!assign(literal) || !propagate(mark)) {
+      // Literal implies a contradiction.
+      backtrack(mark);
+      units.add(neg(literal));
+      numFailedLiterals++;
+      return false;
+    }
+
+    necessaryAssignments(literal);
+    return true;
+  }
+
+  /**
+   * Finds literals implied by both literal and its negation.
+   *
+   * Propagation of the first probed polarity is kept until the
+   * second polarity is probed. Because literal implies all literals
+   * on the path the whole trail of the current tree is used.
+   *
+   * @param literal probed literal
+   */
+  private void necessaryAssignments(final int literal) {
+    final int mark = marks[0];
+    int v = var(literal);
+    TIntArrayList other = implied[v];
+
+    if (other == null) {
+      if (!get(probed, neg(literal))) {
+        int size = trail.size() - mark;
+        if (size <= IMPLIED_LIMIT) {
+          implied[v] = new TIntArrayList(trail.toArray(mark, size));
+        }
+      }
+      return;
+    }
+
+    implied[v] = null;
+    touched.reset();
+    for (int i = 0; i < other.size(); i++) {
+      touched.add(other.getQuick(i));
+    }
+
+    for (int i = mark; i < trail.size(); i++) {
+      int u = trail.getQuick(i);
+      if (get(fixed, u)) {
+        continue;
+      }
+      if (touched.contains(u)) {
+        // literal &rarr; u and -literal &rarr; u
+        units.add(u);
+        numNecessaryAssignments++;
+      } else if (touched.contains(neg(u)) && var(u) != v) {
+        // literal &rarr; u and -literal &rarr; -u
+        addBinary(neg(literal), u);
+        addBinary(literal, neg(u));
+        numEquivalences++;
+      }
+    }
+  }
+
+  private void addBinary(final int u, final int v) {
+    binaries.add(encode(2, OR));
+    binaries.add(u);
+    binaries.add(v);
+  }
+
+  /**
+   * Assigns literal.
+   *
+   * @return false if literal is already false
+   */
+  private boolean assign(final int literal) {
+    if (get(assigned, neg(literal))) {
+      return false;
+    }
+    if (!get(assigned, literal)) {
+      set(assigned, literal, true);
+      trail.add(literal);
+    }
+    return true;
+  }
+
+  /** Removes from trail all literals assigned after mark. */
+  private void backtrack(final int mark) {
+    for (int i = mark; i < trail.size(); i++) {
+      set(assigned, trail.getQuick(i), false);
+    }
+    trail.remove(mark, trail.size() - mark);
+  }
+
+  /**
+   * Propagates literals on trail starting from position head.
+   *
+   * @return false if a contradiction was found
+   */
+  private boolean propagate(int head) {
+    while (head < trail.size()) {
+      int literal = trail.getQuick(head++);
+
+      TIntArrayList edges = solver.graph.edges(literal);
+      numSteps += edges.size();
+      for (int i = 0; i < edges.size(); i++) {
+        if (!assign(edges.getQuick(i))) {
+          return false;
+        }
+      }
+
+      TIntHashSet clauses = solver.watchLists.get(neg(literal));
+      TIntIterator it = clauses.iterator();
+      for (int size = clauses.size(); size > 0; size--) {
+        if (!propagateClause(it.next())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Propagates an OR clause with at least three literals.
+   * Shorter clauses are in the implication graph.
+   *
+   * @return false if all literals in clause are false
+   */
+  private boolean propagateClause(final int clause) {
+    final TIntArrayList formula = solver.formula;
+    int length = length(formula, clause);
+    if (length < 3 || type(formula, clause) != OR) {
+      return true;
+    }
+
+    numSteps += length;
+    int unassigned = 0, numUnassigned = 0;
+    for (int i = clause; i < clause + length; i++) {
+      int u = formula.getQuick(i);
+      if (get(assigned, u)) {
+        return true;
+      }
+      if (!get(assigned, neg(u))) {
+        unassigned = u;
+        numUnassigned++;
+        if (numUnassigned > 1) {
+          return true;
+        }
+      }
+    }
+
+    if (numUnassigned == 0) {
+      return false;
+    }
+    return assign(unassigned);
+  }
+
+  private boolean get(final boolean[] array, final int u) {
+    return array[u + numVariables];
+  }
+
+  private void set(final boolean[] array, final int u, final boolean b) {
+    array[u + numVariables] = b;
+  }
+}
@@ -0,0 +1,94 @@
+package ibis.structure;
+
+
+/**
+ * Emits JDK Flight Recorder events (see FlightEvents).<br/>
+ *
+ * FlightEvents is the only class referring to jdk.jfr. It is
+ * compiled from src/jfr/java by the jfr profile (JDK 11 and later)
+ * and loaded by name, so the solver still builds for and runs on
+ * JVMs without JFR. Without FlightEvents, without jdk.jfr or with
+ * -Dstructure.jfr=false every method returns after a null test.
+ * Otherwise events are allocated only while a recording enables
+ * their type. Activity records its calls on both executors.
+ */
+final class Flight {
+  /** Receives the events or null if they are not recorded. */
+  static final Sink sink = load();
+
+  private Flight() {
+  }
+
+  /** Records events, implemented by FlightEvents. */
+  interface Sink {
+    /** @return the event to pass to end() or null if not recorded */
+    Object begin(Activity activity, boolean initialize);
+
+    void end(Object event);
+
+    void generationStart(long generation, long budget, int size);
+
+    void generationKill(long generation);
+
+    void simplification(String technique, long nanos, long yield);
+  }
+
+  private static Sink load() {
+    if (!Boolean.parseBoolean(System.getProperty("structure.jfr", "true"))) {
+      return null;
+    }
+    try {
+      Class.forName("jdk.jfr.Event");
+      return (Sink) Class.forName("ibis.structure.FlightEvents")
+          .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      return null;
+    } catch (LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * Starts the event of a call to initialize() or process().
+   *
+   * @return the event to pass to end() or null if not recorded
+   */
+  static Object begin(final Activity activity, final boolean initialize) {
+    if (sink == null) {
+      return null;
+    }
+    return sink.begin(activity, initialize);
+  }
+
+  /** Commits an event started by begin(). */
+  static void end(final Object event) {
+    if (event != null) {
+      sink.end(event);
+    }
+  }
+
+  /** Records that a generation was started with budget work units. */
+  static void generationStart(final long generation,
+                              final long budget,
+                              final int size) {
+    if (sink != null) {
+      sink.generationStart(generation, budget, size);
+    }
+  }
+
+  /** Records that a generation was killed. */
+  static void generationKill(final long generation) {
+    if (sink != null) {
+      sink.generationKill(generation);
+    }
+  }
+
+  /** Records a simplification pass (see Statistics.Timer). */
+  static void simplification(final String technique,
+                             final long nanos,
+                             final long yield) {
+    if (sink != null) {
+      sink.simplification(technique, nanos, yield);
+    }
+  }
+}
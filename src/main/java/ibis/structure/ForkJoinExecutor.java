@@ -0,0 +1,265 @@
+package ibis.structure;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Runs activities on a ForkJoinPool inside a single JVM.<br/>
+ *
+ * The semantics are the same as Constellation's: initialize()
+ * is called once, then process() is called once for every event
+ * until the activity finishes. An activity is never run by two
+ * threads at the same time. Events sent to finished activities
+ * are dropped.<br/>
+ *
+ * Tasks forked from a worker go to its local queue so the search
+ * is depth first locally while idle workers steal the oldest
+ * (shallowest) tasks.<br/>
+ *
+ * If an activity throws, the executor records the failure, stops
+ * the pool and wakes every collector; waitForEvent() then throws
+ * an ExecutionException with the failure as cause.
+ */
+public final class ForkJoinExecutor implements ActivityExecutor {
+  private static final Logger logger = Logger.getLogger(
+      ForkJoinExecutor.class);
+
+  /** Identifies activities run by this executor. */
+  private static final class Identifier extends ActivityIdentifier {
+    private final long id;
+
+    private Identifier(final long id) {
+      this.id = id;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (id ^ (id >>> 32));
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      return other instanceof Identifier && ((Identifier) other).id == id;
+    }
+
+    @Override
+    public String toString() {
+      return "fj:" + id;
+    }
+  }
+
+  /** An activity with its pending events. */
+  private final class Cell implements Runnable {
+    private final Activity activity;
+    /** Time spent in activities of the same class. */
+    private final Statistics.Timer timer;
+    private final ConcurrentLinkedQueue<Event> mailbox =
+        new ConcurrentLinkedQueue<Event>();
+    /** True if the cell is queued or running. */
+    private final AtomicBoolean scheduled = new AtomicBoolean(true);
+    private boolean initialized = false;
+
+    Cell(final Activity activity) {
+      this.activity = activity;
+      timer = Statistics.timer(
+          "activity." + activity.getClass().getSimpleName());
+    }
+
+    /** Runs initialize() or process() for one event. */
+    public void run() {
+      long start = Statistics.start();
+      Cancellation.Scope outer = Cancellation.enterScope(activity.scope);
+      try {
+        if (!initialized) {
+          initialized = true;
+          activity.initialize();
+        } else {
+          activity.process(mailbox.poll());
+        }
+
+        if (activity.isFinished()) {
+          cells.remove(activity.identifier());
+          activity.cleanup();
+          return;
+        }
+      } catch (OutOfMemoryError e) {
+        ResourceMonitor.abort("out of memory");
+      } catch (Throwable e) {
+        if (pool.isShutdown()) {
+          // Activities of a stopped executor fail to submit children.
+          return;
+        }
+        fail(activity, e);
+      } finally {
+        Cancellation.enterScope(outer);
+        timer.stop(start);
+      }
+
+      scheduled.set(false);
+      if (!mailbox.isEmpty()) {
+        schedule();
+      }
+    }
+
+    /** Queues the cell if it has an event and it is not queued. */
+    void schedule() {
+      while (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+        if (!mailbox.isEmpty()) {
+          pool.execute(this);
+          return;
+        }
+        // Another thread processed the event.
+        scheduled.set(false);
+      }
+    }
+  }
+
+  private final ForkJoinPool pool;
+  /** Master lending activities to other JVMs or null. */
+  private TcpMaster remote = null;
+  /** Running activities. */
+  private final ConcurrentHashMap<ActivityIdentifier, Cell> cells =
+      new ConcurrentHashMap<ActivityIdentifier, Cell>();
+  /** Collectors waiting for an event. */
+  private final ConcurrentHashMap<ActivityIdentifier, LinkedBlockingQueue<Event>>
+      collectors = new ConcurrentHashMap<ActivityIdentifier, LinkedBlockingQueue<Event>>();
+  private final AtomicLong nextIdentifier = new AtomicLong();
+  /** First failure of an activity or null. */
+  private final AtomicReference<Throwable> failure =
+      new AtomicReference<Throwable>();
+
+  /**
+   * Creates an executor.
+   *
+   * @param numExecutors number of worker threads
+   */
+  public ForkJoinExecutor(final int numExecutors) {
+    pool = new ForkJoinPool(numExecutors);
+  }
+
+  /** Records the failure, stops the pool and wakes all collectors. */
+  private void fail(final Activity activity, final Throwable e) {
+    if (!failure.compareAndSet(null, e)) {
+      return;
+    }
+
+    logger.error("Activity " + activity.identifier() + " failed", e);
+    pool.shutdownNow();
+    for (ActivityIdentifier collector : collectors.keySet()) {
+      LinkedBlockingQueue<Event> queue = collectors.get(collector);
+      if (queue != null) {
+        queue.add(new Event(null, collector, null));
+      }
+    }
+  }
+
+  /** Returns e or throws if it is the wake up sent by fail(). */
+  private Event check(final Event e) throws ExecutionException {
+    if ((e == null || e.source == null) && failure.get() != null) {
+      throw new ExecutionException("Activity failed", failure.get());
+    }
+    return e;
+  }
+
+  /** Lends activities to workers connected to remote. */
+  public void setRemote(final TcpMaster remote) {
+    this.remote = remote;
+  }
+
+  @Override
+  public ActivityIdentifier submit(final ibis.constellation.Activity activity) {
+    if (!(activity instanceof Activity)) {
+      throw new IllegalArgumentException(
+          "Cannot run " + activity.getClass().getName());
+    }
+
+    Identifier identifier = new Identifier(nextIdentifier.incrementAndGet());
+    Activity a = (Activity) activity;
+    if (remote != null && remote.offer(a, identifier)) {
+      return identifier;
+    }
+    a.bind(this, identifier);
+
+    Cell cell = new Cell(a);
+    cells.put(identifier, cell);
+    pool.execute(cell);
+    return identifier;
+  }
+
+  @Override
+  public void send(final Event e) {
+    LinkedBlockingQueue<Event> collector = collectors.get(e.target);
+    if (collector != null) {
+      collector.add(e);
+      return;
+    }
+
+    Cell cell = cells.get(e.target);
+    if (cell == null) {
+      logger.debug("Dropped event for finished activity " + e.target);
+      return;
+    }
+    cell.mailbox.add(e);
+    cell.schedule();
+  }
+
+  /** Returns the identifier of a new collector for one event. */
+  public ActivityIdentifier collector() {
+    Identifier identifier = new Identifier(nextIdentifier.incrementAndGet());
+    collectors.put(identifier, new LinkedBlockingQueue<Event>());
+    return identifier;
+  }
+
+  /**
+   * Waits for the event sent to collector.
+   *
+   * @throws ExecutionException if an activity failed
+   */
+  public Event waitForEvent(final ActivityIdentifier collector)
+      throws InterruptedException, ExecutionException {
+    LinkedBlockingQueue<Event> queue = collectors.get(collector);
+    Event e = queue.poll();
+    if (e == null) {
+      check(null);
+      e = queue.take();
+    }
+    collectors.remove(collector);
+    return check(e);
+  }
+
+  /**
+   * Waits at most millis for the event sent to collector.
+   *
+   * @return the event or null if none arrived in time
+   * @throws ExecutionException if an activity failed
+   */
+  public Event waitForEvent(final ActivityIdentifier collector,
+                            final long millis)
+      throws InterruptedException, ExecutionException {
+    LinkedBlockingQueue<Event> queue = collectors.get(collector);
+    Event e = queue.poll();
+    if (e == null) {
+      check(null);
+      e = queue.poll(millis, TimeUnit.MILLISECONDS);
+    }
+    collectors.remove(collector);
+    return e == null ? null : check(e);
+  }
+
+  /** Stops the worker threads. */
+  public void shutdown() {
+    logger.info("Pool stole " + pool.getStealCount() + " tasks");
+    pool.shutdownNow();
+  }
+}
@@ -1,15 +1,15 @@
 package ibis.structure;
 
+import java.util.Arrays;
+import java.util.Random;
 import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.set.hash.TIntHashSet;
-import gnu.trove.iterator.TIntIterator;;
 import org.apache.log4j.Logger;
 
 import static ibis.structure.Misc.*;
 
 
 /**
- * Performs Hidden Tautology Elimination until a fixed point.<br/>
+ * Performs Hidden Tautology Elimination using time stamps.<br/>
  *
  * If a + b + c + ... is a clause
  * and -a &rarr; c then the clause is always satisfied and can be removed.<br/>
@@ -17,88 +17,369 @@ import static ibis.structure.Misc.*;
  * HTE as described in this <a href="http://www.springerlink.com/content/4376742562145301/">paper</a>
  * requires Hidden Literal Addition, which is performed by traversing the implication graph. <br/>
  *
+ * Instead of traversing the implication graph for every literal
+ * the graph is traversed once per round with a randomized depth
+ * first search which assigns to every literal a discovery and
+ * a finish time. If the interval of u contains the interval of v
+ * then u &rarr; v so implications are checked in O(1). This is the
+ * Unhiding algorithm from
+ * <a href="http://fmv.jku.at/papers/HeuleJarvisaloBiere-SAT11.pdf">
+ * Efficient CNF Simplification based on Binary Implication Graphs</a>.<br/>
+ *
+ * Besides tautologies the stamps are used to find:
+ * <ul>
+ * <li>hidden literals: if a + b + ... and a &rarr; b then a can be removed;</li>
+ * <li>failed literals: if a &rarr; b and a &rarr; -b then -a is a unit;</li>
+ * <li>equivalent literals: if the search finds a cycle.</li>
+ * </ul>
  */
-public class HiddenTautologyElimination {
+public final class HiddenTautologyElimination {
   private static final Logger logger = Logger.getLogger(HiddenTautologyElimination.class);
+  private static final Statistics.Timer timer = Statistics.timer("hte");
+
+  /** Number of randomized rounds per call. */
+  private static final int NUM_ROUNDS = 3;
+
+  private final Solver solver;
+  /**
+   * Orders the roots and edges of the search. Seeded per call
+   * so runs do not depend on how activities are interleaved.
+   */
+  private final Random random;
+  private final int numVariables;
+  /** Discovery times. */
+  private final int[] dsc;
+  /** Finish times. */
+  private final int[] fin;
+  /** Literals on the current search path. */
+  private final int[] path;
+  /** Next edge to explore for each literal on the path. */
+  private final int[] next;
+  /** Random offset of the first edge for each literal on the path. */
+  private final int[] offset;
+  /** Literals in the order they are stamped, reused by every round. */
+  private final int[] literals;
+  /** Literals of the current clause sorted by their time stamps. */
+  private long[] sorted = new long[16];
+  /** Literals removed from the current clause. */
+  private final TIntArrayList hidden = new TIntArrayList();
 
-  private Solver solver;
-  private TouchSet touched;
-  private TIntArrayList tautologies;
+  /** True if the last search found a cycle. */
+  private boolean hasCycles = false;
   private int numRemovedLiterals = 0;
+  private int numHiddenLiterals = 0;
+  private int numFailedLiterals = 0;
 
-  private HiddenTautologyElimination(final Solver solver) {
+  private HiddenTautologyElimination(final Solver solver, final long seed) {
     this.solver = solver;
+    random = new Random(seed);
 
-    touched = new TouchSet(solver.numVariables);
-    tautologies = new TIntArrayList();
+    numVariables = solver.numVariables;
+    dsc = new int[2 * numVariables + 1];
+    fin = new int[2 * numVariables + 1];
+    path = new int[2 * numVariables + 1];
+    next = new int[2 * numVariables + 1];
+    offset = new int[2 * numVariables + 1];
+    literals = new int[2 * numVariables];
   }
 
   public static void run(final Solver solver) throws ContradictionException {
-    (new HiddenTautologyElimination(solver)).run();
+    run(solver, 0);
+  }
+
+  /**
+   * Runs HTE with the randomized search seeded by seed,
+   * usually the generation of the calling activity.
+   */
+  public static void run(final Solver solver, final long seed)
+      throws ContradictionException {
+    long start = Statistics.start();
+    HiddenTautologyElimination hte =
+        new HiddenTautologyElimination(solver, seed);
+    try {
+      hte.run();
+    } finally {
+      timer.stop(start, hte.numRemovedLiterals + hte.numHiddenLiterals
+                 + hte.numFailedLiterals);
+    }
   }
 
   private void run() throws ContradictionException {
-    for (int literal = -solver.numVariables;
-        literal <= solver.numVariables;
-        literal++) {
-      if (literal == 0
-          || solver.numBinaries(literal) == 0
-          || solver.watchLists.get(literal).isEmpty()) {
-        continue;
+    for (int round = 0; round < NUM_ROUNDS; round++) {
+      stamp();
+
+      ClauseIterator it = new ClauseIterator(solver.formula);
+      while (it.hasNext()) {
+        Cancellation.poll();
+        eliminate(it.next());
       }
 
-      tautologies.reset();
-      touched.reset();
-      solver.graph.dfs(neg(literal), touched);
-      eliminate(literal);
+      solver.propagate();
+      if (hasCycles) {
+        solver.renameEquivalentLiterals();
+      }
+    }
 
-      // Removes discovered tautologies.
-      for (int i = 0; i < tautologies.size(); i++) {
-        solver.watchLists.removeClause(tautologies.get(i));
+    Statistics.add("hte.literals", numRemovedLiterals);
+    Statistics.add("hle.literals", numHiddenLiterals);
+    Statistics.add("hte.failed", numFailedLiterals);
+  }
+
+  /**
+   * Returns true if u &rarr; v can be proven from the current stamps.
+   *
+   * The answer is exact only for implications along the
+   * search tree so false means that the implication is unknown.
+   */
+  public boolean implies(final int u, final int v) {
+    return get(dsc, u) < get(dsc, v) && get(fin, v) < get(fin, u);
+  }
+
+  /**
+   * Stamps all literals in random order starting with
+   * the roots of the implication graph.
+   */
+  private void stamp() {
+    Arrays.fill(dsc, 0);
+    Arrays.fill(fin, 0);
+    hasCycles = false;
+
+    // Roots (literals without predecessors) go first,
+    // the remaining literals are stamped after.
+    int numRoots = 0, numOthers = 0;
+    for (int u = -numVariables; u <= numVariables; u++) {
+      if (u == 0) {
+        continue;
+      }
+      if (solver.graph.edges(neg(u)).isEmpty()) {
+        literals[numRoots++] = u;
+      } else {
+        literals[literals.length - ++numOthers] = u;
       }
     }
 
-    if (Configure.verbose) {
-      if (numRemovedLiterals > 0) {
-        System.err.print("hte" + numRemovedLiterals + ".");
+    shuffle(literals, 0, numRoots);
+    shuffle(literals, numRoots, literals.length);
+
+    int time = 0;
+    for (int i = 0; i < literals.length; i++) {
+      if (get(dsc, literals[i]) == 0) {
+        time = stamp(literals[i], time);
       }
     }
   }
 
-  private void eliminate(final int literal) throws ContradictionException {
-    TIntHashSet watchList = solver.watchLists.get(literal);
-    TIntIterator it = watchList.iterator();
+  /**
+   * Performs a depth first search starting from root.
+   *
+   * @param root literal to start from
+   * @param time current time
+   * @return time after search
+   */
+  private int stamp(final int root, int time) {
+    int top = 0;
+    set(dsc, root, ++time);
+    push(root, top++);
 
-clause_loop:
-    for (int size = watchList.size(); size > 0; size--) {
-      int clause = it.next();
-      int length = length(solver.formula, clause);
+    final int rootTime = time;
+    while (top > 0) {
+      final int u = path[top - 1];
+      final TIntArrayList edges = solver.graph.edges(u);
+      final int size = edges.size();
 
-      if (length < 3) {
+      if (next[top - 1] == size) {
+        set(fin, u, ++time);
+        top--;
         continue;
       }
-      if (type(solver.formula, clause) != OR) {
-        continue;
+
+      int v = edges.getQuick((offset[top - 1] + next[top - 1]) % size);
+      next[top - 1]++;
+
+      if (get(dsc, v) == 0) {
+        failedLiteral(v, rootTime, top);
+        set(dsc, v, ++time);
+        push(v, top++);
+      } else if (get(fin, v) == 0) {
+        // v is on the current path so there is a cycle.
+        hasCycles = true;
       }
+    }
+
+    return time;
+  }
+
+  /** Pushes u on the search path at position top. */
+  private void push(final int u, final int top) {
+    int size = solver.graph.edges(u).size();
+    path[top] = u;
+    next[top] = 0;
+    offset[top] = size == 0 ? 0 : random.nextInt(size);
+  }
+
+  /**
+   * Checks if discovering v proves that a literal on
+   * the current path is failed.
+   *
+   * If -v was discovered in the current tree then
+   * the deepest literal on the path discovered before -v
+   * implies both v and -v.
+   */
+  private void failedLiteral(final int v,
+                             final int rootTime,
+                             final int top) {
+    int time = get(dsc, neg(v));
+    if (time < rootTime) {
+      return;
+    }
 
-      // Checks if clause is a tautology
-      for (int j = clause; j < clause + length; j++) {
-        int v = solver.formula.getQuick(j);
-        if (v != literal && touched.contains(v)) {
-          // If literal + v + a + ... and -literal => v
-          // then clause is tautology
-          numRemovedLiterals += length;
-          tautologies.add(clause);
-          continue clause_loop;
-        }
-
-        if (v != literal && touched.contains(neg(v))) {
-          numRemovedLiterals++;
-          length--;
-          solver.watchLists.removeLiteral(clause, v);
-        }
+    int i = top - 1;
+    while (get(dsc, path[i]) > time) {
+      i--;
+    }
+
+    solver.queueUnit(neg(path[i]));
+    numFailedLiterals++;
+  }
+
+  /**
+   * Removes clause if it is a hidden tautology,
+   * otherwise removes the hidden literals.
+   */
+  private void eliminate(final int clause) throws ContradictionException {
+    final TIntArrayList formula = solver.formula;
+    int length = length(formula, clause);
+
+    if (length < 3) {
+      return;
+    }
+    if (type(formula, clause) != OR) {
+      return;
+    }
+
+    if (isHiddenTautology(clause, length)) {
+      numRemovedLiterals += length;
+      solver.watchLists.removeClause(clause);
+      return;
+    }
+
+    findHiddenLiterals(clause, length);
+    for (int i = 0; i < hidden.size(); i++) {
+      solver.watchLists.removeLiteral(clause, hidden.getQuick(i));
+    }
+    numHiddenLiterals += hidden.size();
+  }
+
+  /**
+   * Returns true if the clause contains u and v such that -u &rarr; v.
+   *
+   * Literals and their negations are sorted by discovery time and
+   * then merged looking for an interval of a negation which
+   * contains the interval of a literal.
+   */
+  private boolean isHiddenTautology(final int clause, final int length) {
+    ensureCapacity(2 * length);
+    for (int i = 0; i < length; i++) {
+      int literal = solver.formula.getQuick(clause + i);
+      sorted[i] = pack(literal);
+      sorted[length + i] = pack(neg(literal));
+    }
+    Arrays.sort(sorted, 0, length);
+    Arrays.sort(sorted, length, 2 * length);
+
+    int p = 0, n = length;
+    while (p < length && n < 2 * length) {
+      int pos = unpack(sorted[p]);
+      int neg = unpack(sorted[n]);
+
+      if (get(dsc, neg) > get(dsc, pos)) {
+        p++;
+      } else if (get(fin, neg) < get(fin, pos)) {
+        n++;
+      } else {
+        return true;
       }
     }
+
+    return false;
   }
-}
 
+  /**
+   * Finds literals u in clause such that u &rarr; v
+   * for some other literal v in clause.
+   */
+  private void findHiddenLiterals(final int clause, final int length) {
+    hidden.reset();
+    ensureCapacity(length);
+
+    // u's interval contains v's interval.
+    for (int i = 0; i < length; i++) {
+      sorted[i] = pack(solver.formula.getQuick(clause + i));
+    }
+    Arrays.sort(sorted, 0, length);
+
+    int minFin = Integer.MAX_VALUE;
+    for (int i = length - 1; i >= 0; i--) {
+      int literal = unpack(sorted[i]);
+      if (get(fin, literal) > minFin) {
+        hidden.add(literal);
+      } else {
+        minFin = get(fin, literal);
+      }
+    }
+
+    // -v's interval contains -u's interval.
+    int num = 0;
+    for (int i = 0; i < length; i++) {
+      int literal = solver.formula.getQuick(clause + i);
+      if (!hidden.contains(literal)) {
+        sorted[num++] = pack(neg(literal));
+      }
+    }
+    Arrays.sort(sorted, 0, num);
+
+    int maxFin = 0;
+    for (int i = 0; i < num; i++) {
+      int literal = unpack(sorted[i]);
+      if (get(fin, literal) < maxFin) {
+        hidden.add(neg(literal));
+      } else {
+        maxFin = get(fin, literal);
+      }
+    }
+  }
+
+  /** Packs literal with its discovery time so it can be sorted. */
+  private long pack(final int literal) {
+    return ((long) get(dsc, literal) << 32) | (literal & 0xffffffffL);
+  }
+
+  /** Returns the literal packed with pack(). */
+  private static int unpack(final long packed) {
+    return (int) packed;
+  }
+
+  private void ensureCapacity(final int size) {
+    if (sorted.length < size) {
+      sorted = new long[Math.max(size, 2 * sorted.length)];
+    }
+  }
+
+  /** Shuffles elements of array a between from and to. */
+  private void shuffle(final int[] a, final int from, final int to) {
+    for (int i = from + 1; i < to; i++) {
+      int j = from + random.nextInt(i - from + 1);
+      int temp = a[i];
+      a[i] = a[j];
+      a[j] = temp;
+    }
+  }
+
+  private int get(final int[] array, final int u) {
+    return array[u + numVariables];
+  }
+
+  private void set(final int[] array, final int u, final int v) {
+    array[u + numVariables] = v;
+  }
+}
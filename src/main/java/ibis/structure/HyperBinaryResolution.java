@@ -21,6 +21,7 @@ public final class HyperBinaryResolution {
   private static final int CACHE_SIZE = 512;
 
   private static final Logger logger = Logger.getLogger(HyperBinaryResolution.class);
+  private static final Statistics.Timer timer = Statistics.timer("hbr");
 
   /** The solver. */
   private final Solver solver;
@@ -46,16 +47,23 @@ public final class HyperBinaryResolution {
   }
 
   public static boolean run(final Solver solver) throws ContradictionException {
-    boolean simplified = (new HyperBinaryResolution(solver)).run();
-    solver.propagate();
-    solver.renameEquivalentLiterals();
-    return simplified;
+    long start = Statistics.start();
+    HyperBinaryResolution hbr = new HyperBinaryResolution(solver);
+    try {
+      boolean simplified = hbr.run();
+      solver.propagate();
+      solver.renameEquivalentLiterals();
+      return simplified;
+    } finally {
+      timer.stop(start, hbr.units.size() + hbr.binaries.size() / 3);
+    }
   }
 
   public boolean run() throws ContradictionException {
     long start = System.currentTimeMillis();
     ClauseIterator it = new ClauseIterator(solver.formula);
     while (it.hasNext()) {
+      Cancellation.poll();
       run(it.next());
 
       long curr = System.currentTimeMillis();
@@ -70,6 +78,8 @@ public final class HyperBinaryResolution {
     // Adds discovered binaries.
     int numBinaries = binaries.size() / 3;
     solver.watchLists.append(binaries);
+    Statistics.add("hbr.units", numUnits);
+    Statistics.add("hbr.binaries", numBinaries);
 
     return !units.isEmpty() || !binaries.isEmpty();
   }
@@ -40,6 +40,12 @@ public final class ImplicationsGraph {
     edges(neg(v)).add(neg(u));
   }
 
+  /** Removes one implication u &rarr; v added with add(). */
+  public void remove(final int u, final int v) {
+    edges(u).remove(v);
+    edges(neg(v)).remove(neg(u));
+  }
+
   /** Creats edges for literals u and -u */
   private void createLiteral(final int u) {
     if (edges(u) == EMPTY) {
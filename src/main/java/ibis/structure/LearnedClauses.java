@@ -0,0 +1,416 @@
+package ibis.structure;
+
+import java.util.Arrays;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Stores clauses learned by previous generations.<br/>
+ *
+ * Learned clauses are kept separately from the instance so that
+ * the restart loop simplifies only the irreducible formula.
+ * Each generation receives the instance plus the stored clauses.<br/>
+ *
+ * For every clause the store keeps:
+ * <ul>
+ * <li>glue: the number of branches the clause depends on, i.e.
+ * the number of inner nodes on its path in the tree of learned
+ * clauses. Units and proxies learned below a branch share
+ * the level of that branch (like LBD in CDCL solvers);</li>
+ * <li>usage: the number of times the clause was learned again.
+ * Usage is halved at every eviction so old clauses fade.</li>
+ * </ul>
+ *
+ * Clauses are deduplicated using a hash of their sorted literals.
+ * Clauses with equal hashes are chained and compared literal by literal.
+ * When the store exceeds Configure.learnedMemory the clauses with
+ * the largest glue, smallest usage and longest length are evicted.<br/>
+ *
+ * Between generations the stored clauses are vivified (see vivify())
+ * so the next generations receive them shortened.
+ */
+public final class LearnedClauses implements java.io.Serializable {
+  private static final Logger logger = Logger.getLogger(LearnedClauses.class);
+
+  /** Approximate size in bytes of a clause excluding its literals. */
+  private static final int CLAUSE_OVERHEAD = 16;
+  /** Clauses with glue at most this are evicted last. */
+  private static final int CORE_GLUE = 2;
+
+  /** Clauses with sorted literals. */
+  private TIntArrayList clauses = new TIntArrayList();
+  /** Start of every clause in clauses. */
+  private TIntArrayList starts = new TIntArrayList();
+  /** Glue of every clause. */
+  private TIntArrayList glues = new TIntArrayList();
+  /** Usage of every clause. */
+  private TIntArrayList usages = new TIntArrayList();
+  /** Maps hashes of clauses to the index of the last clause added. */
+  private TIntIntHashMap index = new TIntIntHashMap();
+  /** Index of the previous clause with the same hash or -1. */
+  private TIntArrayList chain = new TIntArrayList();
+
+  /** Returns the number of stored clauses. */
+  public int size() {
+    return starts.size();
+  }
+
+  /** Returns the approximate memory used by the store in bytes. */
+  public long memory() {
+    return 4L * clauses.size() + 1L * CLAUSE_OVERHEAD * starts.size();
+  }
+
+  /**
+   * Adds the clauses learned in solution.
+   *
+   * @param solution solution with the tree of learned clauses
+   * @param limit maximum length of a clause to add
+   */
+  public void add(final Solution solution, final int limit) {
+    int numAdded = 0, numDuplicates = 0;
+    TIntArrayList learned = solution.learned();
+    TIntArrayList stack = new TIntArrayList();
+
+    // Walks the tree of learned clauses. Every leaf ends a clause.
+    for (int p = 0; p < learned.size(); p++) {
+      int literal = learned.getQuick(p);
+      if (literal != 0) {
+        stack.add(literal);
+        continue;
+      }
+
+      // A leaf is closed by the zero following it.
+      if (p > 0 && learned.getQuick(p - 1) != 0) {
+        int glue = Math.max(1, stack.size() - 1);
+        if (stack.size() <= limit) {
+          if (add(stack, glue)) {
+            numAdded++;
+          } else {
+            numDuplicates++;
+          }
+        }
+      }
+      if (!stack.isEmpty()) {
+        stack.removeAt(stack.size() - 1);
+      }
+    }
+
+    if (memory() > Configure.learnedMemory) {
+      evict(Configure.learnedMemory / 4 * 3);
+    }
+
+    logger.info("Learned " + numAdded + " new clauses and " + numDuplicates
+                + " duplicates; store has " + size() + " clauses ("
+                + memory() / 1024 + " KiB)");
+  }
+
+  /**
+   * Adds a clause to store.
+   *
+   * @return false if the clause was a duplicate.
+   */
+  boolean add(final TIntArrayList literals, final int glue) {
+    int[] sorted = literals.toArray();
+    Arrays.sort(sorted);
+    int hash = hash(sorted);
+
+    int first = index.containsKey(hash) ? index.get(hash) : -1;
+    for (int i = first; i != -1; i = chain.getQuick(i)) {
+      if (equals(i, sorted)) {
+        usages.setQuick(i, usages.getQuick(i) + 1);
+        glues.setQuick(i, Math.min(glues.getQuick(i), glue));
+        return false;
+      }
+    }
+
+    index.put(hash, starts.size());
+    chain.add(first);
+    clauses.add(encode(sorted.length, OR));
+    starts.add(clauses.size());
+    clauses.add(sorted);
+    glues.add(glue);
+    usages.add(0);
+    return true;
+  }
+
+  /**
+   * Appends to instance the stored clauses.
+   *
+   * Clauses containing variables no longer in the instance
+   * (assigned or eliminated during simplification) are removed
+   * from store. Clauses already in the instance are skipped.
+   *
+   * @return number of clauses appended
+   */
+  public int addTo(final Skeleton instance) {
+    TIntHashSet variables = instance.variables();
+    // Sorted OR clauses of the instance by hash.
+    TIntObjectHashMap<TIntArrayList> existing =
+        new TIntObjectHashMap<TIntArrayList>();
+    TIntArrayList sortedFormula = new TIntArrayList();
+    ClauseIterator it = new ClauseIterator(instance.formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      if (type(instance.formula, clause) != OR) {
+        continue;
+      }
+      int length = length(instance.formula, clause);
+      int[] sorted = instance.formula.toArray(clause, length);
+      Arrays.sort(sorted);
+
+      int hash = hash(sorted);
+      TIntArrayList same = existing.get(hash);
+      if (same == null) {
+        same = new TIntArrayList(1);
+        existing.put(hash, same);
+      }
+      same.add(sortedFormula.size() + 1);
+      sortedFormula.add(encode(length, OR));
+      sortedFormula.add(sorted);
+    }
+
+    boolean[] stale = new boolean[size()];
+    int numStale = 0, numAdded = 0;
+    for (int i = 0; i < size(); i++) {
+      int clause = starts.getQuick(i);
+      int length = length(clauses, clause);
+
+      for (int j = clause; j < clause + length; j++) {
+        if (!variables.contains(var(clauses.getQuick(j)))) {
+          stale[i] = true;
+          numStale++;
+          break;
+        }
+      }
+
+      if (!stale[i] && !contains(sortedFormula, existing, clause)) {
+        copy(instance.formula, clauses, clause);
+        numAdded++;
+      }
+    }
+
+    if (numStale > 0) {
+      retain(stale, false);
+    }
+
+    logger.info("Added " + numAdded + " learned clauses, removed "
+                + numStale + " stale clauses");
+    return numAdded;
+  }
+
+  /**
+   * Shortens the stored clauses by vivification (see Vivification)
+   * propagating the instance and the other stored clauses.
+   * Clauses shortened to a duplicate are merged.
+   *
+   * @param instance the instance the clauses were learned from
+   * @return number of literals removed
+   */
+  public int vivify(final Skeleton instance) {
+    if (size() == 0) {
+      return 0;
+    }
+
+    int numVariables = instance.numVariables;
+    for (int i = 0; i < size(); i++) {
+      int clause = starts.getQuick(i);
+      for (int j = clause; j < clause + length(clauses, clause); j++) {
+        numVariables = Math.max(numVariables, var(clauses.getQuick(j)));
+      }
+    }
+
+    // Stored clauses are vivified after the clauses of instance.
+    TIntArrayList formula = new TIntArrayList(
+        instance.formula.size() + clauses.size());
+    formula.addAll(instance.formula);
+    int offset = formula.size();
+    formula.addAll(clauses);
+    TIntArrayList vivified = new Vivification(
+        new Skeleton(numVariables, formula)).run(offset + 1, formula.size());
+    if (vivified.isEmpty()) {
+      return 0;
+    }
+
+    TIntIntHashMap positions = new TIntIntHashMap();
+    for (int i = 0; i < size(); i++) {
+      positions.put(offset + starts.getQuick(i), i);
+    }
+
+    int numLiterals = 0;
+    int[][] shortened = new int[size()][];
+    for (int p = 0; p < vivified.size(); ) {
+      int i = positions.get(vivified.getQuick(p));
+      int length = length(vivified, p + 2);
+      shortened[i] = vivified.toArray(p + 2, length);
+      numLiterals += length(clauses, starts.getQuick(i)) - length;
+      p += 2 + length;
+    }
+
+    // Adds all clauses again keeping their glue and usage.
+    TIntArrayList clauses = this.clauses;
+    TIntArrayList starts = this.starts;
+    TIntArrayList glues = this.glues;
+    TIntArrayList usages = this.usages;
+    this.clauses = new TIntArrayList(clauses.size());
+    this.starts = new TIntArrayList(starts.size());
+    this.glues = new TIntArrayList(glues.size());
+    this.usages = new TIntArrayList(usages.size());
+    this.chain = new TIntArrayList(chain.size());
+    index.clear();
+
+    for (int i = 0; i < starts.size(); i++) {
+      int clause = starts.getQuick(i);
+      TIntArrayList literals = new TIntArrayList(shortened[i] != null
+          ? shortened[i] : clauses.toArray(clause, length(clauses, clause)));
+      if (add(literals, glues.getQuick(i))) {
+        this.usages.setQuick(size() - 1, usages.getQuick(i));
+      }
+    }
+
+    logger.info("Vivification removed " + numLiterals + " literals from "
+                + "learned clauses; store has " + size() + " clauses");
+    return numLiterals;
+  }
+
+  /**
+   * Evicts the least valuable clauses until memory is below ceiling.
+   *
+   * @param ceiling maximum memory in bytes
+   */
+  private void evict(final long ceiling) {
+    Integer[] order = new Integer[size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+
+    // Worst clauses first.
+    Arrays.sort(order, new java.util.Comparator<Integer>() {
+      public int compare(final Integer o1, final Integer o2) {
+        int c1 = starts.getQuick(o1), c2 = starts.getQuick(o2);
+        boolean core1 = glues.getQuick(o1) <= CORE_GLUE;
+        boolean core2 = glues.getQuick(o2) <= CORE_GLUE;
+        if (core1 != core2) {
+          return core1 ? 1 : -1;
+        }
+        if (glues.getQuick(o1) != glues.getQuick(o2)) {
+          return glues.getQuick(o2) - glues.getQuick(o1);
+        }
+        if (usages.getQuick(o1) != usages.getQuick(o2)) {
+          return usages.getQuick(o1) - usages.getQuick(o2);
+        }
+        return length(clauses, c2) - length(clauses, c1);
+      }
+    });
+
+    boolean[] evicted = new boolean[size()];
+    long memory = memory();
+    int numEvicted = 0;
+    for (int i = 0; i < order.length && memory > ceiling; i++) {
+      int clause = starts.getQuick(order[i]);
+      evicted[order[i]] = true;
+      memory -= 4L * (length(clauses, clause) + 1) + CLAUSE_OVERHEAD;
+      numEvicted++;
+    }
+
+    retain(evicted, true);
+    logger.info("Evicted " + numEvicted + " learned clauses");
+  }
+
+  /**
+   * Removes marked clauses and halves usage if age is true.
+   *
+   * @param removed true for clauses to remove
+   * @param age true to halve usage of the remaining clauses
+   */
+  private void retain(final boolean[] removed, final boolean age) {
+    TIntArrayList clauses = new TIntArrayList();
+    TIntArrayList starts = new TIntArrayList();
+    TIntArrayList glues = new TIntArrayList();
+    TIntArrayList usages = new TIntArrayList();
+    TIntArrayList chain = new TIntArrayList();
+    index.clear();
+
+    for (int i = 0; i < removed.length; i++) {
+      if (removed[i]) {
+        continue;
+      }
+
+      int clause = this.starts.getQuick(i);
+      int length = length(this.clauses, clause);
+      int hash = hash(this.clauses.toArray(clause, length));
+      chain.add(index.containsKey(hash) ? index.get(hash) : -1);
+      index.put(hash, starts.size());
+
+      copy(clauses, this.clauses, clause);
+      starts.add(clauses.size() - length);
+      glues.add(this.glues.getQuick(i));
+      usages.add(age ? this.usages.getQuick(i) / 2 : this.usages.getQuick(i));
+    }
+
+    this.clauses = clauses;
+    this.starts = starts;
+    this.glues = glues;
+    this.usages = usages;
+    this.chain = chain;
+  }
+
+  /**
+   * Returns true if sorted, a formula of sorted clauses indexed
+   * by hash in existing, has the same literals as the stored clause.
+   */
+  private boolean contains(final TIntArrayList sorted,
+                           final TIntObjectHashMap<TIntArrayList> existing,
+                           final int clause) {
+    int length = length(clauses, clause);
+    TIntArrayList same = existing.get(hash(clauses.toArray(clause, length)));
+    if (same == null) {
+      return false;
+    }
+
+    for (int k = 0; k < same.size(); k++) {
+      int other = same.getQuick(k);
+      if (length(sorted, other) != length) {
+        continue;
+      }
+      int j = 0;
+      while (j < length
+             && sorted.getQuick(other + j) == clauses.getQuick(clause + j)) {
+        j++;
+      }
+      if (j == length) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns true if i-th clause has the same literals as sorted. */
+  private boolean equals(final int i, final int[] sorted) {
+    int clause = starts.getQuick(i);
+    int length = length(clauses, clause);
+    if (length != sorted.length) {
+      return false;
+    }
+    for (int j = 0; j < length; j++) {
+      if (clauses.getQuick(clause + j) != sorted[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns a hash of sorted literals. */
+  static int hash(final int[] sorted) {
+    int hash = sorted.length;
+    for (int i = 0; i < sorted.length; i++) {
+      hash = Misc.hash(hash + sorted[i]);
+    }
+    return hash;
+  }
+}
@@ -30,12 +30,16 @@ public final class LookAheadActivity extends Activity {
   private Solution solution = null;
   /** True if solved. */
   private boolean solved = false;
+  /** State of the restart loop. */
+  private RestartState state = null;
 
   public LookAheadActivity(final ActivityIdentifier parent,
                            final ActivityIdentifier tracer,
                            final TDoubleArrayList scores,
+                           final RestartState state,
                            final Skeleton instance) {
     super(parent, tracer, 0, 0, scores, instance);
+    this.state = state;
     this.solution = Solution.unknown();
   }
 
@@ -43,7 +47,7 @@ public final class LookAheadActivity extends Activity {
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     final int step = 16;
     final int total = step * Configure.numExecutors * Configure.lookAheadSize;
 
@@ -60,7 +64,8 @@ public final class LookAheadActivity extends Activity {
     }
 
     if (numChunks == 0) {
-      executor.submit(new SimplifyActivity(parent, tracer, scores, instance));
+      executor.submit(new SimplifyActivity(
+            parent, tracer, scores, state, instance));
       finish();
     } else {
       suspend();
@@ -68,7 +73,7 @@ public final class LookAheadActivity extends Activity {
   }
 
   @Override
-  public void process(final Event e) {
+  protected void doProcess(final Event e) {
     Solution response = (Solution) e.data;
 
     if (!solved) {
@@ -89,7 +94,8 @@ public final class LookAheadActivity extends Activity {
         solution.addLearnedClauses(learned, 10);
         instance.formula.addAll(learned);
         logger.info("Learned size is " + learned.size());
-        executor.submit(new SimplifyActivity(parent, tracer, scores, instance));
+        executor.submit(new SimplifyActivity(
+              parent, tracer, scores, state, instance));
       }
 
       finish();
@@ -0,0 +1,79 @@
+package ibis.structure;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Accounts the memory of the instances held by the search.<br/>
+ *
+ * Search activities register the bytes of their instance when
+ * created and release them when they drop the instance (see
+ * Activity.gc()) or move to another node, which acquires them
+ * again (see Activity.writeObject()). When the live bytes exceed
+ * Configure.searchMemory, BranchActivity submits the second branch
+ * only after the first finished and SplitActivity submits the
+ * components one by one. The search then proceeds depth first and
+ * keeps a number of instances proportional to the depth,
+ * independently of the number of executors.
+ */
+public final class MemoryBudget {
+  private static final Logger logger = Logger.getLogger(MemoryBudget.class);
+
+  /** Estimated bytes used by a Skeleton besides its formula. */
+  private static final int SKELETON_OVERHEAD = 64;
+
+  private static final AtomicLong live = new AtomicLong();
+  private static final AtomicLong peak = new AtomicLong();
+  private static final AtomicLong numThrottled = new AtomicLong();
+
+  private MemoryBudget() {
+  }
+
+  /** Returns the estimated bytes of instance. */
+  public static long bytes(final Skeleton instance) {
+    return SKELETON_OVERHEAD + 4L * instance.formula.size();
+  }
+
+  /**
+   * Registers instance as live.
+   *
+   * @return the bytes to release later
+   */
+  public static long acquire(final Skeleton instance) {
+    long bytes = bytes(instance);
+    long now = live.addAndGet(bytes);
+    long max = peak.get();
+    while (now > max && !peak.compareAndSet(max, now)) {
+      max = peak.get();
+    }
+    return bytes;
+  }
+
+  /** Releases bytes returned by acquire(). */
+  public static void release(final long bytes) {
+    live.addAndGet(-bytes);
+  }
+
+  /** Returns the bytes of the live instances. */
+  static long live() {
+    return live.get();
+  }
+
+  /** Returns true if activities should not fan out. */
+  public static boolean isOver() {
+    return live.get() > Configure.searchMemory;
+  }
+
+  /** Records that an activity delayed its children. */
+  public static void throttled() {
+    numThrottled.incrementAndGet();
+  }
+
+  /** Logs the peak memory and how often the search was throttled. */
+  public static void log() {
+    logger.info("Peak memory of live instances " + (peak.get() >> 20)
+                + " MiB of " + (Configure.searchMemory >> 20)
+                + " MiB, throttled " + numThrottled.get() + " times");
+  }
+}
@@ -11,11 +11,7 @@ public class MissingLiterals {
       }
     }
 
-    if (Configure.verbose) {
-      if (numUnits > 0) {
-        System.err.print("m" + numUnits + ".");
-      }
-    }
+    Statistics.add("missing.units", numUnits);
 
     return numUnits > 0;
   }
@@ -9,8 +9,8 @@ import org.apache.log4j.Logger;
  * Starts preprocesses the input instance.
  */
 public final class PreprocessActivity extends Activity {
-  /** Core after simplification. */
-  private Core core = null;
+  /** Merges the core after simplification. */
+  private Checkpoint.Frame frame = null;
 
   public PreprocessActivity(final ActivityIdentifier parent,
                             final ActivityIdentifier tracer,
@@ -19,7 +19,7 @@ public final class PreprocessActivity extends Activity {
   }
 
   @Override
-  public void initialize() throws Exception {
+  protected void doInitialize() throws Exception {
     Solver solver = null;
     Solution solution = null;
     Normalizer normalizer = new Normalizer();
@@ -30,6 +30,9 @@ public final class PreprocessActivity extends Activity {
 
       solver.propagate();
       HyperBinaryResolution.run(solver);
+      if (Configure.flp) {
+        FailedLiteralProbing.run(solver);
+      }
       HiddenTautologyElimination.run(solver);
       PureLiterals.run(solver);
       MissingLiterals.run(solver);
@@ -51,20 +54,20 @@ public final class PreprocessActivity extends Activity {
       return;
     }
 
-    core = solver.core();
+    Core core = solver.core();
     normalizer.denormalize(core);
-    executor.submit(new XORActivity(identifier(), tracer, core.instance()));
+    RestartState state = new RestartState();
+    frame = Checkpoint.core(core);
+    state.frames.add(frame);
+    executor.submit(new XORActivity(
+          identifier(), tracer, state, core.instance()));
     suspend();
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution solution = (Solution) e.data;
-    if (solution.isSatisfiable()) {
-      solution = core.merge(solution);
-    }
-
-    reply(solution);
+    reply(frame.restore(solution));
     finish();
   }
 }
@@ -46,7 +46,7 @@ public final class PropagateActivity extends Activity {
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     initialAssignment();
 
     try {
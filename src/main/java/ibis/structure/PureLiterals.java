@@ -42,11 +42,7 @@ public class PureLiterals {
       }
     }
 
-    if (Configure.verbose) {
-      if (numUnits > 0) {
-        System.err.print("p" + numUnits + ".");
-      }
-    }
+    Statistics.add("pure.units", numUnits);
 
     solver.propagate();
     return numUnits > 0;
@@ -62,7 +62,7 @@ public final class Reader {
    * @return read skeleton
    * @throws ParseException if stream contains an invalid instance
    */
-  private static Skeleton parseStream(final InputStream source)
+  public static Skeleton parseStream(final InputStream source)
       throws IOException, ParseException {
     Scanner scanner = new Scanner(source);
 
@@ -0,0 +1,213 @@
+package ibis.structure;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Enforces the time and memory limits of the solver.<br/>
+ *
+ * A daemon thread samples the wall-clock time, the CPU time of
+ * the process and the heap left live by the last garbage
+ * collection every TICK_MILLIS. When the live heap is above
+ * Configure.softHeap work is shed once: the running generations
+ * are killed, the memory of the learned clauses, of the component
+ * cache and of the search (see MemoryBudget) is halved, but not
+ * below MIN_BUDGET, and splitting is disabled. The monitor sheds
+ * again only after the live heap fell below Configure.softHeap,
+ * which also restores splitting.<br/>
+ *
+ * When a hard limit is reached (wall-clock, CPU or the live heap
+ * above Configure.hardHeap) or the heap is exhausted the monitor
+ * prints "s UNKNOWN" with some statistics and exits.
+ */
+public final class ResourceMonitor {
+  private static final Logger logger = Logger.getLogger(ResourceMonitor.class);
+
+  /** Milliseconds between checks. */
+  private static final long TICK_MILLIS = 100;
+  /** Smallest budget in bytes left by shedding. */
+  static final long MIN_BUDGET = 1L << 20;
+  /** Memory kept to be able to print after running out of heap. */
+  private static byte[] reserve = new byte[1 << 20];
+
+  /** Where the solution is printed. */
+  private static PrintStream output = null;
+  /** Starting time. */
+  private static long startTime = 0;
+  /** True from shedding until the heap is below Configure.softHeap. */
+  private static boolean shedding = false;
+  /** Configure.split before shedding. */
+  private static boolean split = true;
+  /** Number of times work was shed. */
+  private static int numSheds = 0;
+  /** True after the solution or UNKNOWN was printed. */
+  private static boolean done = false;
+
+  private ResourceMonitor() {
+  }
+
+  /**
+   * Starts watching the limits.
+   *
+   * @param out where to print UNKNOWN if a limit is reached
+   */
+  public static void start(final PrintStream out) {
+    output = out;
+    startTime = System.currentTimeMillis();
+
+    Thread.setDefaultUncaughtExceptionHandler(
+        new Thread.UncaughtExceptionHandler() {
+          public void uncaughtException(final Thread t, final Throwable e) {
+            if (e instanceof OutOfMemoryError) {
+              abort("out of memory");
+            }
+            logger.error("Thread " + t.getName() + " failed", e);
+          }
+        });
+
+    Thread monitor = new Thread(new Runnable() {
+      public void run() {
+        while (true) {
+          try {
+            Thread.sleep(TICK_MILLIS);
+            tick();
+          } catch (Throwable e) {
+            logger.error("Resource monitor failed", e);
+          }
+        }
+      }
+    }, "ResourceMonitor");
+    monitor.setDaemon(true);
+    monitor.start();
+  }
+
+  /**
+   * Called before printing the solution.
+   *
+   * @return false if UNKNOWN was already printed
+   */
+  public static synchronized boolean finish() {
+    if (done) {
+      return false;
+    }
+    done = true;
+    return true;
+  }
+
+  /** Prints UNKNOWN and statistics then exits. */
+  public static void abort(final String reason) {
+    synchronized (ResourceMonitor.class) {
+      if (done) {
+        return;
+      }
+      done = true;
+      reserve = null;
+
+      logger.info("Stopping: " + reason);
+      PrintStream out = output != null ? output : System.out;
+      Runtime runtime = Runtime.getRuntime();
+      out.println("c Stopped by " + reason);
+      out.println("c Elapsed time "
+                  + (System.currentTimeMillis() - startTime) / 1000.);
+      out.println("c CPU time " + cpuTime() / 1e9);
+      out.println("c Heap used " + (liveHeap() >> 20) + " of "
+                  + (runtime.maxMemory() >> 20) + " MiB");
+      out.println("c Generations " + RestartScheduler.numGenerations());
+      out.println("c Shed work " + numSheds + " times");
+      Statistics.report(out);
+      SearchTrace.stop();
+      Solution.unknown().print(out);
+    }
+    System.exit(0);
+  }
+
+  /** Checks the limits. */
+  private static void tick() {
+    long now = System.currentTimeMillis();
+    if (Configure.timeLimit > 0
+        && now - startTime >= Configure.timeLimit * 1000L) {
+      abort("wall-clock limit");
+    }
+    if (Configure.cpuLimit > 0 && cpuTime() >= Configure.cpuLimit * 1e9) {
+      abort("CPU limit");
+    }
+
+    double heap = (double) liveHeap() / Runtime.getRuntime().maxMemory();
+    if (heap >= Configure.hardHeap) {
+      abort("heap limit");
+    }
+    pressure(heap);
+  }
+
+  /**
+   * Sheds work when heap enters Configure.softHeap and
+   * re-arms once it leaves it.
+   *
+   * @param heap fraction of the maximum heap left live
+   * @return true if work was shed
+   */
+  static boolean pressure(final double heap) {
+    if (heap < Configure.softHeap) {
+      if (shedding) {
+        logger.info("Heap is " + (int) (100 * heap) + "% full, resuming");
+        shedding = false;
+        Configure.split = split;
+      }
+      return false;
+    }
+    if (shedding) {
+      return false;
+    }
+
+    shedding = true;
+    split = Configure.split;
+    shed(heap);
+    return true;
+  }
+
+  /** Reduces the memory used by the search. */
+  private static void shed(final double heap) {
+    numSheds++;
+    logger.info("Heap is " + (int) (100 * heap) + "% full, shedding work");
+
+    Configure.learnedMemory = halve(Configure.learnedMemory);
+    Configure.cacheMemory = halve(Configure.cacheMemory);
+    Configure.searchMemory = halve(Configure.searchMemory);
+    Configure.split = false;
+    RestartScheduler.killAll();
+  }
+
+  /** Halves budget but not below MIN_BUDGET unless it already is. */
+  private static long halve(final long budget) {
+    return Math.min(budget, Math.max(MIN_BUDGET, budget / 2));
+  }
+
+  /** Returns the heap left live by the last collection in bytes. */
+  private static long liveHeap() {
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() != MemoryType.HEAP) {
+        continue;
+      }
+      MemoryUsage usage = pool.getCollectionUsage();
+      used += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+    }
+    return used;
+  }
+
+  /** Returns the CPU time of the process in nanoseconds or 0. */
+  private static long cpuTime() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os)
+          .getProcessCpuTime();
+    }
+    return 0;
+  }
+}
@@ -1,7 +1,5 @@
 package ibis.structure;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.Random;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
@@ -16,35 +14,35 @@ import static ibis.structure.Misc.*;
  * Implements restarting strategy.
  *
  * Restarting loop contains a few preprocessing activities:
- * BCE, VE, simplification.
+ * vivification, BCE, VE, simplification.
  *
- * Each solved instance is part of a generation. When a timer
- * expires is generation killed (see BlackHoleActivity).
+ * Each solved instance is part of a generation. When the generation
+ * spent its work budget it is killed (see RestartScheduler and
+ * BlackHoleActivity).
  *
  * When a generation is finished RestartActivity
- * adds to formula learned clauses.
+ * stores the learned clauses (see LearnedClauses). They are
+ * added only to the instances solved by the next generations.
  *
  * KNOWN BUGS: learned clauses "enforce" the variable ordering
  * for the future generations.
  */
 public final class RestartActivity extends Activity {
-  private static final int MAX_TTL = 1000000;
-
   private static final Logger logger = Logger.getLogger(RestartActivity.class);
   private static final Random random = new Random();
 
-  /** Current generation time to live. */
-  private static int ttl = Configure.initialTTL;  // TODO: should not be static
-  /** Timer to restart. */
-  private transient Timer timer;
   /** Starting time. */
   private long startTime;
+  /** State passed to the next generation. */
+  private RestartState state;
 
   public RestartActivity(final ActivityIdentifier parent,
                          final ActivityIdentifier tracer,
                          final TDoubleArrayList scores,
+                         final RestartState state,
                          final Skeleton instance) {
     super(parent, tracer, 0, guid(), scores, instance);
+    this.state = state;
   }
 
   protected void gc() {
@@ -111,40 +109,52 @@ public final class RestartActivity extends Activity {
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     if (Configure.sb) {
       sortBinaries();
     }
 
+    Checkpoint.save(scores, state, instance);
+
+    Statistics.mark(state.numGenerations);
     startTime = System.currentTimeMillis();
-    logger.info("Spawning " + generation + " for " + ttl + " seconds");
+    long budget = state.policy.budget(state.numGenerations++);
+    logger.info("Spawning " + generation + " for " + budget + " work units");
     logger.info("Instance has "
                 + instance.variables().size() + " variables and "
                 + instance.formula.size() + " literals");
 
-    executor.submit(new SplitActivity(
-          identifier(), tracer, 0, generation, scores, instance.clone()));
-
-    if (ttl < MAX_TTL) {
-      TimerTask task = new TimerTask() {
-        public void run() {
-          TracerMaster.killGeneration(executor, tracer, generation);
-        }
-      };
-
-      timer = new Timer();
-      timer.schedule(task, ttl * 1000L);
-      ttl += Configure.extralTTL;
+    Skeleton search = instance.clone();
+    if (Configure.learn) {
+      state.learned.addTo(search);
+    }
+    Flight.generationStart(generation, budget, search.size());
+    if (Configure.masterPort != 0) {
+      // Nodes lent to TCP workers are sent as differences from search.
+      BaseFormula.register(generation, search);
+    }
+    if (Configure.blocking) {
+      BlockingSearch.submit(executor, identifier(), identifier(), tracer,
+                            generation, scores, search);
+    } else {
+      executor.submit(new SplitActivity(
+            identifier(), tracer, 0, generation, scores, search, false));
     }
 
+    RestartScheduler.start(generation, state.policy, budget, new Runnable() {
+      public void run() {
+        TracerMaster.killGeneration(executor, tracer, generation);
+      }
+    });
+
     suspend();
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution response = (Solution) e.data;
+    RestartScheduler.stop(generation);
     if (!response.isUnknown()) {
-      timer.cancel();
       TracerMaster.killGeneration(executor, tracer, generation);
 
       reply(response);
@@ -155,10 +165,12 @@ public final class RestartActivity extends Activity {
     long endTime = System.currentTimeMillis();
     logger.info("Ran for " + (endTime - startTime) / 1000. + " seconds");
     if (Configure.learn) {
-      response.addLearnedClauses(instance.formula, 1000);
+      state.learned.add(response, 1000);
     }
-    executor.submit(new BlockedClauseEliminationActivity(
-          identifier(), tracer, scores, instance));
+    executor.submit(new VivificationActivity(
+          identifier(), tracer, scores, state, instance));
+    // The next generation owns the instance now.
+    instance = null;
     suspend();
   }
 }
@@ -0,0 +1,131 @@
+package ibis.structure;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * Decides how much work each generation gets.<br/>
+ *
+ * Budgets are in work units (see RestartScheduler) so they do not
+ * depend on how busy the machine is. The policies are:
+ * <ul>
+ * <li>arithmetic: unit, 2 * unit, 3 * unit, ...;</li>
+ * <li>luby: unit times the Luby sequence 1, 1, 2, 1, 1, 2, 4, ...;</li>
+ * <li>geometric: unit, 1.5 * unit, 2.25 * unit, ...;</li>
+ * <li>progress: geometric, but a generation is extended while it
+ * keeps learning clauses at its average rate.</li>
+ * </ul>
+ */
+public abstract class RestartPolicy implements java.io.Serializable {
+  private static final Logger logger = Logger.getLogger(RestartPolicy.class);
+
+  /** Work units of the first generation. */
+  protected final long unit;
+
+  protected RestartPolicy(final long unit) {
+    this.unit = unit;
+  }
+
+  /**
+   * Returns the budget of a generation.
+   *
+   * @param index number of generations before this one
+   * @return budget in work units
+   */
+  public abstract long budget(final int index);
+
+  /**
+   * Decides if a generation which spent its budget can continue.
+   *
+   * @param work work units spent so far
+   * @param conflicts number of conflicts so far
+   * @param recentWork work units spent in the second half of the budget
+   * @param recentConflicts number of conflicts during recentWork
+   * @return extra work units or 0 to kill the generation
+   */
+  public long extend(final long work,
+                     final long conflicts,
+                     final long recentWork,
+                     final long recentConflicts) {
+    return 0;
+  }
+
+  /** Returns the policy called name. */
+  public static RestartPolicy create(final String name, final long unit) {
+    if ("arithmetic".equals(name)) {
+      return new Arithmetic(unit);
+    }
+    if ("luby".equals(name)) {
+      return new Luby(unit);
+    }
+    if ("geometric".equals(name)) {
+      return new Geometric(unit);
+    }
+    if ("progress".equals(name)) {
+      return new Progress(unit);
+    }
+    throw new IllegalArgumentException("Unknown restart policy " + name);
+  }
+
+  private static final class Arithmetic extends RestartPolicy {
+    Arithmetic(final long unit) {
+      super(unit);
+    }
+
+    public long budget(final int index) {
+      return unit * (index + 1);
+    }
+  }
+
+  private static final class Luby extends RestartPolicy {
+    Luby(final long unit) {
+      super(unit);
+    }
+
+    public long budget(final int index) {
+      return unit * luby(index + 1);
+    }
+  }
+
+  private static class Geometric extends RestartPolicy {
+    Geometric(final long unit) {
+      super(unit);
+    }
+
+    public long budget(final int index) {
+      return (long) (unit * Math.pow(1.5, Math.min(index, 60)));
+    }
+  }
+
+  private static final class Progress extends Geometric {
+    Progress(final long unit) {
+      super(unit);
+    }
+
+    /** Extends by half the work while conflicts keep their average rate. */
+    public long extend(final long work,
+                       final long conflicts,
+                       final long recentWork,
+                       final long recentConflicts) {
+      if (recentConflicts > 0
+          && (double) recentConflicts * work >= (double) conflicts * recentWork) {
+        return Math.max(1, work / 2);
+      }
+      return 0;
+    }
+  }
+
+  /** Returns the i-th element (starting with 1) of the Luby sequence. */
+  static long luby(final long i) {
+    // If i = 2^k - 1 then luby(i) = 2^(k-1).
+    for (int k = 1; k < 63; k++) {
+      if (i == (1L << k) - 1) {
+        return 1L << (k - 1);
+      }
+      if (i < (1L << k) - 1) {
+        return luby(i - (1L << (k - 1)) + 1);
+      }
+    }
+    return 1;
+  }
+}
@@ -0,0 +1,225 @@
+package ibis.structure;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Kills generations which spent their work budget.<br/>
+ *
+ * Search nodes report their work: every solved node costs one
+ * work unit plus one for every WORK_LITERALS literals of its
+ * instance. Nodes proven unsatisfiable count as conflicts.
+ * Subtrees lent to TcpWorkers are charged when their solution
+ * arrives at the master.
+ * A single thread checks all live generations every TICK_MILLIS
+ * and asks the RestartPolicy what to do with generations over
+ * their budget.
+ */
+public final class RestartScheduler {
+  private static final Logger logger = Logger.getLogger(RestartScheduler.class);
+
+  /** Milliseconds between checks. */
+  private static final long TICK_MILLIS = 50;
+  /** Literals of an instance worth a work unit. */
+  private static final int WORK_LITERALS = 1024;
+
+  /** A live generation. */
+  private static final class Generation {
+    final RestartPolicy policy;
+    final Runnable kill;
+    final AtomicLong work = new AtomicLong();
+    final AtomicLong conflicts = new AtomicLong();
+    /** Work after which the generation is checked. */
+    long budget;
+    /** Work and conflicts when half of the budget was spent. */
+    long markWork = -1, markConflicts = 0;
+
+    Generation(final RestartPolicy policy,
+               final long budget,
+               final Runnable kill) {
+      this.policy = policy;
+      this.budget = budget;
+      this.kill = kill;
+    }
+  }
+
+  private static final ConcurrentHashMap<Long, Generation> generations =
+      new ConcurrentHashMap<Long, Generation>();
+  private static ScheduledExecutorService scheduler = null;
+  /** Number of generations started. */
+  private static final AtomicLong numGenerations = new AtomicLong();
+  /** Number of nodes solved by all generations. */
+  private static final Statistics.Counter numNodes =
+      Statistics.counter("search.nodes");
+  /** Number of nodes proven unsatisfiable by all generations. */
+  private static final Statistics.Counter numConflicts =
+      Statistics.counter("search.conflicts");
+  /** Work units of the nodes solved by all generations. */
+  private static final Statistics.Counter numWork =
+      Statistics.counter("search.work");
+
+  private RestartScheduler() {
+  }
+
+  /**
+   * Starts counting the work of a generation.
+   *
+   * @param generation generation to watch
+   * @param policy policy deciding extensions
+   * @param budget work units of generation
+   * @param kill called once when the generation must be killed
+   */
+  public static void start(final long generation,
+                           final RestartPolicy policy,
+                           final long budget,
+                           final Runnable kill) {
+    generations.put(generation, new Generation(policy, budget, kill));
+    numGenerations.incrementAndGet();
+    startScheduler();
+  }
+
+  /** Kills all live generations, e.g. to free memory. */
+  public static void killAll() {
+    Iterator<Generation> it = generations.values().iterator();
+    while (it.hasNext()) {
+      Generation g = it.next();
+      it.remove();
+      g.kill.run();
+    }
+  }
+
+  /** Returns the number of generations started. */
+  public static long numGenerations() {
+    return numGenerations.get();
+  }
+
+  /** Returns the number of nodes solved by all generations. */
+  public static long numNodes() {
+    return numNodes.sum();
+  }
+
+  /** Returns the work units of the nodes solved in this JVM. */
+  public static long numWork() {
+    return numWork.sum();
+  }
+
+  /** Returns the number of conflicts found in this JVM. */
+  public static long numConflicts() {
+    return numConflicts.sum();
+  }
+
+  /**
+   * Adds work done in another JVM (see TcpMaster) to generation.
+   *
+   * @param generation generation the work was done for
+   * @param work work units spent
+   * @param conflicts conflicts found
+   */
+  public static void charge(final long generation,
+                            final long work,
+                            final long conflicts) {
+    Generation g = generations.get(generation);
+    if (g != null) {
+      g.work.addAndGet(work);
+      g.conflicts.addAndGet(conflicts);
+    }
+  }
+
+  /** Returns the work units spent by generation or 0 if not watched. */
+  static long spent(final long generation) {
+    Generation g = generations.get(generation);
+    return g == null ? 0 : g.work.get();
+  }
+
+  /** Stops watching generation after it replied. */
+  public static void stop(final long generation) {
+    Cancellation.forget(generation);
+    Generation g = generations.remove(generation);
+    if (g != null) {
+      logger.info("Generation " + generation + " did " + g.work.get()
+                  + " work units and " + g.conflicts.get() + " conflicts");
+    }
+  }
+
+  /** Records that a node with an instance of size was solved. */
+  public static void work(final long generation, final int size) {
+    numNodes.increment();
+    numWork.add(1 + size / WORK_LITERALS);
+    Generation g = generations.get(generation);
+    if (g != null) {
+      g.work.addAndGet(1 + size / WORK_LITERALS);
+    }
+  }
+
+  /** Records that a node was proven unsatisfiable. */
+  public static void conflict(final long generation) {
+    numConflicts.increment();
+    Generation g = generations.get(generation);
+    if (g != null) {
+      g.conflicts.incrementAndGet();
+    }
+  }
+
+  private static synchronized void startScheduler() {
+    if (scheduler != null) {
+      return;
+    }
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+          public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, "RestartScheduler");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        try {
+          tick();
+        } catch (Throwable e) {
+          logger.error("Restart scheduler failed", e);
+        }
+      }
+    }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Checks all generations. */
+  private static void tick() {
+    Iterator<Generation> it = generations.values().iterator();
+    while (it.hasNext()) {
+      Generation g = it.next();
+      long work = g.work.get();
+      long conflicts = g.conflicts.get();
+
+      if (g.markWork == -1 && 2 * work >= g.budget) {
+        g.markWork = work;
+        g.markConflicts = conflicts;
+      }
+      if (work < g.budget) {
+        continue;
+      }
+
+      long extra = g.policy.extend(work, conflicts, work - g.markWork,
+                                   conflicts - g.markConflicts);
+      if (extra > 0) {
+        logger.info("Extending generation by " + extra + " work units");
+        g.budget = work + extra;
+        g.markWork = -1;
+        continue;
+      }
+
+      it.remove();
+      logger.info("Killing generation after " + work + " work units and "
+                  + conflicts + " conflicts");
+      g.kill.run();
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package ibis.structure;
+
+import java.util.ArrayList;
+
+/**
+ * Information passed between generations of the restart loop.
+ *
+ * The state travels with the instance through the activities
+ * of the restart loop (BCE, VE, lookahead, simplification)
+ * and is handed back to the next generation by RestartActivity.
+ */
+public final class RestartState implements java.io.Serializable {
+  /** State of Blocked Clause Elimination. */
+  public BlockedClauseElimination.State bce =
+      new BlockedClauseElimination.State();
+  /** Clauses learned by previous generations. */
+  public LearnedClauses learned = new LearnedClauses();
+  /** Decides the budget of every generation. */
+  public RestartPolicy policy = RestartPolicy.create(
+      Configure.restart, Configure.restartUnit);
+  /** Number of generations spawned. */
+  public int numGenerations = 0;
+  /** Restores of the waiting activities, outermost first (see Checkpoint). */
+  public ArrayList<Checkpoint.Frame> frames = new ArrayList<Checkpoint.Frame>();
+}
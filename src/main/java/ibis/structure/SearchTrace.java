@@ -0,0 +1,259 @@
+package ibis.structure;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Records how the activity tree unfolds (see TraceReport).<br/>
+ *
+ * Every activity gets a node number and remembers the node running
+ * on the creating thread as its parent. Activity writes an ENTER and
+ * an EXIT record around each call to initialize() or process(), on
+ * Constellation as on ForkJoinExecutor; SplitActivity writes a SPLIT
+ * record with the number of components. Each JVM traces only the
+ * activities it runs and stolen activities have no node.<br/>
+ *
+ * Records are written to per-thread buffers. Full buffers are
+ * handed to a flusher thread which appends them to the trace file,
+ * so records of different threads are interleaved but the records
+ * of a thread are in order. The file starts with MAGIC and VERSION;
+ * records are big endian:
+ * <pre>
+ *   ENTER, EXIT, SPLIT: type (byte), kind (short), thread (int),
+ *       nanos (long), node (long), parent (long), generation (long),
+ *       depth (int), size (int), value (int)
+ *   NAME: type (byte), kind (short), length (short), UTF-8 name
+ * </pre>
+ * kind identifies the activity class named by a NAME record,
+ * value is 1 if an ENTER's activity was stolen or the number of
+ * components of a SPLIT.
+ */
+public final class SearchTrace {
+  private static final Logger logger = Logger.getLogger(SearchTrace.class);
+
+  public static final int MAGIC = 0x53545254;  // STRT
+  public static final int VERSION = 1;
+  public static final byte ENTER = 0;
+  public static final byte EXIT = 1;
+  public static final byte SPLIT = 2;
+  public static final byte NAME = 3;
+
+  /** Bytes of a record other than NAME. */
+  private static final int RECORD_SIZE = 1 + 2 + 4 + 4 * 8 + 3 * 4;
+  private static final int BUFFER_SIZE = 64 << 10;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** Records of a thread. */
+  private static final class Buffer {
+    ByteBuffer bytes = take();
+    /** Node run by the thread or 0. */
+    long current = 0;
+
+    /** Makes room for size bytes. */
+    void reserve(final int size) {
+      if (bytes.remaining() < size) {
+        full.add(bytes);
+        bytes = take();
+      }
+    }
+  }
+
+  /** True while recording. */
+  private static volatile boolean enabled = false;
+  private static long startNanos;
+  private static FileChannel channel;
+  private static Thread flusher;
+
+  private static final AtomicLong nextNode = new AtomicLong();
+  private static final AtomicInteger nextKind = new AtomicInteger();
+  private static final ConcurrentHashMap<Class<?>, Short> kinds =
+      new ConcurrentHashMap<Class<?>, Short>();
+  /** Buffers of all threads, flushed by stop(). */
+  private static final ArrayList<Buffer> buffers = new ArrayList<Buffer>();
+  private static final ThreadLocal<Buffer> local = new ThreadLocal<Buffer>() {
+    protected Buffer initialValue() {
+      Buffer buffer = new Buffer();
+      synchronized (buffers) {
+        buffers.add(buffer);
+      }
+      return buffer;
+    }
+  };
+  /** Buffers to be written. */
+  private static final LinkedBlockingQueue<ByteBuffer> full =
+      new LinkedBlockingQueue<ByteBuffer>();
+  /** Written buffers to be reused. */
+  private static final ConcurrentLinkedQueue<ByteBuffer> free =
+      new ConcurrentLinkedQueue<ByteBuffer>();
+  /** Tells the flusher to stop. */
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  private SearchTrace() {
+  }
+
+  private static ByteBuffer take() {
+    ByteBuffer buffer = free.poll();
+    return buffer != null ? buffer : ByteBuffer.allocate(BUFFER_SIZE);
+  }
+
+  /** Starts recording to path. */
+  public static synchronized void start(final String path) {
+    try {
+      channel = new FileOutputStream(path).getChannel();
+      ByteBuffer header = ByteBuffer.allocate(8);
+      header.putInt(MAGIC).putInt(VERSION).flip();
+      channel.write(header);
+    } catch (IOException e) {
+      logger.error("Cannot open trace " + path, e);
+      return;
+    }
+
+    flusher = new Thread("SearchTrace") {
+      public void run() {
+        flush();
+      }
+    };
+    flusher.setDaemon(true);
+    flusher.start();
+    startNanos = System.nanoTime();
+    enabled = true;
+    logger.info("Tracing to " + path);
+  }
+
+  /** Writes full buffers until stop(). */
+  private static void flush() {
+    try {
+      while (true) {
+        ByteBuffer buffer = full.take();
+        if (buffer == END) {
+          return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        buffer.clear();
+        free.add(buffer);
+      }
+    } catch (Exception e) {
+      logger.error("Cannot write trace", e);
+    }
+  }
+
+  /** Stops recording and writes all buffers. */
+  public static synchronized void stop() {
+    if (!enabled) {
+      return;
+    }
+    enabled = false;
+
+    synchronized (buffers) {
+      for (Buffer buffer : buffers) {
+        synchronized (buffer) {
+          full.add(buffer.bytes);
+          buffer.bytes = ByteBuffer.allocate(0);
+        }
+      }
+    }
+    full.add(END);
+    try {
+      flusher.join();
+      channel.close();
+    } catch (Exception e) {
+      logger.error("Cannot close trace", e);
+    }
+  }
+
+  /** Returns the node number of a new activity or 0. */
+  static long node() {
+    return enabled ? nextNode.incrementAndGet() : 0;
+  }
+
+  /** Returns the node run by the current thread or 0. */
+  static long current() {
+    return enabled ? local.get().current : 0;
+  }
+
+  /** Records that the current thread starts running activity. */
+  static void enter(final Activity activity) {
+    if (enabled) {
+      Buffer buffer = local.get();
+      buffer.current = activity.traceNode;
+      write(buffer, ENTER, activity,
+            activity.origin != StealPolicy.origin() ? 1 : 0);
+    }
+  }
+
+  /** Records that the current thread stops running activity. */
+  static void exit(final Activity activity) {
+    if (enabled) {
+      Buffer buffer = local.get();
+      write(buffer, EXIT, activity, 0);
+      buffer.current = 0;
+    }
+  }
+
+  /** Records that activity split its instance in numComponents. */
+  static void split(final Activity activity, final int numComponents) {
+    if (enabled) {
+      write(local.get(), SPLIT, activity, numComponents);
+    }
+  }
+
+  private static void write(final Buffer buffer,
+                            final byte type,
+                            final Activity activity,
+                            final int value) {
+    short kind = kind(buffer, activity.getClass());
+    synchronized (buffer) {
+      if (!enabled) {
+        return;
+      }
+      buffer.reserve(RECORD_SIZE);
+      buffer.bytes
+          .put(type)
+          .putShort(kind)
+          .putInt((int) Thread.currentThread().getId())
+          .putLong(System.nanoTime() - startNanos)
+          .putLong(activity.traceNode)
+          .putLong(activity.traceParent)
+          .putLong(activity.generation)
+          .putInt(activity.depth)
+          .putInt(activity.instance == null ? -1 : activity.instance.size())
+          .putInt(value);
+    }
+  }
+
+  /** Returns the kind of class writing its NAME record if new. */
+  private static short kind(final Buffer buffer, final Class<?> c) {
+    Short kind = kinds.get(c);
+    if (kind != null) {
+      return kind;
+    }
+
+    kind = (short) nextKind.incrementAndGet();
+    if (kinds.putIfAbsent(c, kind) != null) {
+      return kinds.get(c);
+    }
+    byte[] name = c.getSimpleName().getBytes(UTF8);
+    synchronized (buffer) {
+      if (enabled) {
+        buffer.reserve(1 + 2 + 2 + name.length);
+        buffer.bytes.put(NAME).putShort(kind)
+            .putShort((short) name.length).put(name);
+      }
+    }
+    return kind;
+  }
+}
@@ -28,7 +28,7 @@ public final class SelectBranchActivity extends Activity {
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     int branch = instance.pickVariables(scores, 1)[0];
     branch = random.nextBoolean() ? branch : neg(branch);
     executor.submit(new BranchActivity(
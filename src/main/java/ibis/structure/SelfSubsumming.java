@@ -19,6 +19,7 @@ import static ibis.structure.Misc.*;
  */
 public final class SelfSubsumming {
   private static final Logger logger = Logger.getLogger(SelfSubsumming.class);
+  private static final Statistics.Timer timer = Statistics.timer("ss");
 
   private final Solver solver;
   private final int numVariables;
@@ -43,7 +44,13 @@ public final class SelfSubsumming {
 
   public static boolean run(final Solver solver)
       throws ContradictionException {
-    return (new SelfSubsumming(solver)).run();
+    long start = Statistics.start();
+    SelfSubsumming ss = new SelfSubsumming(solver);
+    try {
+      return ss.run();
+    } finally {
+      timer.stop(start, ss.numRemovedLiterals);
+    }
   }
 
   /** @return true if any clause was removed. */
@@ -73,6 +80,7 @@ public final class SelfSubsumming {
     TLongArrayList uHashes = new TLongArrayList();
     TouchSet touched = new TouchSet(numVariables);
     for (int u = 1; u <= numVariables; ++u) {
+      Cancellation.poll();
       if (last[u] == -1) {  // Empty list
         continue;
       }
@@ -106,11 +114,7 @@ public final class SelfSubsumming {
       }
     }
 
-    if (Configure.verbose) {
-      if (numRemovedLiterals > 0) {
-        System.err.print("ss" + numRemovedLiterals + ".");
-      }
-    }
+    Statistics.add("ss.literals", numRemovedLiterals);
     return numRemovedLiterals > 0;
   }
 
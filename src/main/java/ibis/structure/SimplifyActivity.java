@@ -14,18 +14,22 @@ import static ibis.structure.Misc.*;
  * part of the restart loop.
  */
 public final class SimplifyActivity extends Activity {
-  /** Core after simplification. */
-  private Core core = null;
+  /** Merges the core after simplification. */
+  private Checkpoint.Frame frame = null;
+  /** State of the restart loop. */
+  private RestartState state = null;
 
   public SimplifyActivity(final ActivityIdentifier parent,
                           final ActivityIdentifier tracer,
                           final TDoubleArrayList scores,
+                          final RestartState state,
                           final Skeleton instance) {
     super(parent, tracer, 0, 0, scores, instance.clone());
+    this.state = state;
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     Solver solver = null;
     Solution solution = null;
     Normalizer normalizer = new Normalizer();
@@ -38,6 +42,9 @@ public final class SimplifyActivity extends Activity {
 
       HyperBinaryResolution.run(solver);
       solver.renameEquivalentLiterals();
+      if (Configure.flp) {
+        FailedLiteralProbing.run(solver);
+      }
       HiddenTautologyElimination.run(solver);
       SelfSubsumming.run(solver);
       PureLiterals.run(solver);
@@ -56,21 +63,19 @@ public final class SimplifyActivity extends Activity {
       return;
     }
 
-    core = solver.core();
+    Core core = solver.core();
     normalizer.denormalize(core);
+    frame = Checkpoint.core(core);
+    state.frames.add(frame);
     executor.submit(new RestartActivity(
-          identifier(), tracer, scores, core.instance()));
+          identifier(), tracer, scores, state, core.instance()));
     suspend();
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution solution = (Solution) e.data;
-    if (solution.isSatisfiable()) {
-      solution = core.merge(solution);
-    }
-
-    reply(solution);
+    reply(frame.restore(solution));
     finish();
   }
 }
@@ -1,5 +1,8 @@
 package ibis.structure;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.iterator.TIntIntIterator;
 import gnu.trove.list.array.TDoubleArrayList;
@@ -13,7 +16,7 @@ public final class Skeleton implements java.io.Serializable {
   protected static final Logger logger = Logger.getLogger(Skeleton.class);
 
   public int numVariables;
-  public TIntArrayList formula;
+  public transient TIntArrayList formula;
 
   /** Constructor. */
   public Skeleton(final int numVariables) {
@@ -27,6 +30,17 @@ public final class Skeleton implements java.io.Serializable {
     this.formula = formula;
   }
 
+  private void writeObject(final ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    Wire.writeFormula(out, formula);
+  }
+
+  private void readObject(final ObjectInputStream in)
+      throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    formula = Wire.readFormula(in);
+  }
+
   /** Returns number of literals + number of clauses */
   public int size() {
     return formula.size();
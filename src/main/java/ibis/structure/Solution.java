@@ -1,5 +1,8 @@
 package ibis.structure;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import gnu.trove.TIntCollection;
 import gnu.trove.iterator.TIntIterator;
@@ -31,9 +34,9 @@ public final class Solution implements java.io.Serializable {
   /** One of: SATISFIABLE, UNSATISFIABLE or UNKNOWN */
   private int solved = UNKNOWN;
   /** List of units. */
-  private TIntArrayList units = null;
+  private transient TIntArrayList units = null;
   /** Learned clauses tree. */
-  public TIntArrayList learned = new TIntArrayList();
+  public transient TIntArrayList learned = new TIntArrayList();
 
   /** Returns a solution representing a satisfiable instance. */
   public static Solution satisfiable(final TIntCollection units) {
@@ -130,6 +133,24 @@ public final class Solution implements java.io.Serializable {
     this.solved = solved;
   }
 
+  private void writeObject(final ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeBoolean(units != null);
+    if (units != null) {
+      Wire.writeInts(out, units);
+    }
+    Wire.writeInts(out, learned);
+  }
+
+  private void readObject(final ObjectInputStream in)
+      throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (in.readBoolean()) {
+      units = Wire.readInts(in);
+    }
+    learned = Wire.readInts(in);
+  }
+
   public boolean isSatisfiable() {
     return solved == SATISFIABLE;
   }
@@ -38,38 +38,40 @@ public final class SolveActivity extends Activity {
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     Solver solver = null;
     Solution solution = null;
+    boolean connected = false;
     Normalizer normalizer = new Normalizer();
 
+    Cancellation.enter(generation);
+    RestartScheduler.work(generation, instance.size());
     try {
       normalizer.normalize(instance);
       solver = new Solver(instance);
 
-      solver.propagate();
-      PureLiterals.run(solver);
-      HiddenTautologyElimination.run(solver);
-
-      if (Configure.hur) {
-        HyperBinaryResolution.run(solver);
-      }
-      if (Configure.sss) {
-        SelfSubsumming.run(solver);
-      }
-
-      PureLiterals.run(solver);
-      MissingLiterals.run(solver);
+      simplify(solver, generation);
 
       solution = solver.solve();
       solution = normalizer.denormalize(solution);
+      if (solution.isUnknown() && Configure.split) {
+        connected = Connectivity.isConnected(solver);
+      }
       assert !solution.isUnsatisfiable();
     } catch (ContradictionException e) {
+      RestartScheduler.conflict(generation);
       solution = Solution.unsatisfiable(branch);
+    } catch (CancelledException e) {
+      // Generation was killed or the search below a split is useless.
+      reply(Solution.unknown());
+      finish();
+      return;
     } catch (Exception e) {
       // Catch unwanted exception.
       e.printStackTrace();
       System.exit(1);
+    } finally {
+      Cancellation.exit();
     }
 
     if (!solution.isUnknown()) {
@@ -82,12 +84,31 @@ public final class SolveActivity extends Activity {
     assert filter(core.instance().formula, branch).isEmpty();
 
     executor.submit(new SplitActivity(
-          identifier(), tracer, depth, generation, scores, core.instance()));
+          identifier(), tracer, depth, generation, scores, core.instance(),
+          connected));
     suspend();
   }
 
+  /** Runs the cheap simplifications done before every branch. */
+  static void simplify(final Solver solver, final long generation)
+      throws ContradictionException {
+    solver.propagate();
+    PureLiterals.run(solver);
+    HiddenTautologyElimination.run(solver, generation);
+
+    if (Configure.hur) {
+      HyperBinaryResolution.run(solver);
+    }
+    if (Configure.sss) {
+      SelfSubsumming.run(solver);
+    }
+
+    PureLiterals.run(solver);
+    MissingLiterals.run(solver);
+  }
+
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution response = (Solution) e.data;
 
     if (response.isSatisfiable()) {
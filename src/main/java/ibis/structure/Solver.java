@@ -10,6 +10,8 @@ import static ibis.structure.Misc.*;
 /** The core algorithms for sat solving. */
 public final class Solver {
   private static final Logger logger = Logger.getLogger(Solver.class);
+  private static final Statistics.Counter numSolvers =
+      Statistics.counter("solver.instances");
 
   /** Number of variables. */
   public int numVariables;
@@ -45,11 +47,7 @@ public final class Solver {
     }
 
     watchLists.build();
-
-    if (Configure.verbose) {
-      System.err.print(".");
-      System.err.flush();
-    }
+    numSolvers.increment();
   }
 
   /** Returns true if literal u is already assigned. */
@@ -70,7 +68,7 @@ public final class Solver {
    * Recursively finds the proxy of u.
    * The returned literal doesn't have any proxy.
    */
-  private int proxy(final int u) {
+  public int proxy(final int u) {
     assert u != 0 : "0 is not a valid literal";
     int u_ = u + numVariables;
     if (u != proxies[u_]) {
@@ -234,6 +232,7 @@ public final class Solver {
     TIntArrayList literals = new TIntArrayList(1);
 
     while (!clauses.isEmpty()) {
+      Cancellation.poll();
       literals.reset();
       for (int i = 0; i < clauses.size(); i++) {
         int clause = clauses.getQuick(i);
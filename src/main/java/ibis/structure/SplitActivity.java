@@ -1,9 +1,8 @@
 package ibis.structure;
 
+import java.util.HashMap;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.list.array.TDoubleArrayList;
-import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.iterator.TIntObjectIterator;
 import ibis.constellation.ActivityIdentifier;
 import ibis.constellation.Event;
 import org.apache.log4j.Logger;
@@ -13,82 +12,122 @@ import static ibis.structure.Misc.*;
 /**
  * Tries to split instance into smaller independent instances.
  *
- * The algorithm is as follows: puts variables in the same clause
- * into the same set using disjoint sets. The instance can be split
- * into variables dictated by the disjoints sets.
+ * See Components. Sub instances are renumbered to their own
+ * variables and their solutions are renamed back when merged.
+ *
+ * When the search is over its memory budget (see MemoryBudget)
+ * the remaining components are submitted one at a time.
+ *
+ * Components run in their own cancellation scope which is cancelled
+ * once a component is unsatisfiable (see Cancellation.Scope).
  */
 public final class SplitActivity extends Activity {
   private static final Logger logger = Logger.getLogger(SplitActivity.class);
 
-  /** Representants in disjoint set.  */
-  private int[] repr;
-  /** Height of disjoint set. */
-  private int[] height;
   /** Array of found units. */
   private TIntArrayList units = null;
-  /** Number of subproblems solved. */
+  /** Number of subproblems submitted and not solved. */
   private int numSubmittedSplits = 0;
+  /** Components not in cache, null once submitted. */
+  private Skeleton[] components = null;
+  /** Cache keys of components. */
+  private ComponentCache.Key[] keys = null;
+  /** Maps variables of components back to instance. */
+  private int[][] inverses = null;
+  /** Next component to submit. */
+  private int next = 0;
   /** True if any components is unsatisfiable. */
   private boolean isUnsatisfiable = false;
   /** True if any component is unknown. */
   private boolean isUnknown = false;
-  /** Subproblems. */
-  private TIntObjectHashMap<Skeleton> subInstances = null;
-
+  /** Maps submitted subproblems to their variables map. */
+  private HashMap<ActivityIdentifier, int[]> submitted = null;
+  /** True if instance is known to be connected. */
+  private boolean connected;
+  /** Scope of the components. */
+  private transient Cancellation.Scope componentsScope = null;
+
+  /**
+   * @param connected true if instance is known to be connected
+   */
   public SplitActivity(final ActivityIdentifier parent,
                        final ActivityIdentifier tracer,
                        final int depth,
                        final long generation,
                        final TDoubleArrayList scores,
-                       final Skeleton instance) {
+                       final Skeleton instance,
+                       final boolean connected) {
     super(parent, tracer, depth, generation, scores, instance);
+    this.connected = connected;
   }
 
   @Override
-  public void initialize() {
-    if (!Configure.split) {
+  protected void doInitialize() {
+    if (!Configure.split || connected) {
       executor.submit(new SelectBranchActivity(
             parent, tracer, depth, generation, scores, instance));
       finish();
       return;
     }
 
-    int numVariables = instance.numVariables;
-    repr = new int[numVariables + 1];
-    height = new int[numVariables + 1];
-    units = new TIntArrayList(numVariables);
-
-    joinVariablesInClauses(instance.formula);
-
-    if (!isSplit()) {
+    Components split = new Components(instance);
+    if (!split.isSplit()) {
       executor.submit(new SelectBranchActivity(
             parent, tracer, depth, generation, scores, instance));
       finish();
       return;
     }
 
-    split();
+    split.split();
+    units = new TIntArrayList(instance.numVariables);
+    componentsScope = new Cancellation.Scope(scope);
+
+    // Looks up all components before submitting any.
+    components = split.instances();
+    SearchTrace.split(this, components.length);
+    inverses = split.variables();
+    keys = new ComponentCache.Key[components.length];
+    for (int i = 0; i < components.length; i++) {
+      if (!Configure.cache) {
+        continue;
+      }
 
-    // Submits subInstance to solve
-    numSubmittedSplits = subInstances.size();
-    TIntObjectIterator<Skeleton> it = subInstances.iterator();
-    for (int size = subInstances.size(); size > 0; size--) {
-      it.advance();
-      executor.submit(new SelectBranchActivity(
-            identifier(), tracer, depth, generation, scores, it.value()));
+      keys[i] = ComponentCache.key(components[i]);
+      Solution cached = ComponentCache.get(keys[i]);
+      if (cached == null) {
+        continue;
+      }
+      if (cached.isUnsatisfiable()) {
+        reply(Solution.unsatisfiable());
+        finish();
+        return;
+      }
+      Components.merge(units, cached.units(), inverses[i]);
+      components[i] = null;
     }
 
-    suspend();
+    // Submits components not in cache.
+    submitted = new HashMap<ActivityIdentifier, int[]>();
+    submitComponents();
+
+    if (numSubmittedSplits == 0) {
+      reply(Solution.satisfiable(units));
+      finish();
+    } else {
+      suspend();
+    }
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution response = (Solution) e.data;
     numSubmittedSplits--;
 
-    if (response.isUnsatisfiable()) {
-      // For unsatisfiable case sends solution as fast as possible.
+    if (response.isUnsatisfiable() && !isUnsatisfiable) {
+      // For unsatisfiable case sends solution as fast as possible
+      // and stops the components still running.
       executor.send(new Event(identifier(), parent, Solution.unsatisfiable()));
+      componentsScope.cancel();
       isUnsatisfiable = true;
     }
 
@@ -97,111 +136,44 @@ public final class SplitActivity extends Activity {
     }
 
     if (!isUnsatisfiable && !isUnknown) {
-      mergeNewUnits(response.units());
+      Components.merge(units, response.units(), submitted.get(e.source));
+      submitComponents();
     }
 
     if (numSubmittedSplits > 0) {
       suspend();
     } else {
-      if (isUnknown) {
-        reply(Solution.unknown());
-      } else if (!isUnsatisfiable) {
-        reply(Solution.satisfiable(units));
+      // Unsatisfiable was already sent and cancelled
+      // components answer unknown.
+      if (!isUnsatisfiable) {
+        reply(isUnknown ? Solution.unknown() : Solution.satisfiable(units));
       }
       finish();
     }
   }
 
-  /** Puts variables in each clause in the same set. */
-  private void joinVariablesInClauses(final TIntArrayList formula) {
-    ClauseIterator it = new ClauseIterator(formula);
-    while (it.hasNext()) {
-      int clause = it.next();
-      int length = length(formula, clause);
-
-      int u = formula.get(clause);
-      for (int i = clause; i < clause + length; i++) {
-        join(u, formula.getQuick(i));
+  /**
+   * Submits the components not yet submitted, or only one
+   * if the search is over its memory budget.
+   */
+  private void submitComponents() {
+    for (; next < components.length; next++) {
+      if (components[next] == null) {
+        continue;
       }
-    }
-  }
-
-  /** Returns true if this instance can be split. */
-  private boolean isSplit() {
-    for (int u = 0, v = 1; v < instance.numVariables; v++) {
-      if (repr[v] != 0) {
-        if (u == 0) {
-          u = find(v);
-        } else if (u != find(v)) {
-          return true;
-        }
+      if (numSubmittedSplits > 0 && MemoryBudget.isOver()) {
+        MemoryBudget.throttled();
+        return;
       }
-    }
-
-    return false;
-  }
-
-  /** Splits the instance in sub instances. */
-  private void split() {
-    subInstances = new TIntObjectHashMap<Skeleton>();
-
-    final TIntArrayList formula = instance.formula;
-    ClauseIterator it = new ClauseIterator(formula);
-    while (it.hasNext()) {
-      int clause = it.next();
-      int length = length(formula, clause);
-      int type = type(formula, clause);
-
-      int u = formula.get(clause);
-      Skeleton subInstance = subInstances.get(find(u));
-      if (subInstance == null) {
-        subInstance = new Skeleton(instance.numVariables);
-        subInstances.put(find(u), subInstance);
-      }
-
-      TIntArrayList subFormula = subInstance.formula;
-      subFormula.add(encode(length, type));
-      for (int i = clause; i < clause + length; i++) {
-        subFormula.add(formula.get(i));
-      }
-    }
-  }
-
-  /** Adds new units from a sub instance. */
-  private void mergeNewUnits(final TIntArrayList newUnits) {
-    units.addAll(newUnits);
-  }
-
-  /** Returns the top representant of u. */
-  private int find(int u) {
-    u = Math.abs(u);
-    if (repr[u] == 0) {
-      repr[u] = u;
-      return u;
-    }
-    return findInternal(u);
-  }
-
-  /** Helper function for find. */
-  private int findInternal(final int u) {
-    if (repr[u] == u) {
-      return u;
-    }
-    repr[u] = find(repr[u]);
-    return repr[u];
-  }
 
-  /** Joins u and v's sets. */
-  private void join(int u, int v) {
-    u = find(u);
-    v = find(v);
-    if (height[u] < height[v]) {
-      repr[u] = v;
-    } else if (height[u] > height[v]) {
-      repr[v] = u;
-    } else if (u != v) {
-      repr[u] = v;
-      height[v]++;
+      numSubmittedSplits++;
+      ComponentActivity component = new ComponentActivity(
+          identifier(), tracer, depth, generation, scores,
+          components[next], keys[next]);
+      component.scope = componentsScope;
+      ActivityIdentifier id = executor.submit(component);
+      submitted.put(id, inverses[next]);
+      components[next] = null;
     }
   }
 }
@@ -0,0 +1,277 @@
+package ibis.structure;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Counters and timers reported by techniques and activities.<br/>
+ *
+ * Counters are striped: every thread adds to one of several cells
+ * spaced a cache line apart so search nodes running in parallel
+ * do not contend. Reading a counter sums the cells.
+ * (java.util.concurrent.atomic.LongAdder needs Java 8.)<br/>
+ *
+ * Counters are named technique.quantity, e.g. ss.literals.
+ * A timer is a pair of counters, name.calls and name.nanos. Timers
+ * of techniques run by other techniques overlap.<br/>
+ *
+ * RestartActivity marks the start of every generation so the
+ * counters can be reported per generation.
+ */
+public final class Statistics {
+  private static final Logger logger = Logger.getLogger(Statistics.class);
+
+  /** Longs between two cells of a counter (a cache line). */
+  private static final int PADDING = 8;
+  /** Number of cells of a counter, a power of two. */
+  private static final int NUM_STRIPES = stripes();
+
+  /** A striped counter. */
+  public static final class Counter {
+    private final AtomicLongArray cells =
+        new AtomicLongArray(NUM_STRIPES * PADDING);
+
+    private Counter() {
+    }
+
+    public void add(final long delta) {
+      int stripe = (int) Thread.currentThread().getId() & (NUM_STRIPES - 1);
+      cells.addAndGet(stripe * PADDING, delta);
+    }
+
+    public void increment() {
+      add(1);
+    }
+
+    public long sum() {
+      long sum = 0;
+      for (int i = 0; i < NUM_STRIPES; i++) {
+        sum += cells.get(i * PADDING);
+      }
+      return sum;
+    }
+  }
+
+  /** Counts calls and the time spent in them. */
+  public static final class Timer {
+    private final String name;
+    private final Counter calls;
+    private final Counter nanos;
+
+    private Timer(final String name) {
+      this.name = name;
+      calls = counter(name + ".calls");
+      nanos = counter(name + ".nanos");
+    }
+
+    /** Records a call that started at start (see start()). */
+    public void stop(final long start) {
+      calls.increment();
+      nanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a simplification pass that started at start and
+     * removed or found yield literals, clauses or variables.
+     */
+    public void stop(final long start, final long yield) {
+      long elapsed = System.nanoTime() - start;
+      calls.increment();
+      nanos.add(elapsed);
+      Flight.simplification(name, elapsed, yield);
+    }
+  }
+
+  /** Counters by name. */
+  private static final ConcurrentHashMap<String, Counter> counters =
+      new ConcurrentHashMap<String, Counter>();
+  /** Timers by name. */
+  private static final ConcurrentHashMap<String, Timer> timers =
+      new ConcurrentHashMap<String, Timer>();
+  /** Generations and counters when they started. */
+  private static final ArrayList<Long> generations = new ArrayList<Long>();
+  private static final ArrayList<Map<String, Long>> marks =
+      new ArrayList<Map<String, Long>>();
+
+  private Statistics() {
+  }
+
+  private static int stripes() {
+    int stripes = 1;
+    while (stripes < 2 * Runtime.getRuntime().availableProcessors()
+           && stripes < 64) {
+      stripes *= 2;
+    }
+    return stripes;
+  }
+
+  /** Returns the counter called name. */
+  public static Counter counter(final String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      counters.putIfAbsent(name, new Counter());
+      counter = counters.get(name);
+    }
+    return counter;
+  }
+
+  /** Returns the timer called name. */
+  public static Timer timer(final String name) {
+    Timer timer = timers.get(name);
+    if (timer == null) {
+      timers.putIfAbsent(name, new Timer(name));
+      timer = timers.get(name);
+    }
+    return timer;
+  }
+
+  /** Adds delta to the counter called name. */
+  public static void add(final String name, final long delta) {
+    if (delta != 0) {
+      counter(name).add(delta);
+    }
+  }
+
+  /** Returns the start of a call to be passed to Timer.stop(). */
+  public static long start() {
+    return System.nanoTime();
+  }
+
+  /** Marks the start of a generation. */
+  public static synchronized void mark(final long generation) {
+    generations.add(generation);
+    marks.add(snapshot());
+  }
+
+  /** Returns the values of all counters sorted by name. */
+  private static TreeMap<String, Long> snapshot() {
+    TreeMap<String, Long> values = new TreeMap<String, Long>();
+    for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+      values.put(entry.getKey(), entry.getValue().sum());
+    }
+    return values;
+  }
+
+  /** Returns the non-zero changes of the counters from before to after. */
+  private static TreeMap<String, Long> delta(final Map<String, Long> before,
+                                             final Map<String, Long> after) {
+    TreeMap<String, Long> delta = new TreeMap<String, Long>();
+    for (Map.Entry<String, Long> entry : after.entrySet()) {
+      Long old = before.get(entry.getKey());
+      long value = entry.getValue() - (old == null ? 0 : old);
+      if (value != 0) {
+        delta.put(entry.getKey(), value);
+      }
+    }
+    return delta;
+  }
+
+  /**
+   * Prints the counters to out if Configure.verbose and
+   * writes them to Configure.statistics if set.
+   */
+  public static void report(final PrintStream out) {
+    if (Configure.verbose) {
+      print(out);
+    }
+    if (Configure.statistics != null) {
+      save(Configure.statistics);
+    }
+  }
+
+  /** Prints the counters as comment lines. */
+  public static synchronized void print(final PrintStream out) {
+    TreeMap<String, Long> values = snapshot();
+    TreeMap<String, String> lines = new TreeMap<String, String>();
+    for (Map.Entry<String, Long> entry : values.entrySet()) {
+      String name = entry.getKey();
+      if (name.endsWith(".nanos")) {
+        name = name.substring(0, name.length() - ".nanos".length());
+        Long calls = values.get(name + ".calls");
+        lines.put(name, String.format(
+            "c %-44s %10.3f s in %d calls", name,
+            entry.getValue() / 1e9, calls == null ? 0 : calls));
+      } else if (!name.endsWith(".calls")) {
+        lines.put(name, String.format(
+            "c %-44s %10d", name, entry.getValue()));
+      }
+    }
+    for (String line : lines.values()) {
+      out.println(line);
+    }
+
+    for (int i = 0; i <= marks.size(); i++) {
+      Map<String, Long> before = i == 0
+          ? new TreeMap<String, Long>() : marks.get(i - 1);
+      Map<String, Long> after = i < marks.size() ? marks.get(i) : values;
+      StringBuilder line = new StringBuilder(
+          i == 0 ? "c preprocessing:" : "c generation "
+                   + generations.get(i - 1) + ":");
+      for (Map.Entry<String, Long> entry : delta(before, after).entrySet()) {
+        String name = entry.getKey();
+        if (name.endsWith(".nanos")) {
+          line.append(" " + name.substring(0, name.length() - 6) + ".ms="
+                      + entry.getValue() / 1000000);
+        } else if (!name.endsWith(".calls")) {
+          line.append(" " + name + "=" + entry.getValue());
+        }
+      }
+      out.println(line);
+    }
+  }
+
+  /** Writes the counters to path as JSON. */
+  public static synchronized void save(final String path) {
+    TreeMap<String, Long> values = snapshot();
+    try {
+      Writer out = new FileWriter(path);
+      try {
+        out.write("{\n  \"counters\": ");
+        writeObject(out, values, "  ");
+        if (!marks.isEmpty()) {
+          out.write(",\n  \"preprocessing\": ");
+          writeObject(out, delta(new TreeMap<String, Long>(), marks.get(0)),
+                      "  ");
+        }
+        out.write(",\n  \"generations\": [");
+        for (int i = 0; i < marks.size(); i++) {
+          out.write(i == 0 ? "\n" : ",\n");
+          out.write("    {\"generation\": " + generations.get(i)
+                    + ", \"counters\": ");
+          writeObject(out, delta(
+              marks.get(i),
+              i + 1 < marks.size() ? marks.get(i + 1) : values), "    ");
+          out.write("}");
+        }
+        out.write("\n  ]\n}\n");
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      logger.error("Cannot write statistics to " + path, e);
+    }
+  }
+
+  /** Writes values as a JSON object. Names need no escaping. */
+  private static void writeObject(final Writer out,
+                                  final Map<String, Long> values,
+                                  final String indent) throws IOException {
+    out.write("{");
+    boolean first = true;
+    for (Map.Entry<String, Long> entry : values.entrySet()) {
+      out.write(first ? "\n" : ",\n");
+      out.write(indent + "  \"" + entry.getKey() + "\": " + entry.getValue());
+      first = false;
+    }
+    out.write(first ? "}" : "\n" + indent + "}");
+  }
+}
@@ -0,0 +1,94 @@
+package ibis.structure;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import ibis.constellation.context.UnitActivityContext;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Ranks activities for work stealing and counts steals.<br/>
+ *
+ * Executors run their own activities with the smallest rank
+ * first and steal activities with the biggest rank (see
+ * Structure.createExecutors()). The rank grows as depth
+ * decreases and, for the same depth, as the instance grows.
+ * Thus every executor searches depth first, keeping few
+ * instances alive, while thieves take the shallowest and
+ * largest subtrees which are worth the transfer.<br/>
+ *
+ * An activity is stolen if it is run by another thread than
+ * the one which created it. Steals are counted per depth.
+ */
+public final class StealPolicy {
+  private static final Logger logger = Logger.getLogger(StealPolicy.class);
+
+  /** Depths larger than this get the same rank. */
+  private static final int MAX_DEPTH = (1 << 20) - 1;
+  /** Depths larger than this are counted together. */
+  private static final int MAX_COUNTED_DEPTH = 63;
+
+  /** Identifies this JVM. */
+  private static final long jvm = new Random().nextLong() << 20;
+
+  private static final AtomicLong numExecuted = new AtomicLong();
+  private static final AtomicLong numStolen = new AtomicLong();
+  private static final AtomicLongArray stolenByDepth =
+      new AtomicLongArray(MAX_COUNTED_DEPTH + 1);
+
+  private StealPolicy() {
+  }
+
+  /**
+   * Returns the rank of an activity.
+   *
+   * @param depth depth of the activity in the search tree
+   * @param size size of the instance solved by the activity
+   * @return a rank for UnitActivityContext
+   */
+  public static long rank(final int depth, final int size) {
+    long level = MAX_DEPTH - Math.min(Math.max(depth, 0), MAX_DEPTH);
+    return (level << 32) | size;
+  }
+
+  /** Returns the context of an activity. */
+  public static UnitActivityContext context(final int depth,
+                                            final Skeleton instance) {
+    return new UnitActivityContext(
+        "DEFAULT", rank(depth, instance == null ? 0 : instance.size()));
+  }
+
+  /** Returns an identifier of the current thread unique among JVMs. */
+  public static long origin() {
+    return jvm ^ Thread.currentThread().getId();
+  }
+
+  /**
+   * Records that an activity is run by the current thread.
+   *
+   * @param origin origin() of the thread which created the activity
+   * @param depth depth of the activity
+   */
+  public static void executed(final long origin, final int depth) {
+    numExecuted.incrementAndGet();
+    if (origin != origin()) {
+      numStolen.incrementAndGet();
+      stolenByDepth.incrementAndGet(
+          Math.min(Math.max(depth, 0), MAX_COUNTED_DEPTH));
+    }
+  }
+
+  /** Logs the steal statistics of this JVM. */
+  public static void log() {
+    StringBuilder depths = new StringBuilder();
+    for (int d = 0; d <= MAX_COUNTED_DEPTH; d++) {
+      if (stolenByDepth.get(d) != 0) {
+        depths.append(" " + d + ":" + stolenByDepth.get(d));
+      }
+    }
+
+    logger.info("Stole " + numStolen.get() + " out of " + numExecuted.get()
+                + " activities; by depth" + depths);
+  }
+}
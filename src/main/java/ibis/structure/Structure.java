@@ -1,5 +1,6 @@
 package ibis.structure;
 
+import ibis.constellation.ActivityIdentifier;
 import ibis.constellation.Constellation;
 import ibis.constellation.ConstellationFactory;
 import ibis.constellation.context.UnitWorkerContext;
@@ -11,6 +12,7 @@ import ibis.constellation.StealStrategy;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
 import org.apache.log4j.Logger;
 
 class Structure {
@@ -27,6 +29,12 @@ class Structure {
     logger.info("Number of processors \t" + runtime.availableProcessors());
   }
 
+  /**
+   * Creates the executors.
+   *
+   * Executors run their own activities with the smallest rank and
+   * steal the activities with the biggest rank (see StealPolicy).
+   */
   private static Executor[] createExecutors() {
     Executor[] executors = new Executor[Configure.numExecutors + 1];
 
@@ -59,6 +67,39 @@ class Structure {
       System.exit(1);
     }
 
+    if (Configure.forkJoin) {
+      // Runs all activities in this JVM.
+      displayHeader();
+      if (Configure.workerOf != null) {
+        ForkJoinExecutor executor =
+            new ForkJoinExecutor(Configure.numExecutors);
+        new TcpWorker(executor, Configure.workerOf).run();
+        executor.shutdown();
+        System.exit(0);
+      }
+
+      // The executors are sized once the formula is known.
+      Skeleton instance = readInput();
+      if (instance == null) {
+        System.exit(1);
+      }
+      Configure.fitExecutors(instance);
+      ForkJoinExecutor executor =
+          new ForkJoinExecutor(Configure.numExecutors);
+
+      TcpMaster master = null;
+      if (Configure.masterPort != 0) {
+        master = new TcpMaster(executor, Configure.masterPort);
+        executor.setRemote(master);
+      }
+      run(instance, null, executor);
+      if (master != null) {
+        master.close();
+      }
+      executor.shutdown();
+      System.exit(0);
+    }
+
     // Activates Constellation.
     Constellation constellation =
         ConstellationFactory.createConstellation(createExecutors());
@@ -68,33 +109,11 @@ class Structure {
     if (constellation.isMaster()) {
       displayHeader();
       TracerMaster.create();
-
       Skeleton instance = readInput();
       if (instance == null) {
         System.exit(1);
       }
-
-      PrintStream output = System.out;
-      if (Configure.outputFile != null) {
-        try {
-          output = new PrintStream(new FileOutputStream(Configure.outputFile));
-        } catch (Exception e) {
-          logger.error("Cannot open output file " + Configure.outputFile
-                       + " for writing", e);
-          System.exit(1);
-        }
-      } else {
-        logger.info("Writing to stdout");
-      }
-
-      final long startTime = System.currentTimeMillis();
-      Solution solution = solve(constellation, instance);
-      final long endTime = System.currentTimeMillis();
-
-      output.println("c Elapsed time " + (endTime - startTime) / 1000.);
-      solution.print(output);
-      output.flush();
-
+      run(instance, constellation, null);
       TracerMaster.stop();
       constellation.done();
     } else {
@@ -103,13 +122,89 @@ class Structure {
     System.exit(0);
   }
 
-  private static Solution solve(Constellation constellation, Skeleton instance) {
+  /**
+   * Solves the input instance and prints the solution.
+   *
+   * @param instance instance to solve
+   * @param constellation constellation to solve on or null
+   * @param executor fork-join executor to solve on or null
+   */
+  private static void run(final Skeleton instance,
+                          final Constellation constellation,
+                          final ForkJoinExecutor executor)
+      throws Exception {
+    PrintStream output = System.out;
+    if (Configure.outputFile != null) {
+      try {
+        output = new PrintStream(new FileOutputStream(Configure.outputFile));
+      } catch (Exception e) {
+        logger.error("Cannot open output file " + Configure.outputFile
+                     + " for writing", e);
+        System.exit(1);
+      }
+    } else {
+      logger.info("Writing to stdout");
+    }
+
+    ResourceMonitor.start(output);
+    if (Configure.trace != null) {
+      SearchTrace.start(Configure.trace);
+    }
+    Checkpoint checkpoint = null;
+    if (Configure.checkpoint != null) {
+      Checkpoint.start(instance);
+      if (Configure.resume) {
+        checkpoint = Checkpoint.load();
+      }
+    }
+
+    final long startTime = System.currentTimeMillis();
+    Solution solution = executor == null
+        ? solve(constellation, instance, checkpoint)
+        : solve(executor, instance, checkpoint);
+    final long endTime = System.currentTimeMillis();
+    SearchTrace.stop();
+    if (!ResourceMonitor.finish()) {
+      return;
+    }
+
+    StealPolicy.log();
+    MemoryBudget.log();
+    Statistics.report(output);
+    output.println("c Elapsed time " + (endTime - startTime) / 1000.);
+    solution.print(output);
+    output.flush();
+  }
+
+  private static Solution solve(Constellation constellation,
+                                Skeleton instance,
+                                Checkpoint checkpoint) {
     SingleEventCollector root = new SingleEventCollector(
         new UnitActivityContext(Configure.localContext));
     Configure.localExecutor.submit(root);
 
-    Configure.localExecutor.submit(new PreprocessActivity(
-          root.identifier(), TracerMaster.master, instance));
+    Configure.localExecutor.submit(checkpoint != null
+        ? checkpoint.resume(root.identifier(), TracerMaster.master)
+        : new PreprocessActivity(
+              root.identifier(), TracerMaster.master, instance));
     return (Solution) root.waitForEvent().data;
   }
+
+  private static Solution solve(ForkJoinExecutor executor,
+                                Skeleton instance,
+                                Checkpoint checkpoint)
+      throws InterruptedException {
+    ActivityIdentifier root = executor.collector();
+    executor.submit(checkpoint != null
+        ? checkpoint.resume(root, null)
+        : new PreprocessActivity(root, null, instance));
+    try {
+      return (Solution) executor.waitForEvent(root).data;
+    } catch (ExecutionException e) {
+      // An activity crashed: a bug, not an unknown instance.
+      e.getCause().printStackTrace();
+      System.exit(1);
+      return null;
+    }
+  }
 }
@@ -0,0 +1,279 @@
+package ibis.structure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import gnu.trove.set.hash.TLongHashSet;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Lends search activities to workers in other JVMs over TCP.<br/>
+ *
+ * Workers (see TcpWorker) connect to the master and ask for work.
+ * When the master's ForkJoinExecutor submits a BlackHoleActivity
+ * and a worker is idle the activity is serialized and sent to the
+ * worker instead of being run locally. The worker solves the whole
+ * subtree and sends back the solution which is delivered to the
+ * parent of the activity. The work the worker spent on the subtree
+ * is charged to the generation (see RestartScheduler). Sending the
+ * solution is also the request for the next activity.<br/>
+ *
+ * Before the first activity of a generation the worker receives the
+ * generation's BaseFormula so activities carry only the difference.
+ * Killed generations are broadcast to all workers. If a worker
+ * disconnects its activity is answered with an unknown solution.
+ */
+public final class TcpMaster {
+  private static final Logger logger = Logger.getLogger(TcpMaster.class);
+
+  /** Master of this JVM or null. */
+  private static volatile TcpMaster instance = null;
+
+  /** Connection to a worker. */
+  private final class Connection implements Runnable {
+    private final Socket socket;
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+    /** Identifier of the lent activity. */
+    private ActivityIdentifier job = null;
+    /** Parent of the lent activity. */
+    private ActivityIdentifier parent = null;
+    /** Generation of the lent activity. */
+    private long generation = 0;
+    /** True if the worker disconnected. */
+    private boolean closed = false;
+    /** Generations whose base formula was sent to the worker. */
+    private final TLongHashSet bases = new TLongHashSet();
+
+    Connection(final Socket socket) throws IOException {
+      this.socket = socket;
+      out = new ObjectOutputStream(
+          new BufferedOutputStream(socket.getOutputStream()));
+      out.flush();
+      in = new ObjectInputStream(
+          new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /** Sends a message to the worker. */
+    synchronized void write(final Object message) throws IOException {
+      out.writeObject(message);
+      out.reset();
+      out.flush();
+    }
+
+    /** Receives solutions from the worker. */
+    public void run() {
+      try {
+        idle.add(this);
+        while (true) {
+          TcpWorker.Result result = (TcpWorker.Result) in.readObject();
+          charge(result);
+          reply(result.solution);
+          idle.add(this);
+        }
+      } catch (Exception e) {
+        logger.info("Worker " + socket.getRemoteSocketAddress()
+                    + " disconnected");
+      }
+
+      connections.remove(this);
+      idle.remove(this);
+      synchronized (this) {
+        closed = true;
+        if (!server.isClosed()) {
+          reply(Solution.unknown());
+        }
+      }
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+
+    /** Charges the work of the lent activity to its generation. */
+    private synchronized void charge(final TcpWorker.Result result) {
+      if (job != null) {
+        RestartScheduler.charge(generation, result.work, result.conflicts);
+      }
+    }
+
+    /** Sends the solution of the lent activity to its parent. */
+    private synchronized void reply(final Solution solution) {
+      if (job != null) {
+        executor.send(new Event(job, parent, solution));
+        job = null;
+        parent = null;
+      }
+    }
+
+    /** Lends activity to the worker. */
+    synchronized boolean lend(final Activity activity,
+                              final ActivityIdentifier identifier) {
+      if (closed) {
+        return false;
+      }
+      job = identifier;
+      parent = activity.parent;
+      generation = activity.generation;
+      try {
+        BaseFormula base = BaseFormula.get(activity.generation);
+        if (base != null && bases.add(activity.generation)) {
+          write(base);
+        }
+        write(activity);
+        return true;
+      } catch (IOException e) {
+        logger.error("Cannot send activity to "
+                     + socket.getRemoteSocketAddress(), e);
+        job = null;
+        parent = null;
+        return false;
+      }
+    }
+  }
+
+  private final ForkJoinExecutor executor;
+  private final ServerSocket server;
+  private final Vector<Connection> connections = new Vector<Connection>();
+  /** Number of activities lent. */
+  private final AtomicLong numLent = new AtomicLong();
+  /** Workers waiting for an activity. */
+  private final ConcurrentLinkedQueue<Connection> idle =
+      new ConcurrentLinkedQueue<Connection>();
+
+  /**
+   * Starts accepting workers.
+   *
+   * @param executor executor running the activities of the master
+   * @param port port to listen on
+   */
+  public TcpMaster(final ForkJoinExecutor executor, final int port)
+      throws IOException {
+    this.executor = executor;
+    server = new ServerSocket(port);
+    instance = this;
+
+    Thread acceptor = new Thread(new Runnable() {
+      public void run() {
+        accept();
+      }
+    }, "TcpMaster");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    logger.info("Accepting workers on port " + server.getLocalPort());
+  }
+
+  /** Returns the port workers connect to. */
+  public int port() {
+    return server.getLocalPort();
+  }
+
+  /** Returns the number of activities lent. */
+  long numLent() {
+    return numLent.get();
+  }
+
+  /** Returns the number of workers waiting for an activity. */
+  int numIdle() {
+    return idle.size();
+  }
+
+  /** Accepts workers until the socket is closed. */
+  private void accept() {
+    while (!server.isClosed()) {
+      try {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        Connection connection = new Connection(socket);
+        connections.add(connection);
+        logger.info("Worker " + socket.getRemoteSocketAddress()
+                    + " connected");
+
+        Thread reader = new Thread(connection, "TcpMaster-reader");
+        reader.setDaemon(true);
+        reader.start();
+      } catch (IOException e) {
+        if (!server.isClosed()) {
+          logger.error("Cannot accept worker", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Lends activity to an idle worker.
+   *
+   * @param activity activity to lend
+   * @param identifier identifier given to activity by executor
+   * @return true if the activity was lent
+   */
+  boolean offer(final Activity activity, final ActivityIdentifier identifier) {
+    if (!(activity instanceof BlackHoleActivity)) {
+      return false;
+    }
+
+    Connection connection;
+    while ((connection = idle.poll()) != null) {
+      if (connection.lend(activity, identifier)) {
+        activity.release();
+        numLent.incrementAndGet();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Tells all workers that generation is dead. */
+  public static void killGeneration(final long generation) {
+    // Activities lent from now on carry their whole instance.
+    BaseFormula.remove(generation);
+    TcpMaster master = instance;
+    if (master == null) {
+      return;
+    }
+
+    synchronized (master.connections) {
+      for (Connection connection : master.connections) {
+        try {
+          connection.write(Long.valueOf(generation));
+        } catch (IOException e) {
+          // Reader will notice the connection is broken.
+        }
+      }
+    }
+  }
+
+  /** Disconnects all workers. */
+  public void close() {
+    logger.info("Lent " + numLent.get() + " activities to "
+                + connections.size() + " workers");
+    if (instance == this) {
+      instance = null;
+    }
+    try {
+      server.close();
+    } catch (IOException e) {
+      // Ignored.
+    }
+    synchronized (connections) {
+      for (Connection connection : connections) {
+        try {
+          connection.socket.close();
+        } catch (IOException e) {
+          // Ignored.
+        }
+      }
+    }
+  }
+}
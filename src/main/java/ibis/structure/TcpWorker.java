@@ -0,0 +1,146 @@
+package ibis.structure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import ibis.constellation.ActivityIdentifier;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Solves activities lent by a TcpMaster.<br/>
+ *
+ * The worker receives one activity at a time and runs it on its
+ * own ForkJoinExecutor. When the activity replies the solution
+ * is sent back to the master together with the work spent on it
+ * (see RestartScheduler), and the master lends another activity.
+ * Generation kills received meanwhile are applied immediately.
+ * The worker stops when the master closes the connection.
+ */
+public final class TcpWorker {
+  private static final Logger logger = Logger.getLogger(TcpWorker.class);
+
+  /** Number of attempts to connect to master, one per second. */
+  private static final int CONNECT_ATTEMPTS = 30;
+
+  private final ForkJoinExecutor executor;
+  private final Socket socket;
+  private final ObjectOutputStream out;
+  private final ObjectInputStream in;
+
+  /** Solution of a lent activity and the work spent on it. */
+  static final class Result implements java.io.Serializable {
+    final Solution solution;
+    final long work;
+    final long conflicts;
+
+    Result(final Solution solution, final long work, final long conflicts) {
+      this.solution = solution;
+      this.work = work;
+      this.conflicts = conflicts;
+    }
+  }
+
+  /**
+   * Connects to the master.
+   *
+   * @param executor executor to run activities on
+   * @param address master address as host:port
+   */
+  public TcpWorker(final ForkJoinExecutor executor, final String address)
+      throws IOException {
+    int colon = address.lastIndexOf(':');
+    String host = colon < 0 ? "localhost" : address.substring(0, colon);
+    int port = Integer.parseInt(address.substring(colon + 1));
+
+    this.executor = executor;
+    socket = connect(host, port);
+    socket.setTcpNoDelay(true);
+    out = new ObjectOutputStream(
+        new BufferedOutputStream(socket.getOutputStream()));
+    out.flush();
+    in = new ObjectInputStream(
+        new BufferedInputStream(socket.getInputStream()));
+    logger.info("Connected to master " + socket.getRemoteSocketAddress());
+  }
+
+  /** Connects to master waiting for it to start. */
+  private static Socket connect(final String host, final int port)
+      throws IOException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return new Socket(host, port);
+      } catch (ConnectException e) {
+        if (attempt == CONNECT_ATTEMPTS) {
+          throw e;
+        }
+      }
+
+      try {
+        Thread.sleep(1000);
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while connecting");
+      }
+    }
+  }
+
+  /** Solves activities until the master disconnects. */
+  public void run() throws Exception {
+    try {
+      while (true) {
+        Object message = in.readObject();
+        if (message instanceof Long) {
+          BlackHoleActivity.killGeneration((Long) message);
+          BaseFormula.remove((Long) message);
+        } else if (message instanceof BaseFormula) {
+          BaseFormula.register((BaseFormula) message);
+        } else {
+          start((Activity) message);
+        }
+      }
+    } catch (EOFException e) {
+      logger.info("Master disconnected");
+    } catch (IOException e) {
+      logger.info("Master disconnected: " + e.getMessage());
+    }
+    socket.close();
+  }
+
+  /** Runs activity and sends its solution to master when done. */
+  private void start(final Activity activity) {
+    logger.info("Solving " + activity);
+    final ActivityIdentifier root = executor.collector();
+    // Activities are lent one at a time so all work until
+    // the solution is for this activity.
+    final long work = RestartScheduler.numWork();
+    final long conflicts = RestartScheduler.numConflicts();
+    activity.parent = root;
+    executor.submit(activity);
+
+    Thread waiter = new Thread(new Runnable() {
+      public void run() {
+        try {
+          Solution solution = (Solution) executor.waitForEvent(root).data;
+          Result result = new Result(
+              solution, RestartScheduler.numWork() - work,
+              RestartScheduler.numConflicts() - conflicts);
+          synchronized (out) {
+            out.writeObject(result);
+            out.reset();
+            out.flush();
+          }
+        } catch (Exception e) {
+          logger.error("Cannot send solution to master", e);
+          System.exit(1);
+        }
+      }
+    }, "TcpWorker-waiter");
+    waiter.setDaemon(true);
+    waiter.start();
+  }
+}
@@ -0,0 +1,297 @@
+package ibis.structure;
+
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+
+/**
+ * Summarizes a search trace written by SearchTrace.<br/>
+ *
+ * Prints the time spent per activity class, per depth and per
+ * thread. With -folded writes the busy time of every node in
+ * microseconds as folded stacks for flamegraph.pl. A stack is the
+ * chain of activity classes from the start of the node's generation
+ * (RestartActivity) or from preprocessing.<br/>
+ *
+ * Usage: TraceReport [-folded file] trace
+ */
+public final class TraceReport {
+  /** A node of the activity tree. */
+  private static final class Node {
+    final long id;
+    final long parent;
+    final short kind;
+    final long generation;
+    final int depth;
+    final int size;
+    /** Time of the first ENTER. */
+    final long first;
+    boolean stolen = false;
+    int calls = 0;
+    long busy = 0;
+    int components = 0;
+    /** Folded stack or null if not computed. */
+    String stack = null;
+
+    Node(final long id, final long parent, final short kind,
+         final long generation, final int depth, final int size,
+         final long first) {
+      this.id = id;
+      this.parent = parent;
+      this.kind = kind;
+      this.generation = generation;
+      this.depth = depth;
+      this.size = size;
+      this.first = first;
+    }
+  }
+
+  private final TIntObjectHashMap<String> names =
+      new TIntObjectHashMap<String>();
+  private final TLongObjectHashMap<Node> nodes = new TLongObjectHashMap<Node>();
+  /** Busy nanoseconds by thread. */
+  private final TIntLongHashMap threads = new TIntLongHashMap();
+  /** Node and ENTER time running on every thread. */
+  private final TIntObjectHashMap<long[]> running =
+      new TIntObjectHashMap<long[]>();
+  /** Time of the last record. */
+  private long end = 0;
+
+  private TraceReport() {
+  }
+
+  public static void main(final String[] args) throws IOException {
+    Options options = new Options();
+    options.addOption("folded", true, "write folded stacks to file");
+    CommandLine cl = null;
+    try {
+      cl = new BasicParser().parse(options, args);
+    } catch (ParseException e) {
+      System.err.println(e.getMessage());
+    }
+    if (cl == null || cl.getArgs().length != 1) {
+      new HelpFormatter().printHelp("TraceReport trace", options, true);
+      System.exit(1);
+    }
+
+    TraceReport report = new TraceReport();
+    report.read(cl.getArgs()[0]);
+    report.print(System.out);
+    if (cl.hasOption("folded")) {
+      PrintStream out = new PrintStream(cl.getOptionValue("folded"));
+      report.fold(out);
+      out.close();
+    }
+  }
+
+  private void read(final String path) throws IOException {
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(path)));
+    try {
+      if (in.readInt() != SearchTrace.MAGIC
+          || in.readInt() != SearchTrace.VERSION) {
+        throw new IOException(path + " is not a search trace");
+      }
+
+      while (true) {
+        byte type;
+        try {
+          type = in.readByte();
+        } catch (EOFException e) {
+          break;
+        }
+
+        short kind = in.readShort();
+        if (type == SearchTrace.NAME) {
+          byte[] name = new byte[in.readShort()];
+          in.readFully(name);
+          names.put(kind, new String(name, "UTF-8"));
+          continue;
+        }
+
+        int thread = in.readInt();
+        long nanos = in.readLong();
+        long id = in.readLong();
+        long parent = in.readLong();
+        long generation = in.readLong();
+        int depth = in.readInt();
+        int size = in.readInt();
+        int value = in.readInt();
+        end = Math.max(end, nanos);
+
+        Node node = nodes.get(id);
+        if (node == null) {
+          node = new Node(id, parent, kind, generation, depth, size, nanos);
+          nodes.put(id, node);
+        }
+
+        if (type == SearchTrace.ENTER) {
+          node.calls++;
+          node.stolen |= value != 0;
+          running.put(thread, new long[] { id, nanos });
+        } else if (type == SearchTrace.EXIT) {
+          long[] entered = running.remove(thread);
+          if (entered != null && entered[0] == id) {
+            node.busy += nanos - entered[1];
+            threads.adjustOrPutValue(thread, nanos - entered[1],
+                                     nanos - entered[1]);
+          }
+        } else if (type == SearchTrace.SPLIT) {
+          node.components = value;
+        }
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private String name(final short kind) {
+    String name = names.get(kind);
+    return name != null ? name : "kind" + kind;
+  }
+
+  private void print(final PrintStream out) {
+    out.printf("%d nodes in %.3f s%n", nodes.size(), end / 1e9);
+
+    // Per activity class.
+    TreeMap<String, long[]> kinds = new TreeMap<String, long[]>();
+    // Per depth: nodes, stolen, busy, max busy, sizes, splits.
+    TreeMap<Integer, long[]> depths = new TreeMap<Integer, long[]>();
+    for (Node node : nodes.valueCollection()) {
+      String name = name(node.kind);
+      long[] k = kinds.get(name);
+      if (k == null) {
+        k = new long[3];
+        kinds.put(name, k);
+      }
+      k[0]++;
+      k[1] += node.calls;
+      k[2] += node.busy;
+
+      long[] d = depths.get(node.depth);
+      if (d == null) {
+        d = new long[6];
+        depths.put(node.depth, d);
+      }
+      d[0]++;
+      d[1] += node.stolen ? 1 : 0;
+      d[2] += node.busy;
+      d[3] = Math.max(d[3], node.busy);
+      d[4] += Math.max(node.size, 0);
+      d[5] += node.components > 0 ? 1 : 0;
+    }
+
+    out.println();
+    out.printf("%-36s %10s %10s %12s%n", "activity", "nodes", "calls",
+               "busy s");
+    for (Map.Entry<String, long[]> entry : kinds.entrySet()) {
+      long[] k = entry.getValue();
+      out.printf("%-36s %10d %10d %12.3f%n", entry.getKey(), k[0], k[1],
+                 k[2] / 1e9);
+    }
+
+    out.println();
+    out.printf("%10s %10s %8s %12s %10s %10s %12s %8s%n", "depth", "nodes",
+               "stolen", "busy s", "mean ms", "max ms", "mean size",
+               "splits");
+    for (Map.Entry<Integer, long[]> entry : depths.entrySet()) {
+      long[] d = entry.getValue();
+      out.printf("%10d %10d %8d %12.3f %10.3f %10.3f %12d %8d%n",
+                 entry.getKey(), d[0], d[1], d[2] / 1e9, d[2] / 1e6 / d[0],
+                 d[3] / 1e6, d[4] / d[0], d[5]);
+    }
+
+    out.println();
+    out.printf("%10s %12s %8s%n", "thread", "busy s", "busy %");
+    int[] ids = threads.keys();
+    java.util.Arrays.sort(ids);
+    for (int thread : ids) {
+      long busy = threads.get(thread);
+      out.printf("%10d %12.3f %8.1f%n", thread, busy / 1e9,
+                 end == 0 ? 0. : 100. * busy / end);
+    }
+  }
+
+  /** Writes the busy time of nodes as folded stacks. */
+  private void fold(final PrintStream out) {
+    // Generations are numbered in the order they started.
+    ArrayList<Node> roots = new ArrayList<Node>();
+    for (Node node : nodes.valueCollection()) {
+      Node parent = nodes.get(node.parent);
+      if (node.generation != 0
+          && (parent == null || parent.generation != node.generation)) {
+        roots.add(node);
+      }
+    }
+    Collections.sort(roots, new Comparator<Node>() {
+      public int compare(final Node a, final Node b) {
+        return a.first < b.first ? -1 : a.first > b.first ? 1 : 0;
+      }
+    });
+    TLongObjectHashMap<String> generations = new TLongObjectHashMap<String>();
+    for (Node root : roots) {
+      if (!generations.containsKey(root.generation)) {
+        generations.put(root.generation,
+                        "generation-" + (generations.size() + 1));
+      }
+    }
+
+    TreeMap<String, Long> stacks = new TreeMap<String, Long>();
+    for (Node node : nodes.valueCollection()) {
+      if (node.busy >= 1000) {
+        String stack = stack(node, generations);
+        Long weight = stacks.get(stack);
+        stacks.put(stack, (weight == null ? 0 : weight) + node.busy / 1000);
+      }
+    }
+    for (Map.Entry<String, Long> entry : stacks.entrySet()) {
+      out.println(entry.getKey() + " " + entry.getValue());
+    }
+  }
+
+  /** Returns the folded stack of node. */
+  private String stack(final Node node,
+                       final TLongObjectHashMap<String> generations) {
+    // Walks up to the first ancestor with a known stack.
+    ArrayList<Node> path = new ArrayList<Node>();
+    Node current = node;
+    String prefix = null;
+    while (current.stack == null) {
+      path.add(current);
+      Node parent = nodes.get(current.parent);
+      if (parent == null || parent.generation != current.generation) {
+        prefix = current.generation == 0
+            ? "preprocessing" : generations.get(current.generation);
+        break;
+      }
+      current = parent;
+    }
+    if (prefix == null) {
+      prefix = current.stack;
+    }
+
+    for (int i = path.size() - 1; i >= 0; i--) {
+      Node n = path.get(i);
+      prefix = prefix + ";" + name(n.kind);
+      n.stack = prefix;
+    }
+    return node.stack;
+  }
+}
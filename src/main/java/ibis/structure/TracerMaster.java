@@ -7,7 +7,6 @@ import ibis.constellation.SingleEventCollector;
 import ibis.constellation.Constellation;
 import ibis.constellation.context.UnitActivityContext;
 import ibis.constellation.Event;
-import ibis.constellation.Executor;
 import org.apache.log4j.Logger;
 
 /**
@@ -62,12 +61,18 @@ public final class TracerMaster extends ibis.constellation.Activity {
     slaves = new Vector<ActivityIdentifier>();
   }
 
-  public static void killGeneration(final Executor executor,
+  public static void killGeneration(final ActivityExecutor executor,
                                     final ActivityIdentifier master,
                                     final long generation) {
+    Flight.generationKill(generation);
     BlackHoleActivity.killGeneration(generation);
-    executor.send(new Event(
-          null, master, new TracerKillGeneration(generation)));
+    TcpMaster.killGeneration(generation);
+    if (master != null) {
+      // No tracer runs on ForkJoinExecutor because all activities
+      // are in this JVM.
+      executor.send(new Event(
+            null, master, new TracerKillGeneration(generation)));
+    }
   }
 
   public static void registerSlave(final ActivityIdentifier master,
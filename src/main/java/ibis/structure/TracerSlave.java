@@ -22,6 +22,10 @@ public final class TracerSlave extends ibis.constellation.Activity {
   }
 
   public static void registerSlave(final ActivityIdentifier master_) {
+    if (master_ == null) {
+      // Running on ForkJoinExecutor.
+      return;
+    }
     if (slave == null) {
       synchronized (TracerSlave.class) {
         if (slave == null && !created) {
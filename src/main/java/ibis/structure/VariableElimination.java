@@ -13,9 +13,10 @@ import static ibis.structure.Misc.*;
 
 public class VariableElimination {
   private static final Logger logger = Logger.getLogger(VariableElimination.class);
+  private static final Statistics.Timer timer = Statistics.timer("ve");
 
   /** Stores information how to compute value of literal. */
-  private static class Data {
+  private static class Data implements java.io.Serializable {
     public int literal;
     public TIntArrayList clauses;
 
@@ -37,7 +38,13 @@ public class VariableElimination {
   }
 
   public static Object run(final Solver solver) throws ContradictionException {
-    return (new VariableElimination(solver)).run();
+    long start = Statistics.start();
+    VariableElimination ve = new VariableElimination(solver);
+    try {
+      return ve.run();
+    } finally {
+      timer.stop(start, ve.eliminated.size());
+    }
   }
 
   /** Computes values of eliminated variables. */
@@ -89,6 +96,7 @@ public class VariableElimination {
     run(-1);
 
     SelfSubsumming.run(solver);
+    Statistics.add("ve.variables", eliminated.size());
     return eliminated;
   }
 
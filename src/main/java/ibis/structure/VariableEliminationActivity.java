@@ -1,7 +1,6 @@
 package ibis.structure;
 
 import gnu.trove.list.array.TDoubleArrayList;
-import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 import ibis.constellation.ActivityIdentifier;
 import ibis.constellation.Event;
@@ -12,36 +11,41 @@ import org.apache.log4j.Logger;
  * Performs variable elimination.
  */
 public final class VariableEliminationActivity extends Activity {
-  /** Object to restore a satisfiable solution. */
-  private Object ve = null;
-  /** Core of instance after variable elimination. */
-  private Core core = null;
+  /** Restores a satisfiable solution. */
+  private Checkpoint.Frame frame = null;
   /** Set of initial variables used to restore missing. */
   private TIntHashSet initial = null;
+  /** State of the restart loop. */
+  private RestartState state = null;
 
   public VariableEliminationActivity(final ActivityIdentifier parent,
                                      final ActivityIdentifier tracer,
                                      final TDoubleArrayList scores,
+                                     final RestartState state,
                                      final Skeleton instance) {
     super(parent, tracer, 0, 0, scores, instance);
+    this.state = state;
     initial = instance.variables();
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     if (!Configure.ve) {
-      executor.submit(new LookAheadActivity(parent, tracer, scores, instance));
+      executor.submit(new LookAheadActivity(
+            parent, tracer, scores, state, instance));
       finish();
       return;
     }
 
     try {
       Solver solver = new Solver(instance);
-      ve = VariableElimination.run(solver);
+      Object ve = VariableElimination.run(solver);
 
-      core = solver.core();
+      Core core = solver.core();
+      frame = Checkpoint.ve(core, ve, initial);
+      state.frames.add(frame);
       executor.submit(new LookAheadActivity(
-            identifier(), tracer, scores, core.instance()));
+            identifier(), tracer, scores, state, core.instance()));
 
       suspend();
     } catch (ContradictionException e) {
@@ -53,23 +57,9 @@ public final class VariableEliminationActivity extends Activity {
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution response = (Solution) e.data;
-    if (response.isSatisfiable()) {
-      response = core.merge(response);
-      response = VariableElimination.restore(ve, response);
-
-      // Finds missing variables and adds them to solution
-      TIntArrayList units = response.units();
-      for (int i = 0; i < units.size(); i++) {
-        initial.remove(Misc.var(units.getQuick(i)));
-      }
-      for (int unit : initial.toArray()) {
-        units.add(unit);
-      }
-    }
-
-    reply(response);
+    reply(frame.restore(response));
     finish();
   }
 }
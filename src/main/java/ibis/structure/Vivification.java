@@ -0,0 +1,290 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Performs clause vivification.<br/>
+ *
+ * For a clause l1 + ... + lk the negations of the literals are
+ * assigned one by one and propagated using the other clauses.
+ * <ul>
+ * <li>if -l1 ... -li lead to a contradiction then l1 + ... + li
+ * is implied and replaces the clause;</li>
+ * <li>if -l1 ... -li imply l(i+1) then l1 + ... + l(i+1)
+ * is implied and replaces the clause;</li>
+ * <li>if -l1 ... -li imply -l(i+1) then l(i+1) can be removed.</li>
+ * </ul>
+ *
+ * The instance is only read so many Vivification objects can
+ * work in parallel on different parts of the same formula. They
+ * share one Index of the formula which is built once.
+ * Every new clause is implied by the original formula and subsumes
+ * the clause it replaces, so replacements found in parallel can be
+ * applied together.
+ */
+public final class Vivification {
+  private static final Logger logger = Logger.getLogger(Vivification.class);
+
+  /** Maximum number of literals visited during propagation. */
+  private static final int STEPS_LIMIT = 1 << 22;
+
+  /**
+   * OR clauses containing each literal and the positions of
+   * the clauses to vivify. Read only after construction.
+   */
+  public static final class Index {
+    private final int size;
+    /** OR clauses containing each literal. */
+    private final TIntArrayList[] occurrences;
+    /** OR clauses of at least two literals in formula order. */
+    private final TIntArrayList clauses = new TIntArrayList();
+
+    public Index(final Skeleton instance) {
+      final int numVariables = instance.numVariables;
+      final TIntArrayList formula = instance.formula;
+      size = formula.size();
+      occurrences = new TIntArrayList[2 * numVariables + 1];
+
+      ClauseIterator it = new ClauseIterator(formula);
+      while (it.hasNext()) {
+        int clause = it.next();
+        if (type(formula, clause) != OR) {
+          continue;
+        }
+
+        int length = length(formula, clause);
+        if (length >= 2) {
+          clauses.add(clause);
+        }
+        for (int i = clause; i < clause + length; i++) {
+          int u = formula.getQuick(i) + numVariables;
+          if (occurrences[u] == null) {
+            occurrences[u] = new TIntArrayList();
+          }
+          occurrences[u].add(clause);
+        }
+      }
+    }
+
+    /**
+     * Returns the position of the first clause of shard out of numShards.
+     * Shards have about the same number of clauses.
+     */
+    public int start(final int shard, final int numShards) {
+      int i = (int) (1L * shard * clauses.size() / numShards);
+      return i < clauses.size() ? clauses.getQuick(i) : size;
+    }
+  }
+
+  private final int numVariables;
+  private final TIntArrayList formula;
+  /** OR clauses containing each literal. */
+  private final TIntArrayList[] occurrences;
+  /** True for literals assigned on the trail. */
+  private final boolean[] assigned;
+  /** Assigned literals in order of assignment. */
+  private final TIntArrayList trail = new TIntArrayList();
+  /** Literals of the vivified clause which are kept. */
+  private final TIntArrayList kept = new TIntArrayList();
+  /** Clause being vivified which must not be used for propagation. */
+  private int ignored = -1;
+
+  /** Number of literals visited during propagation. */
+  private int numSteps = 0;
+
+  public Vivification(final Skeleton instance) {
+    this(instance, new Index(instance));
+  }
+
+  /** Creates a Vivification using the index of instance. */
+  public Vivification(final Skeleton instance, final Index index) {
+    numVariables = instance.numVariables;
+    formula = instance.formula;
+    occurrences = index.occurrences;
+    assigned = new boolean[2 * numVariables + 1];
+  }
+
+  /**
+   * Vivifies OR clauses starting between positions from and to.
+   *
+   * @param from position of a clause in formula (see Index.start())
+   * or 0 for the first clause
+   * @param to last position in formula (exclusive)
+   * @return shortened clauses as: clause, header, literals
+   */
+  public TIntArrayList run(final int from, final int to) {
+    TIntArrayList vivified = new TIntArrayList();
+    int numLiterals = 0;
+    if (from >= to) {
+      return vivified;
+    }
+
+    ClauseIterator it = new ClauseIterator(formula, Math.max(from - 1, 0));
+    while (it.hasNext() && numSteps < STEPS_LIMIT) {
+      int clause = it.next();
+      if (clause >= to) {
+        break;
+      }
+
+      int length = length(formula, clause);
+      if (length < 2 || type(formula, clause) != OR) {
+        continue;
+      }
+
+      vivify(clause);
+      if (kept.size() < length) {
+        numLiterals += length - kept.size();
+        vivified.add(clause);
+        vivified.add(encode(kept.size(), OR));
+        vivified.addAll(kept);
+      }
+    }
+
+    logger.info("Removed " + numLiterals + " literals between "
+                + from + " and " + to + " in " + numSteps + " steps");
+    return vivified;
+  }
+
+  /**
+   * Replaces clauses in formula by their vivified version.
+   *
+   * @param formula formula to change
+   * @param vivified clauses returned by run()
+   * @return number of literals removed
+   */
+  public static int apply(final TIntArrayList formula,
+                          final TIntArrayList vivified) {
+    int numLiterals = 0;
+    for (int p = 0; p < vivified.size(); ) {
+      int clause = vivified.getQuick(p);
+      int length = length(vivified, p + 2);
+      p += 2;
+
+      // Vivified clause keeps the order of the remaining literals.
+      int i = clause, j = p;
+      while (i < clause + length(formula, clause)) {
+        if (j < p + length && formula.getQuick(i) == vivified.getQuick(j)) {
+          i++;
+          j++;
+        } else {
+          removeLiteralAt(formula, clause, i);
+          numLiterals++;
+        }
+      }
+      p += length;
+    }
+    return numLiterals;
+  }
+
+  /** Returns the number of clauses shortened to units in vivified. */
+  public static int numUnits(final TIntArrayList vivified) {
+    int numUnits = 0;
+    for (int p = 0; p < vivified.size(); ) {
+      int length = length(vivified, p + 2);
+      if (length == 1) {
+        numUnits++;
+      }
+      p += 2 + length;
+    }
+    return numUnits;
+  }
+
+  /** Vivifies clause storing the remaining literals in kept. */
+  private void vivify(final int clause) {
+    int length = length(formula, clause);
+    ignored = clause;
+    kept.reset();
+
+    for (int i = clause; i < clause + length; i++) {
+      int literal = formula.getQuick(i);
+      if (get(literal)) {
+        // -kept implies literal
+        kept.add(literal);
+        break;
+      }
+      if (get(neg(literal))) {
+        // -kept implies -literal
+        continue;
+      }
+
+      kept.add(literal);
+      assign(neg(literal));
+      if (!propagate(trail.size() - 1)) {
+        // -kept is a contradiction
+        break;
+      }
+    }
+
+    for (int i = 0; i < trail.size(); i++) {
+      assigned[trail.getQuick(i) + numVariables] = false;
+    }
+    trail.reset();
+    ignored = -1;
+  }
+
+  /**
+   * Propagates literals on trail starting from position head.
+   *
+   * @return false if a contradiction was found
+   */
+  private boolean propagate(int head) {
+    while (head < trail.size()) {
+      TIntArrayList clauses = occurrences[neg(trail.getQuick(head++)) + numVariables];
+      if (clauses == null) {
+        continue;
+      }
+
+      for (int i = 0; i < clauses.size(); i++) {
+        int clause = clauses.getQuick(i);
+        if (clause != ignored && !propagateClause(clause)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Propagates a clause containing a false literal.
+   *
+   * @return false if all literals in clause are false
+   */
+  private boolean propagateClause(final int clause) {
+    int length = length(formula, clause);
+    numSteps += length;
+
+    int unassigned = 0, numUnassigned = 0;
+    for (int i = clause; i < clause + length; i++) {
+      int u = formula.getQuick(i);
+      if (get(u)) {
+        return true;
+      }
+      if (!get(neg(u))) {
+        unassigned = u;
+        numUnassigned++;
+        if (numUnassigned > 1) {
+          return true;
+        }
+      }
+    }
+
+    if (numUnassigned == 0) {
+      return false;
+    }
+    assign(unassigned);
+    return true;
+  }
+
+  private void assign(final int literal) {
+    assigned[literal + numVariables] = true;
+    trail.add(literal);
+  }
+
+  private boolean get(final int literal) {
+    return assigned[literal + numVariables];
+  }
+}
@@ -0,0 +1,129 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+import org.apache.log4j.Logger;
+
+import static ibis.structure.Misc.*;
+
+/**
+ * Vivifies the clauses of the instance in parallel.
+ *
+ * The learned clauses of the store are vivified first against
+ * the instance (see LearnedClauses.vivify()) so the next generation
+ * receives them shortened.
+ *
+ * The formula is split in shards which are vivified by
+ * VivifyActivity. When all shards are done the shortened
+ * clauses are put back in the formula and restart loop
+ * continues with BlockedClauseEliminationActivity. Clauses
+ * shortened to units are propagated first and the units are
+ * restored from a core frame.
+ */
+public final class VivificationActivity extends Activity {
+  /** Minimum size of a shard. */
+  private static final int MIN_SHARD_SIZE = 1 << 12;
+
+  /** State of the restart loop. */
+  private RestartState state = null;
+  /** Number of shards to be received. */
+  private int numShards = 0;
+  /** Shortened clauses. */
+  private TIntArrayList vivified = new TIntArrayList();
+  /** Restores the units propagated or null. */
+  private Checkpoint.Frame frame = null;
+
+  public VivificationActivity(final ActivityIdentifier parent,
+                              final ActivityIdentifier tracer,
+                              final TDoubleArrayList scores,
+                              final RestartState state,
+                              final Skeleton instance) {
+    super(parent, tracer, 0, 0, scores, instance);
+    this.state = state;
+  }
+
+  protected void gc() {
+  }
+
+  @Override
+  protected void doInitialize() {
+    if (!Configure.vivify) {
+      next();
+      return;
+    }
+
+    if (Configure.learn) {
+      Statistics.add("viv.learned", state.learned.vivify(instance));
+    }
+
+    int size = instance.formula.size();
+    int num = Math.min(4 * Configure.numExecutors, size / MIN_SHARD_SIZE);
+    num = Math.max(num, 1);
+
+    Vivification.Index index = new Vivification.Index(instance);
+    for (int i = 0; i < num; i++) {
+      executor.submit(new VivifyActivity(
+            identifier(), tracer, instance, index,
+            index.start(i, num), index.start(i + 1, num)));
+      numShards++;
+    }
+    suspend();
+  }
+
+  @Override
+  protected void doProcess(final Event e) throws Exception {
+    if (numShards == 0) {
+      // Solution of the rest of the restart loop.
+      reply(frame.restore((Solution) e.data));
+      finish();
+      return;
+    }
+
+    vivified.addAll((TIntArrayList) e.data);
+    numShards--;
+    if (numShards > 0) {
+      suspend();
+      return;
+    }
+
+    int numLiterals = Vivification.apply(instance.formula, vivified);
+    compact(instance.formula);
+    logger.info("Vivification removed " + numLiterals + " literals");
+    Statistics.add("viv.literals", numLiterals);
+    if (Vivification.numUnits(vivified) == 0) {
+      next();
+      return;
+    }
+
+    Core core;
+    try {
+      core = propagate(instance);
+    } catch (ContradictionException ce) {
+      reply(Solution.unsatisfiable());
+      finish();
+      return;
+    }
+    frame = Checkpoint.core(core);
+    state.frames.add(frame);
+    executor.submit(new BlockedClauseEliminationActivity(
+          identifier(), tracer, scores, state, core.instance()));
+    suspend();
+  }
+
+  /** Propagates the units in instance and returns the core. */
+  static Core propagate(final Skeleton instance)
+      throws ContradictionException {
+    Solver solver = new Solver(instance);
+    solver.propagate();
+    return solver.core();
+  }
+
+  /** Continues the restart loop. */
+  private void next() {
+    executor.submit(new BlockedClauseEliminationActivity(
+          parent, tracer, scores, state, instance));
+    finish();
+  }
+}
@@ -0,0 +1,41 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TIntArrayList;
+import ibis.constellation.ActivityIdentifier;
+
+/**
+ * Vivifies the clauses in one shard of the instance.
+ *
+ * Replies to the parent with the shortened clauses
+ * as returned by Vivification.run().
+ */
+public final class VivifyActivity extends Activity {
+  /** Index shared by all shards, rebuilt if the shard was sent away. */
+  private transient Vivification.Index index;
+  /** Position of the first clause in formula. */
+  private final int from;
+  /** Last position in formula (exclusive). */
+  private final int to;
+
+  public VivifyActivity(final ActivityIdentifier parent,
+                        final ActivityIdentifier tracer,
+                        final Skeleton instance,
+                        final Vivification.Index index,
+                        final int from,
+                        final int to) {
+    super(parent, tracer, 0, 0, null, instance);
+    this.index = index;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected void doInitialize() {
+    if (index == null) {
+      index = new Vivification.Index(instance);
+    }
+    TIntArrayList vivified = (new Vivification(instance, index)).run(from, to);
+    reply(vivified);
+    finish();
+  }
+}
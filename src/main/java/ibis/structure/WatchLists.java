@@ -23,6 +23,10 @@ public final class WatchLists {
   private final TIntHashSet[] watchLists;
   /** Short clauses discovered */
   public final TIntArrayList units, binaries;
+  /** Clauses removed or shortened after they were added. */
+  public final TIntArrayList changed;
+  /** Variables of literals removed from clauses (see Connectivity). */
+  public final TIntArrayList removed;
 
   /** Constructor */
   public WatchLists(final int numVariables, final TIntArrayList formula) {
@@ -32,6 +36,8 @@ public final class WatchLists {
     watchLists = new TIntHashSet[2 * numVariables + 1];
     units = new TIntArrayList();
     binaries = new TIntArrayList();
+    changed = new TIntArrayList();
+    removed = new TIntArrayList();
   }
 
   /** Builds the watch lists */
@@ -51,7 +57,7 @@ public final class WatchLists {
         get(u).add(clause);
       }
 
-      clauseLengthChanged(clause);
+      enqueue(clause);
     }
   }
 
@@ -101,7 +107,7 @@ public final class WatchLists {
       throws ContradictionException {
     if (get(to).contains(clause)) {
       // to or to = to
-      Misc.removeLiteral(formula, clause, from);
+      dropLiteral(clause, from);
       clauseLengthChanged(clause);
       return false;
     } else if (get(-to).contains(clause)) {
@@ -122,14 +128,14 @@ public final class WatchLists {
 
     if (get(to).contains(clause)) {
       // to xor to = 0
-      Misc.removeLiteral(formula, clause, from);
-      Misc.removeLiteral(formula, clause, to);
+      dropLiteral(clause, from);
+      dropLiteral(clause, to);
       get(to).remove(clause);
       clauseLengthChanged(clause);
     } else if (get(-to).contains(clause)) {
       // to xor -to = 1
-      Misc.removeLiteral(formula, clause, from);
-      Misc.removeLiteral(formula, clause, -to);
+      dropLiteral(clause, from);
+      dropLiteral(clause, -to);
       get(-to).remove(clause);
       switchXOR(formula, clause);
       clauseLengthChanged(clause);
@@ -146,10 +152,17 @@ public final class WatchLists {
   public void removeLiteralAt(final int clause, final int index)
       throws ContradictionException {
     get(formula.get(index)).remove(clause);
+    removed.add(var(formula.get(index)));
     Misc.removeLiteralAt(formula, clause, index);
     clauseLengthChanged(clause);
   }
 
+  /** Removes literal from clause without updating the watch lists. */
+  private void dropLiteral(final int clause, final int literal) {
+    removed.add(var(literal));
+    Misc.removeLiteral(formula, clause, literal);
+  }
+
   /** Removes literal at index from clause. */
   public void removeLiteral(final int clause, final int literal)
       throws ContradictionException {
@@ -164,6 +177,7 @@ public final class WatchLists {
       get(formula.get(i)).remove(clause);
     }
     Misc.removeClause(formula, clause);
+    changed.add(clause);
   }
 
   /** Assigns u to true, -u to false and removes the literals from clauses. */
@@ -172,7 +186,7 @@ public final class WatchLists {
       if (type(formula, clause) == OR) {
         removeClause(clause);
       } else {
-        Misc.removeLiteral(formula, clause, u);
+        dropLiteral(clause, u);
         get(u).remove(clause);
         switchXOR(formula, clause);
         clauseLengthChanged(clause);
@@ -183,10 +197,10 @@ public final class WatchLists {
     for (int size = get(neg(u)).size(); size > 0; size--) {
       int clause = it.next();
       if (type(formula, clause) == OR) {
-        Misc.removeLiteral(formula, clause, -u);
+        dropLiteral(clause, -u);
         clauseLengthChanged(clause);
       } else {
-        Misc.removeLiteral(formula, clause, -u);
+        dropLiteral(clause, -u);
         clauseLengthChanged(clause);
       }
     }
@@ -195,9 +209,16 @@ public final class WatchLists {
     watchLists[-u + numVariables] = EMPTY;
   }
 
-  /** Enqueues short clauses. */
+  /** Records a shortened clause and enqueues it if short. */
   private void clauseLengthChanged(final int clause)
       throws ContradictionException {
+    changed.add(clause);
+    enqueue(clause);
+  }
+
+  /** Enqueues short clauses. */
+  private void enqueue(final int clause)
+      throws ContradictionException {
     int length = length(formula, clause);
     if (length == 0) {
       if (type(formula, clause) != NXOR) {
@@ -0,0 +1,211 @@
+package ibis.structure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import gnu.trove.list.array.TIntArrayList;
+
+import static ibis.structure.Misc.*;
+
+
+/**
+ * Compact binary encoding of formulas and lists of literals.<br/>
+ *
+ * Numbers are written as zigzag varints so small literals of
+ * either sign take one or two bytes. Literals are written as they
+ * are, not as differences from the previous literal: clauses keep
+ * the order of their literals, and the difference of two unsorted
+ * literals is often larger than either. Deleted
+ * clauses and the unused capacity of lists are not written.
+ * Formulas are prefixed by their number of clauses because any
+ * header, even 0 (an empty NXOR clause), may appear.<br/>
+ *
+ * Every block is encoded in a per thread buffer and written
+ * prefixed by its length in bytes, so it is read with a single
+ * readFully() and the buffers are reused between calls.
+ */
+public final class Wire {
+  /** Initial size of the buffers. */
+  private static final int BUFFER_SIZE = 1 << 12;
+  /** Buffers larger than this are not kept after use. */
+  private static final int MAX_POOLED_SIZE = 1 << 22;
+
+  /** A growing buffer of bytes. */
+  private static final class Buffer {
+    byte[] bytes = new byte[BUFFER_SIZE];
+    int position = 0;
+    /** End of the bytes read. */
+    int limit = 0;
+
+    void ensure(final int size) {
+      if (bytes.length < size) {
+        byte[] tmp = new byte[Math.max(size, 2 * bytes.length)];
+        System.arraycopy(bytes, 0, tmp, 0, position);
+        bytes = tmp;
+      }
+    }
+
+    void write(final int value) {
+      ensure(position + 5);
+      int v = value;
+      while ((v & ~0x7f) != 0) {
+        bytes[position++] = (byte) ((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      bytes[position++] = (byte) v;
+    }
+
+    int read() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 35 && position < limit; shift += 7) {
+        byte b = bytes[position++];
+        value |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+  }
+
+  private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+    protected Buffer initialValue() {
+      return new Buffer();
+    }
+  };
+
+  private Wire() {
+  }
+
+  /** Maps signed to unsigned so small magnitudes stay small. */
+  static int zigzag(final int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  /** Inverse of zigzag(). */
+  static int unzigzag(final int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /** Writes a non-negative number as a varint. */
+  public static void writeVarint(final DataOutput out, int value)
+      throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /** Reads a number written by writeVarint(). */
+  public static int readVarint(final DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /** Writes the clauses of formula. */
+  public static void writeFormula(final DataOutput out,
+                                  final TIntArrayList formula)
+      throws IOException {
+    Buffer buffer = begin();
+    int numClauses = 0;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      it.next();
+      numClauses++;
+    }
+
+    buffer.write(numClauses);
+    it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      int length = length(formula, clause);
+
+      buffer.write(formula.getQuick(clause - 1));
+      for (int i = clause; i < clause + length; i++) {
+        buffer.write(zigzag(formula.getQuick(i)));
+      }
+    }
+    end(out, buffer);
+  }
+
+  /** Reads a formula written by writeFormula(). */
+  public static TIntArrayList readFormula(final DataInput in)
+      throws IOException {
+    Buffer buffer = begin(in);
+    TIntArrayList formula = new TIntArrayList();
+    int numClauses = buffer.read();
+    for (int k = 0; k < numClauses; k++) {
+      formula.add(buffer.read());
+      int length = length(formula, formula.size());
+      for (int i = 0; i < length; i++) {
+        formula.add(unzigzag(buffer.read()));
+      }
+    }
+    release(buffer);
+    return formula;
+  }
+
+  /** Writes a list of integers, e.g. units or learned clauses. */
+  public static void writeInts(final DataOutput out, final TIntArrayList list)
+      throws IOException {
+    Buffer buffer = begin();
+    buffer.write(list.size());
+    for (int i = 0; i < list.size(); i++) {
+      buffer.write(zigzag(list.getQuick(i)));
+    }
+    end(out, buffer);
+  }
+
+  /** Reads a list written by writeInts(). */
+  public static TIntArrayList readInts(final DataInput in) throws IOException {
+    Buffer buffer = begin(in);
+    int size = buffer.read();
+    TIntArrayList list = new TIntArrayList(size);
+    for (int i = 0; i < size; i++) {
+      list.add(unzigzag(buffer.read()));
+    }
+    release(buffer);
+    return list;
+  }
+
+  /** Returns the empty buffer of this thread. */
+  private static Buffer begin() {
+    Buffer buffer = buffers.get();
+    buffer.position = 0;
+    return buffer;
+  }
+
+  /** Writes buffer prefixed by its length. */
+  private static void end(final DataOutput out, final Buffer buffer)
+      throws IOException {
+    writeVarint(out, buffer.position);
+    out.write(buffer.bytes, 0, buffer.position);
+    release(buffer);
+  }
+
+  /** Reads a block written by end() into the buffer of this thread. */
+  private static Buffer begin(final DataInput in) throws IOException {
+    Buffer buffer = begin();
+    int size = readVarint(in);
+    buffer.ensure(size);
+    in.readFully(buffer.bytes, 0, size);
+    buffer.limit = size;
+    return buffer;
+  }
+
+  /** Drops buffer if it grew too large to keep. */
+  private static void release(final Buffer buffer) {
+    buffer.position = 0;
+    if (buffer.bytes.length > MAX_POOLED_SIZE) {
+      buffers.remove();
+    }
+  }
+}
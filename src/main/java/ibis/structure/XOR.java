@@ -77,6 +77,7 @@ public class XOR {
       }
     }
 
+    Statistics.add("xor.gates", numXORGates);
     if (numXORGates > 0) {
       logger.info("Found " + numXORGates + " xor gates");
     }
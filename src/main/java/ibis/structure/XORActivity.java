@@ -13,30 +13,36 @@ import org.apache.log4j.Logger;
 public final class XORActivity extends Activity {
   private static final Logger logger = Logger.getLogger(XORActivity.class);
 
-  /** Object used to restore solution after Dependent Variable Elimination. */
-  private TIntArrayList dve;
+  /** Restores solution after Dependent Variable Elimination. */
+  private Checkpoint.Frame frame;
+  /** State of the restart loop. */
+  private RestartState state;
 
   public XORActivity(final ActivityIdentifier parent,
                      final ActivityIdentifier tracer,
+                     final RestartState state,
                      final Skeleton instance) {
     super(parent, tracer, 0, 0, null, instance);
+    this.state = state;
   }
 
   @Override
-  public void initialize() {
+  protected void doInitialize() {
     if (!Configure.xor) {
       executor.submit(new BlockedClauseEliminationActivity(
-            parent, tracer, scores, instance));
+            parent, tracer, scores, state, instance));
       finish();
       return;
     }
 
     try {
       TIntArrayList xorGates = XOR.extractGates(instance.formula);
-      dve = DependentVariableElimination.run(
+      TIntArrayList dve = DependentVariableElimination.run(
           instance.numVariables, instance.formula, xorGates);
       instance.formula.addAll(xorGates);
       instance.expandSmallXOR();
+      frame = Checkpoint.dve(dve);
+      state.frames.add(frame);
     } catch (ContradictionException e) {
       reply(Solution.unsatisfiable());
       finish();
@@ -44,15 +50,14 @@ public final class XORActivity extends Activity {
     }
 
     executor.submit(new BlockedClauseEliminationActivity(
-          identifier(), tracer, scores, instance));
+          identifier(), tracer, scores, state, instance));
     suspend();
   }
 
   @Override
-  public void process(final Event e) throws Exception {
+  protected void doProcess(final Event e) throws Exception {
     Solution response = (Solution) e.data;
-    response = DependentVariableElimination.restore(dve, response);
-    reply(response);
+    reply(frame.restore(response));
     finish();
   }
 }
@@ -0,0 +1,50 @@
+package ibis.structure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import static ibis.structure.Misc.*;
+
+public class BaseFormulaTest {
+  @Test
+  public void delta() throws Exception {
+    Skeleton base = Reader.parseText("p cnf 5 4\n" +
+                                     "1 2 3 0\n" +
+                                     "-1 4 0\n" +
+                                     "2 -5 0\n" +
+                                     "1 2 3 0\n");
+    BaseFormula.register(1, base);
+
+    // Removes -1 4 and one copy of 1 2 3, adds a branch.
+    Skeleton node = Reader.parseText("p cnf 5 3\n" +
+                                     "2 -5 0\n" +
+                                     "1 2 3 0\n" +
+                                     "-4 0\n");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BaseFormula.get(1).writeDelta(new DataOutputStream(bytes), node);
+    Skeleton copy = BaseFormula.get(1).readDelta(new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())));
+    BaseFormula.remove(1);
+
+    assertEquals(node.numVariables, copy.numVariables);
+    assertEquals(sorted(node.formula), sorted(copy.formula));
+  }
+
+  /** Returns the clauses of formula as sorted strings. */
+  private static java.util.List<String> sorted(final TIntArrayList formula) {
+    java.util.List<String> clauses = new java.util.ArrayList<String>();
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      clauses.add(clauseToString(formula, it.next()));
+    }
+    java.util.Collections.sort(clauses);
+    return clauses;
+  }
+}
@@ -0,0 +1,150 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TIntArrayList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static ibis.structure.Misc.*;
+
+public class BlockedClauseEliminationTest {
+  private static final int NUM_VARIABLES = 30;
+
+  @Test
+  public void incrementalMatchesFull() throws Exception {
+    int numRemoved = 0;
+    for (int seed = 1; seed <= 5; seed++) {
+      ArrayList<String> before = random(seed);
+      int numClauses = clauses(full(before, null)).size();
+
+      for (int k = 0; k < numClauses; k++) {
+        // Removes a clause left by a full run so that clauses
+        // containing the negations of its literals may become blocked.
+        BlockedClauseElimination.State state =
+            new BlockedClauseElimination.State();
+        ArrayList<String> after = clauses(full(before, state));
+        String removed = after.remove(k);
+
+        Solver incremental = solver(after);
+        BlockedClauseElimination bce =
+            new BlockedClauseElimination(incremental, state);
+        bce.run();
+
+        ArrayList<String> remaining = clauses(incremental);
+        assertEquals("seed " + seed + ", clause " + k,
+                     new TreeSet<String>(clauses(full(after, null))),
+                     new TreeSet<String>(remaining));
+        numRemoved += after.size() - remaining.size();
+
+        // Only clauses sharing a variable with the removed clause
+        // or with clauses removed by the incremental run are checked.
+        HashSet<Integer> touched = new HashSet<Integer>();
+        addVariables(touched, removed);
+        HashSet<String> kept = new HashSet<String>(remaining);
+        for (String clause : after) {
+          if (!kept.contains(clause)) {
+            addVariables(touched, clause);
+          }
+        }
+        HashSet<Integer> near = new HashSet<Integer>(touched);
+        for (String clause : after) {
+          HashSet<Integer> variables = new HashSet<Integer>();
+          addVariables(variables, clause);
+          variables.retainAll(touched);
+          if (!variables.isEmpty()) {
+            addVariables(near, clause);
+          }
+        }
+        for (int i = 0; i < bce.queue.size(); i++) {
+          assertTrue("near: seed " + seed + ", clause " + k,
+                     near.contains(var(bce.queue.getQuick(i))));
+        }
+      }
+    }
+    assertTrue(numRemoved > 0);
+  }
+
+  @Test
+  public void unchangedFormulaIsNotChecked() throws Exception {
+    BlockedClauseElimination.State state = new BlockedClauseElimination.State();
+    ArrayList<String> after = clauses(full(random(1), state));
+
+    BlockedClauseElimination bce =
+        new BlockedClauseElimination(solver(after), state);
+    assertEquals(0, bce.run().size());
+    assertEquals(0, bce.queue.size());
+  }
+
+  /** Returns a random 3-CNF formula with one clause per string. */
+  private static ArrayList<String> random(final int seed) {
+    Random random = new Random(seed);
+    ArrayList<String> clauses = new ArrayList<String>();
+    for (int i = 0; i < 3 * NUM_VARIABLES; i++) {
+      int[] clause = new int[3];
+      for (int j = 0; j < 3; j++) {
+        int u;
+        do {
+          u = 1 + random.nextInt(NUM_VARIABLES);
+        } while (j > 0 && (var(clause[0]) == u || var(clause[1]) == u));
+        clause[j] = random.nextBoolean() ? u : neg(u);
+      }
+      clauses.add(sorted(clause));
+    }
+    return clauses;
+  }
+
+  /** Runs BCE on a fresh state or on state if not null. */
+  private static Solver full(final ArrayList<String> clauses,
+                             final BlockedClauseElimination.State state)
+      throws Exception {
+    Solver solver = solver(clauses);
+    BlockedClauseElimination.run(
+        solver, state != null ? state : new BlockedClauseElimination.State());
+    return solver;
+  }
+
+  private static Solver solver(final ArrayList<String> clauses)
+      throws Exception {
+    StringBuilder text = new StringBuilder(
+        "p cnf " + NUM_VARIABLES + " " + clauses.size() + "\n");
+    for (String clause : clauses) {
+      text.append(clause).append(" 0\n");
+    }
+    return new Solver(Reader.parseText(text.toString()));
+  }
+
+  /** Returns the clauses left in solver. */
+  private static ArrayList<String> clauses(final Solver solver) {
+    ArrayList<String> clauses = new ArrayList<String>();
+    TIntArrayList formula = solver.formula;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      clauses.add(sorted(formula.toArray(clause, length(formula, clause))));
+    }
+    return clauses;
+  }
+
+  private static String sorted(final int[] clause) {
+    int[] copy = clause.clone();
+    Arrays.sort(copy);
+    StringBuilder text = new StringBuilder();
+    for (int u : copy) {
+      text.append(text.length() == 0 ? "" : " ").append(u);
+    }
+    return text.toString();
+  }
+
+  private static void addVariables(final HashSet<Integer> variables,
+                                   final String clause) {
+    for (String u : clause.split(" ")) {
+      variables.add(var(Integer.parseInt(u)));
+    }
+  }
+}
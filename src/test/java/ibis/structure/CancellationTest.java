@@ -0,0 +1,59 @@
+package ibis.structure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CancellationTest {
+  // Generations are far from those of TcpMasterTest.
+
+  @Test
+  public void forgetsFinishedGenerations() {
+    long base = 5L << 40;
+    int size = Cancellation.size();
+
+    Cancellation.enter(base + 1);
+    Cancellation.exit();
+    Cancellation.kill(base + 2);
+    Cancellation.forget(base + 1);
+    Cancellation.forget(base + 2);
+
+    // Killed generations are remembered.
+    assertTrue(Cancellation.isKilled(base + 2));
+    assertTrue(Cancellation.size() <= size + 1);
+  }
+
+  @Test
+  public void remembersRecentGenerations() {
+    long base = 6L << 40;
+    for (int i = 0; i < 3 * Cancellation.MAX_TOKENS; i++) {
+      Cancellation.kill(base + i);
+    }
+    assertTrue(Cancellation.size() <= Cancellation.MAX_TOKENS);
+    assertFalse(Cancellation.isKilled(base));
+    assertTrue(Cancellation.isKilled(base + 3 * Cancellation.MAX_TOKENS - 1));
+  }
+
+  @Test
+  public void evictedTokensStayKilled() {
+    long generation = 7L << 40;
+    Cancellation.kill(generation);
+    Cancellation.enter(generation);
+    try {
+      for (int i = 1; i <= Cancellation.MAX_TOKENS; i++) {
+        Cancellation.kill(generation + i);
+      }
+      assertFalse(Cancellation.isKilled(generation));
+      try {
+        Cancellation.poll();
+        fail("Expected CancelledException");
+      } catch (CancelledException e) {
+        // The thread still holds the killed token.
+      }
+    } finally {
+      Cancellation.exit();
+    }
+  }
+}
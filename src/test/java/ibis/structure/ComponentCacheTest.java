@@ -0,0 +1,92 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ComponentCacheTest {
+  private static ComponentCache.Key key(final String cnf) throws Exception {
+    return ComponentCache.key(Reader.parseText(cnf));
+  }
+
+  private static Solution model(final int... units) {
+    return Solution.satisfiable(new TIntArrayList(units));
+  }
+
+  @Test
+  public void renumberedComponentsHaveEqualKeys() throws Exception {
+    ComponentCache.Key a = key("p cnf 6 2\n4 -6 5 0\n-4 6 0\n");
+    ComponentCache.Key b = key("p cnf 3 2\n-1 3 0\n2 1 -3 0\n");
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+
+    // Different signs give a different component.
+    ComponentCache.Key c = key("p cnf 3 2\n1 3 0\n2 1 -3 0\n");
+    assertFalse(a.equals(c));
+  }
+
+  @Test
+  public void hitsAndMisses() throws Exception {
+    ComponentCache.clear();
+    ComponentCache.Key a = key("p cnf 6 1\n4 -6 5 0\n");
+    ComponentCache.Key b = key("p cnf 3 1\n2 1 -3 0\n");
+    ComponentCache.Key unsat = key("p cnf 2 2\n1 0\n-1 0\n");
+
+    assertNull(ComponentCache.get(b));
+    ComponentCache.put(a, model(4, 5, -6));
+    ComponentCache.put(unsat, Solution.unsatisfiable());
+    ComponentCache.put(key("p cnf 2 1\n1 -2 0\n"), Solution.unknown());
+
+    // The model is renamed to the variables of b.
+    Solution hit = ComponentCache.get(b);
+    assertNotNull(hit);
+    assertTrue(hit.isSatisfiable());
+    int[] units = hit.units().toArray();
+    java.util.Arrays.sort(units);
+    assertEquals("[-3, 1, 2]", java.util.Arrays.toString(units));
+
+    assertTrue(ComponentCache.get(unsat).isUnsatisfiable());
+    assertNull(ComponentCache.get(key("p cnf 2 1\n1 -2 0\n")));
+    assertEquals(2, ComponentCache.size());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() throws Exception {
+    ComponentCache.Key a = key("p cnf 3 1\n1 2 3 0\n");
+    ComponentCache.Key b = key("p cnf 3 1\n-1 2 3 0\n");
+    ComponentCache.Key c = key("p cnf 3 1\n-1 -2 3 0\n");
+    ComponentCache.Key d = key("p cnf 3 1\n-1 -2 -3 0\n");
+    ComponentCache.Key e = key("p cnf 3 1\n1 -2 3 0\n");
+
+    // Every entry takes 4 * (4 + 3) + 64 = 92 bytes so the fifth
+    // entry exceeds the limit and the cache shrinks to 309 bytes.
+    long cacheMemory = Configure.cacheMemory;
+    Configure.cacheMemory = 414;
+    ComponentCache.clear();
+    try {
+      ComponentCache.put(a, model(1, 2, 3));
+      ComponentCache.put(b, model(-1, 2, 3));
+      ComponentCache.put(c, model(-1, -2, 3));
+      ComponentCache.put(d, model(-1, -2, -3));
+      assertEquals(4, ComponentCache.size());
+
+      assertNotNull(ComponentCache.get(a));
+      ComponentCache.put(e, model(1, -2, 3));
+
+      assertEquals(3, ComponentCache.size());
+      assertNull(ComponentCache.get(b));
+      assertNull(ComponentCache.get(c));
+      assertNotNull(ComponentCache.get(a));
+      assertNotNull(ComponentCache.get(d));
+      assertNotNull(ComponentCache.get(e));
+    } finally {
+      Configure.cacheMemory = cacheMemory;
+      ComponentCache.clear();
+    }
+  }
+}
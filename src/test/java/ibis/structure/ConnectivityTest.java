@@ -0,0 +1,39 @@
+package ibis.structure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectivityTest {
+  private static final String CHAIN = "p cnf 5 3\n" +
+                                      "1 2 3 0\n" +
+                                      "3 4 0\n" +
+                                      "4 5 0\n";
+
+  @Test
+  public void unchangedIsConnected() throws Exception {
+    Solver solver = new Solver(Reader.parseText(CHAIN));
+    assertTrue(Connectivity.isConnected(solver));
+  }
+
+  @Test
+  public void removedLiteralDisconnects() throws Exception {
+    // Removing 3 from 1 2 3 leaves 1 2 and 3 4, 4 5 unconnected.
+    Solver solver = new Solver(Reader.parseText(CHAIN));
+    solver.watchLists.removeLiteral(1, 3);
+    assertFalse(Connectivity.isConnected(solver));
+  }
+
+  @Test
+  public void removedLiteralKeepsConnected() throws Exception {
+    // 3 is still connected to 1 and 2 through 2 3.
+    Solver solver = new Solver(Reader.parseText("p cnf 5 4\n" +
+                                                "1 2 3 0\n" +
+                                                "2 3 0\n" +
+                                                "3 4 0\n" +
+                                                "4 5 0\n"));
+    solver.watchLists.removeLiteral(1, 3);
+    assertTrue(Connectivity.isConnected(solver));
+  }
+}
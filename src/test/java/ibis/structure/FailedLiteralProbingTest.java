@@ -0,0 +1,41 @@
+package ibis.structure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FailedLiteralProbingTest {
+  @Test
+  public void failedLiteral() throws Exception {
+    // 1 -> 2 and 1 -> 3, then 2 and 3 imply both 4 and -4
+    // through ternary clauses so 1 fails and -1 is an unit.
+    Solver solver = run("p cnf 5 5\n" +
+                        "-1 2 0\n" +
+                        "-1 3 0\n" +
+                        "-2 -3 4 0\n" +
+                        "-2 -3 -4 0\n" +
+                        "1 4 5 0\n");
+    assertTrue(solver.units.contains(-1));
+    assertFalse(solver.units.contains(1));
+  }
+
+  @Test
+  public void necessaryAssignment() throws Exception {
+    // 1 -> 3 directly and -1 -> 2 -> 3 through a ternary clause
+    // so 3 is an unit.
+    Solver solver = run("p cnf 4 4\n" +
+                        "-1 3 0\n" +
+                        "1 2 0\n" +
+                        "-2 3 4 0\n" +
+                        "-2 3 -4 0\n");
+    assertTrue(solver.units.contains(3));
+  }
+
+  private static Solver run(final String text) throws Exception {
+    Solver solver = new Solver(Reader.parseText(text));
+    solver.propagate();
+    FailedLiteralProbing.run(solver);
+    return solver;
+  }
+}
@@ -0,0 +1,61 @@
+package ibis.structure;
+
+import java.util.concurrent.ExecutionException;
+import ibis.constellation.ActivityIdentifier;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ForkJoinExecutorTest {
+  /** Replies unknown or throws. */
+  private static final class TestActivity extends Activity {
+    private final boolean fails;
+
+    TestActivity(final ActivityIdentifier parent, final boolean fails) {
+      super(parent, null, 0, 0, null, null);
+      this.fails = fails;
+    }
+
+    @Override
+    protected void doInitialize() {
+      if (fails) {
+        throw new IllegalStateException("broken");
+      }
+      reply(Solution.unknown());
+      finish();
+    }
+  }
+
+  @Test
+  public void deliversReply() throws Exception {
+    ForkJoinExecutor executor = new ForkJoinExecutor(2);
+    ActivityIdentifier root = executor.collector();
+    executor.submit(new TestActivity(root, false));
+    assertTrue(((Solution) executor.waitForEvent(root).data).isUnknown());
+    executor.shutdown();
+  }
+
+  @Test
+  public void failureWakesCollectors() throws Exception {
+    ForkJoinExecutor executor = new ForkJoinExecutor(2);
+    ActivityIdentifier root = executor.collector();
+    executor.submit(new TestActivity(root, true));
+    try {
+      executor.waitForEvent(root);
+      fail("Expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertEquals("broken", e.getCause().getMessage());
+    }
+
+    // Later collectors fail immediately.
+    try {
+      executor.waitForEvent(executor.collector(), 10000);
+      fail("Expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    executor.shutdown();
+  }
+}
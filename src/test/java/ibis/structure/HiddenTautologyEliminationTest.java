@@ -0,0 +1,85 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TIntArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static ibis.structure.Misc.*;
+
+public class HiddenTautologyEliminationTest {
+  @Test
+  public void hiddenTautology() throws Exception {
+    // -1 -> 4 -> 2 so 1 + 2 + 3 is a tautology.
+    Solver solver = run("p cnf 4 3\n" +
+                        "1 4 0\n" +
+                        "-4 2 0\n" +
+                        "1 2 3 0\n");
+    assertEquals(0, numClauses(solver.formula, 3));
+  }
+
+  @Test
+  public void hiddenLiteral() throws Exception {
+    // 1 -> 2 so 1 can be removed from 1 + 2 + 3 + 4.
+    Solver solver = run("p cnf 4 2\n" +
+                        "-1 2 0\n" +
+                        "1 2 3 4 0\n");
+    assertEquals(0, numClauses(solver.formula, 4));
+    assertEquals(1, numClauses(solver.formula, 3));
+  }
+
+  @Test
+  public void failedLiteral() throws Exception {
+    // -1 -> 2 and -1 -> -2 so 1 is an unit.
+    Solver solver = run("p cnf 3 3\n" +
+                        "1 2 0\n" +
+                        "1 -2 0\n" +
+                        "-1 2 3 0\n");
+    assertTrue(solver.units.contains(1));
+  }
+
+  @Test
+  public void sameSeedSameResult() throws Exception {
+    String text = "p cnf 6 7\n" +
+                  "-1 2 0\n" +
+                  "-1 3 0\n" +
+                  "-2 4 0\n" +
+                  "-3 4 0\n" +
+                  "1 4 5 6 0\n" +
+                  "-4 5 6 0\n" +
+                  "2 3 5 0\n";
+    Solver first = new Solver(Reader.parseText(text));
+    first.propagate();
+    HiddenTautologyElimination.run(first, 7);
+    Solver second = new Solver(Reader.parseText(text));
+    second.propagate();
+    HiddenTautologyElimination.run(second, 7);
+    assertEquals(first.formula, second.formula);
+    int[] firstUnits = first.units.toArray();
+    int[] secondUnits = second.units.toArray();
+    Arrays.sort(firstUnits);
+    Arrays.sort(secondUnits);
+    assertTrue(Arrays.equals(firstUnits, secondUnits));
+  }
+
+  private static Solver run(final String text) throws Exception {
+    Solver solver = new Solver(Reader.parseText(text));
+    solver.propagate();
+    HiddenTautologyElimination.run(solver);
+    return solver;
+  }
+
+  /** Returns the number of clauses of given length. */
+  private static int numClauses(final TIntArrayList formula, final int length) {
+    int num = 0;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      if (length(formula, it.next()) == length) {
+        num++;
+      }
+    }
+    return num;
+  }
+}
@@ -0,0 +1,135 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import static ibis.structure.Misc.*;
+
+public class LearnedClausesTest {
+  @Test
+  public void deduplicates() {
+    LearnedClauses store = new LearnedClauses();
+    assertTrue(store.add(new TIntArrayList(new int[] { 3, -1, 2 }), 2));
+    assertFalse(store.add(new TIntArrayList(new int[] { -1, 2, 3 }), 1));
+    assertTrue(store.add(new TIntArrayList(new int[] { -1, 2 }), 1));
+    assertEquals(2, store.size());
+  }
+
+  @Test
+  public void removesStaleClauses() throws Exception {
+    LearnedClauses store = new LearnedClauses();
+    store.add(new TIntArrayList(new int[] { 1, 2 }), 1);
+    store.add(new TIntArrayList(new int[] { 1, -4 }), 1);
+
+    // 4 is no longer in the instance.
+    Skeleton instance = Reader.parseText("p cnf 4 2\n" +
+                                         "1 2 3 0\n" +
+                                         "-1 -2 -3 0\n");
+    assertEquals(1, store.addTo(instance));
+    assertEquals(1, store.size());
+    assertEquals(3, numClauses(instance.formula));
+  }
+
+  @Test
+  public void skipsClausesInInstance() throws Exception {
+    LearnedClauses store = new LearnedClauses();
+    store.add(new TIntArrayList(new int[] { 2, 1 }), 1);
+
+    Skeleton instance = Reader.parseText("p cnf 3 2\n" +
+                                         "1 2 0\n" +
+                                         "-1 -2 3 0\n");
+    assertEquals(0, store.addTo(instance));
+    assertEquals(1, store.size());
+  }
+
+  @Test
+  public void vivifiesStoredClauses() throws Exception {
+    LearnedClauses store = new LearnedClauses();
+    store.add(new TIntArrayList(new int[] { 1, 2, 3 }), 2);
+    store.add(new TIntArrayList(new int[] { 1, 2 }), 1);
+    store.add(new TIntArrayList(new int[] { 4, 5, 6 }), 2);
+
+    // -1 -2 imply -3 so 3 is removed from the first clause,
+    // which becomes a duplicate of the second.
+    Skeleton instance = Reader.parseText("p cnf 6 2\n" +
+                                         "1 2 -3 0\n" +
+                                         "4 5 6 -1 0\n");
+    assertEquals(1, store.vivify(instance));
+    assertEquals(2, store.size());
+
+    Skeleton empty = Reader.parseText("p cnf 6 1\n" +
+                                      "1 2 3 4 5 6 0\n");
+    assertEquals(2, store.addTo(empty));
+    assertEquals(2, length(empty.formula, 8));
+    assertEquals(3, length(empty.formula, 11));
+  }
+
+  @Test
+  public void hashCollisions() throws Exception {
+    int[][] pair = collision();
+    assertNotNull(pair);
+    int[] a = pair[0], b = pair[1];
+
+    // Both clauses are kept and each is deduplicated.
+    LearnedClauses store = new LearnedClauses();
+    assertTrue(store.add(new TIntArrayList(a), 1));
+    assertTrue(store.add(new TIntArrayList(b), 1));
+    assertFalse(store.add(new TIntArrayList(a), 1));
+    assertFalse(store.add(new TIntArrayList(b), 1));
+    assertEquals(2, store.size());
+
+    // b is added although the instance has a clause with its hash.
+    store = new LearnedClauses();
+    store.add(new TIntArrayList(b), 1);
+    StringBuilder text = new StringBuilder("p cnf 64 2\n");
+    for (int u : a) {
+      text.append(u).append(" ");
+    }
+    text.append("0\n");
+    for (int u : b) {
+      text.append(neg(u)).append(" ");
+    }
+    text.append("0\n");
+    Skeleton instance = Reader.parseText(text.toString());
+    assertEquals(1, store.addTo(instance));
+  }
+
+  /** Finds two sorted ternary clauses with the same hash. */
+  private static int[][] collision() {
+    TIntObjectHashMap<int[]> seen = new TIntObjectHashMap<int[]>();
+    for (int u = -64; u <= 64; u++) {
+      for (int v = u + 1; v <= 64; v++) {
+        for (int w = v + 1; w <= 64; w++) {
+          if (u == 0 || v == 0 || w == 0
+              || var(u) == var(v) || var(u) == var(w) || var(v) == var(w)) {
+            continue;
+          }
+          int[] clause = new int[] { u, v, w };
+          int hash = LearnedClauses.hash(clause);
+          int[] other = seen.get(hash);
+          if (other != null) {
+            return new int[][] { other, clause };
+          }
+          seen.put(hash, clause);
+        }
+      }
+    }
+    return null;
+  }
+
+  private static int numClauses(final TIntArrayList formula) {
+    int num = 0;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      it.next();
+      num++;
+    }
+    return num;
+  }
+}
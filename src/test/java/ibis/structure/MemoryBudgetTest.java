@@ -0,0 +1,43 @@
+package ibis.structure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MemoryBudgetTest {
+  /** A search activity which does nothing. */
+  private static final class TestActivity extends Activity {
+    TestActivity(final Skeleton instance) {
+      super(null, null, 0, 1, null, instance);
+    }
+  }
+
+  @Test
+  public void movedActivitiesAreReleased() throws Exception {
+    Skeleton instance = Reader.parseText("p cnf 3 2\n1 2 0\n-2 3 0\n");
+    long bytes = MemoryBudget.bytes(instance);
+    long live = MemoryBudget.live();
+
+    TestActivity activity = new TestActivity(instance);
+    assertEquals(live + bytes, MemoryBudget.live());
+
+    // Sent to another node: the sender no longer holds the instance.
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(buffer);
+    out.writeObject(activity);
+    out.close();
+    assertEquals(live, MemoryBudget.live());
+
+    ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(buffer.toByteArray()));
+    TestActivity copy = (TestActivity) in.readObject();
+    assertEquals(live + bytes, MemoryBudget.live());
+
+    copy.release();
+    assertEquals(live, MemoryBudget.live());
+  }
+}
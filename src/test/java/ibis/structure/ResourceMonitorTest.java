@@ -0,0 +1,50 @@
+package ibis.structure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceMonitorTest {
+  @Test
+  public void shedsOncePerEpisode() {
+    boolean split = Configure.split;
+    long learnedMemory = Configure.learnedMemory;
+    long cacheMemory = Configure.cacheMemory;
+    long searchMemory = Configure.searchMemory;
+    double softHeap = Configure.softHeap;
+
+    Configure.softHeap = 0.8;
+    Configure.split = true;
+    Configure.learnedMemory = 8L << 20;
+    Configure.cacheMemory = 3L << 19;
+    Configure.searchMemory = 1L << 19;
+    try {
+      assertFalse(ResourceMonitor.pressure(0.5));
+      assertTrue(ResourceMonitor.pressure(0.9));
+      assertFalse(Configure.split);
+      assertEquals(4L << 20, Configure.learnedMemory);
+      assertEquals(ResourceMonitor.MIN_BUDGET, Configure.cacheMemory);
+      assertEquals(1L << 19, Configure.searchMemory);
+
+      // Still over the limit: nothing more is shed.
+      assertFalse(ResourceMonitor.pressure(0.9));
+      assertEquals(4L << 20, Configure.learnedMemory);
+
+      // Pressure dropped: splitting is restored and shedding re-armed.
+      assertFalse(ResourceMonitor.pressure(0.5));
+      assertTrue(Configure.split);
+      assertTrue(ResourceMonitor.pressure(0.85));
+      assertEquals(2L << 20, Configure.learnedMemory);
+      assertEquals(ResourceMonitor.MIN_BUDGET, Configure.cacheMemory);
+      ResourceMonitor.pressure(0.5);
+    } finally {
+      Configure.split = split;
+      Configure.learnedMemory = learnedMemory;
+      Configure.cacheMemory = cacheMemory;
+      Configure.searchMemory = searchMemory;
+      Configure.softHeap = softHeap;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package ibis.structure;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchTraceTest {
+  /** An activity which does nothing. */
+  private static final class TestActivity extends Activity {
+    TestActivity() {
+      super(null, null, 3, 0, null, null);
+    }
+  }
+
+  @Test
+  public void recordsCallsFromAnyExecutor() throws Exception {
+    File file = File.createTempFile("trace", ".bin");
+    try {
+      SearchTrace.start(file.getPath());
+      TestActivity activity = new TestActivity();
+      // As called by Constellation, without ForkJoinExecutor.
+      activity.initialize();
+      SearchTrace.stop();
+
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        assertEquals(SearchTrace.MAGIC, in.readInt());
+        assertEquals(SearchTrace.VERSION, in.readInt());
+        assertEquals(SearchTrace.NAME, in.readByte());
+        in.skipBytes(2);
+        in.skipBytes(in.readShort());
+        assertEquals(SearchTrace.ENTER, in.readByte());
+        in.skipBytes(2 + 4 + 8);
+        assertEquals(activity.traceNode, in.readLong());
+        in.skipBytes(8 + 8 + 4 + 4 + 4);
+        assertEquals(SearchTrace.EXIT, in.readByte());
+      } finally {
+        in.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package ibis.structure;
+
+import ibis.constellation.ActivityIdentifier;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TcpMasterTest {
+  /** Generations of this test, far from those of other tests. */
+  private static long generation = 1L << 40;
+
+  /**
+   * Solves instance branching on literal 1 on a worker connected
+   * to a master over the loopback interface.
+   */
+  private static Solution solve(final String cnf) throws Exception {
+    ForkJoinExecutor executor = new ForkJoinExecutor(1);
+    TcpMaster master = new TcpMaster(executor, 0);
+    executor.setRemote(master);
+
+    final ForkJoinExecutor remote = new ForkJoinExecutor(1);
+    final TcpWorker worker = new TcpWorker(
+        remote, "localhost:" + master.port());
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          worker.run();
+        } catch (Exception e) {
+          // Master closed the connection.
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    for (int i = 0; i < 1000 && master.numIdle() == 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, master.numIdle());
+
+    final long generation = ++TcpMasterTest.generation;
+    RestartScheduler.start(generation, RestartPolicy.create("arithmetic", 1),
+                           Long.MAX_VALUE, new Runnable() {
+      public void run() {
+      }
+    });
+    long work = RestartScheduler.numWork();
+
+    ActivityIdentifier root = executor.collector();
+    executor.submit(new BlackHoleActivity(
+          root, null, 0, generation, null, Reader.parseText(cnf), 1));
+    Solution solution = (Solution) executor.waitForEvent(root).data;
+    assertEquals(1, master.numLent());
+
+    // Worker and master share this JVM so the nodes are counted
+    // once by the worker and once more when charged by the master.
+    work = RestartScheduler.numWork() - work;
+    assertTrue(work > 0);
+    assertEquals(2 * work, RestartScheduler.spent(generation));
+
+    RestartScheduler.stop(generation);
+    master.close();
+    executor.shutdown();
+    remote.shutdown();
+    return solution;
+  }
+
+  @Test
+  public void satisfiable() throws Exception {
+    Solution solution = solve("p cnf 3 3\n" +
+                              "1 0\n" +
+                              "-1 2 0\n" +
+                              "-2 3 0\n");
+    assertTrue(solution.isSatisfiable());
+    assertTrue(solution.units().contains(3));
+  }
+
+  @Test
+  public void unsatisfiable() throws Exception {
+    Solution solution = solve("p cnf 2 3\n" +
+                              "1 0\n" +
+                              "-1 2 0\n" +
+                              "-2 0\n");
+    assertTrue(solution.isUnsatisfiable());
+  }
+}
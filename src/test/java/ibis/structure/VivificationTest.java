@@ -0,0 +1,102 @@
+package ibis.structure;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static ibis.structure.Misc.*;
+
+public class VivificationTest {
+  @Test
+  public void shrinksClause() throws Exception {
+    // -1 -> 4 -> 2 so 3 can be removed from 1 + 2 + 3.
+    Skeleton instance = Reader.parseText("p cnf 4 3\n" +
+                                         "1 2 3 0\n" +
+                                         "1 4 0\n" +
+                                         "-4 2 0\n");
+    TIntArrayList vivified = vivify(instance, 1);
+    assertEquals(1, Vivification.apply(instance.formula, vivified));
+    assertEquals(0, Vivification.numUnits(vivified));
+
+    compact(instance.formula);
+    assertTrue(hasClause(instance.formula, 1, 2));
+    assertFalse(hasClause(instance.formula, 1, 2, 3));
+  }
+
+  @Test
+  public void shardsFindTheSameClauses() throws Exception {
+    Skeleton instance = Reader.parseText("p cnf 5 6\n" +
+                                         "1 2 3 0\n" +
+                                         "1 4 0\n" +
+                                         "-4 2 0\n" +
+                                         "3 5 2 0\n" +
+                                         "-5 -1 0\n" +
+                                         "-3 5 0\n");
+    TIntArrayList serial = vivify(instance, 1);
+    for (int num = 2; num <= 6; num++) {
+      assertEquals(serial, vivify(instance, num));
+    }
+  }
+
+  @Test
+  public void propagatesUnits() throws Exception {
+    // -1 -> 3 and -1 -> -3 so 1 + 3 shrinks to the unit 1.
+    Skeleton instance = Reader.parseText("p cnf 5 5\n" +
+                                         "1 3 0\n" +
+                                         "1 -3 0\n" +
+                                         "-1 2 4 0\n" +
+                                         "-2 4 5 0\n" +
+                                         "2 -4 -5 0\n");
+    TIntArrayList vivified = vivify(instance, 1);
+    Vivification.apply(instance.formula, vivified);
+    compact(instance.formula);
+    assertTrue(Vivification.numUnits(vivified) > 0);
+
+    Core core = VivificationActivity.propagate(instance);
+    assertTrue(core.units().contains(1));
+    TIntArrayList formula = core.instance().formula;
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      assertTrue(length(formula, clause) > 1);
+      for (int i = clause; i < clause + length(formula, clause); i++) {
+        assertTrue(var(formula.getQuick(i)) != 1);
+      }
+    }
+  }
+
+  /** Vivifies instance in num shards sharing one index. */
+  private static TIntArrayList vivify(final Skeleton instance, final int num) {
+    Vivification.Index index = new Vivification.Index(instance);
+    TIntArrayList vivified = new TIntArrayList();
+    for (int i = 0; i < num; i++) {
+      vivified.addAll(new Vivification(instance, index).run(
+          index.start(i, num), index.start(i + 1, num)));
+    }
+    return vivified;
+  }
+
+  /** Returns true if formula has an OR clause with exactly literals. */
+  private static boolean hasClause(final TIntArrayList formula,
+                                   final int... literals) {
+    ClauseIterator it = new ClauseIterator(formula);
+    while (it.hasNext()) {
+      int clause = it.next();
+      if (length(formula, clause) != literals.length) {
+        continue;
+      }
+      boolean all = true;
+      for (int u : literals) {
+        all &= formula.indexOf(clause, u) >= clause
+            && formula.indexOf(clause, u) < clause + literals.length;
+      }
+      if (all) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
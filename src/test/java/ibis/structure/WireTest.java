@@ -0,0 +1,115 @@
+package ibis.structure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static ibis.structure.Misc.*;
+
+public class WireTest {
+  @Test
+  public void zigzag() {
+    int[] values = { 0, 1, -1, 63, -64, 1 << 20, Integer.MAX_VALUE,
+                     Integer.MIN_VALUE };
+    for (int value : values) {
+      assertEquals(value, Wire.unzigzag(Wire.zigzag(value)));
+    }
+    assertEquals(1, Wire.zigzag(-1));
+    assertEquals(2, Wire.zigzag(1));
+  }
+
+  @Test
+  public void skeleton() throws Exception {
+    Skeleton instance = Reader.parseText("p cnf 300 3\n" +
+                                         "1 -2 3 0\n" +
+                                         "-300 299 0\n" +
+                                         "5 -100 200 -7 0\n");
+    // A deleted clause is not written.
+    int deleted = instance.formula.size() + 1;
+    instance.formula.add(encode(2, OR));
+    instance.formula.add(4);
+    instance.formula.add(-6);
+    removeClause(instance.formula, deleted);
+
+    Skeleton copy = (Skeleton) roundTrip(instance);
+    assertEquals(instance.numVariables, copy.numVariables);
+    TIntArrayList expected = new TIntArrayList(instance.formula);
+    compact(expected);
+    assertEquals(expected, copy.formula);
+  }
+
+  @Test
+  public void zeroHeader() throws Exception {
+    // An empty NXOR clause is encoded as 0.
+    assertEquals(0, encode(0, NXOR));
+    TIntArrayList formula = new TIntArrayList();
+    formula.add(encode(0, NXOR));
+    formula.add(encode(2, XOR));
+    formula.add(1);
+    formula.add(-3);
+    formula.add(encode(0, NXOR));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    Wire.writeFormula(out, formula);
+    Wire.writeFormula(out, new TIntArrayList());
+    out.close();
+
+    DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(formula, Wire.readFormula(in));
+    assertEquals(new TIntArrayList(), Wire.readFormula(in));
+  }
+
+  @Test
+  public void distantLiterals() throws Exception {
+    TIntArrayList formula = new TIntArrayList();
+    formula.add(encode(2, OR));
+    formula.add(-5000);
+    formula.add(4000);
+
+    // 1 byte length, 1 byte count, 1 byte header and 2 bytes each
+    // for zigzag(-5000) = 9999 and zigzag(4000) = 8000.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    Wire.writeFormula(out, formula);
+    out.close();
+    assertEquals(7, bytes.size());
+
+    DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(formula, Wire.readFormula(in));
+  }
+
+  @Test
+  public void solution() throws Exception {
+    Solution unsat = Solution.unsatisfiable(7);
+    Solution copy = (Solution) roundTrip(unsat);
+    assertTrue(copy.isUnsatisfiable());
+    assertEquals(unsat.learned(), copy.learned());
+
+    TIntArrayList units = new TIntArrayList(new int[] { 1, -2, 1000000 });
+    copy = (Solution) roundTrip(Solution.satisfiable(units));
+    assertTrue(copy.isSatisfiable());
+    assertEquals(units, copy.units());
+  }
+
+  private static Object roundTrip(final Object object) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(object);
+    out.close();
+
+    ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()));
+    return in.readObject();
+  }
+}